@@ -117,6 +117,7 @@ public class StatisticsTask extends AsyncTask<Void, Integer, Statistics[]> {
                 PullParserTweetsReader.FACTORY,
                 DOMTweetsReader.FACTORY,
                 ParsnipTweetsReader.FACTORY,
+                ParsnipTweetsReader.READER_FACTORY,
                 SimpleXmlReader.FACTORY
         );
 
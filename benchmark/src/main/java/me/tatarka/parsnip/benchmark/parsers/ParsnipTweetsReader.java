@@ -17,6 +17,7 @@
 package me.tatarka.parsnip.benchmark.parsers;
 
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -39,16 +40,37 @@ public class ParsnipTweetsReader implements TweetsReader {
 
         @Override
         public TweetsReader newReader() throws Exception {
-            return new ParsnipTweetsReader();
+            return new ParsnipTweetsReader(false);
+        }
+    };
+
+    /**
+     * Reads through a {@link java.io.Reader}, so the bytes are decoded to chars up front and parsed
+     * by kxml2 instead of parsnip's own byte parser.
+     */
+    public static final PerformanceTestRunner.TweetsReaderFactory READER_FACTORY = new PerformanceTestRunner.TweetsReaderFactory() {
+        @Override
+        public String getParserType() {
+            return "Parsnip (Reader)";
+        }
+
+        @Override
+        public TweetsReader newReader() throws Exception {
+            return new ParsnipTweetsReader(true);
         }
     };
 
     private Xml xml = new Xml.Builder().add(Date.class, new DateTypeConverter()).build();
+    private final boolean reader;
+
+    private ParsnipTweetsReader(boolean reader) {
+        this.reader = reader;
+    }
 
     @Override
     public Tweets read(InputStream stream) throws Exception {
         XmlAdapter<Tweets> adapter = xml.adapter(Tweets.class);
-        Tweets tweets = adapter.fromXml(stream);
+        Tweets tweets = reader ? adapter.fromXml(new InputStreamReader(stream, "UTF-8")) : adapter.fromXml(stream);
         return tweets;
     }
 
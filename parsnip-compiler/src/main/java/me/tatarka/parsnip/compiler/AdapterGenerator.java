@@ -0,0 +1,733 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import me.tatarka.parsnip.CollectionSizer;
+import me.tatarka.parsnip.GeneratedXmlAdapter;
+import me.tatarka.parsnip.TagInfo;
+import me.tatarka.parsnip.TypeConverter;
+import me.tatarka.parsnip.XmlAdapter;
+import me.tatarka.parsnip.XmlAdapters;
+import me.tatarka.parsnip.annotations.ExpectedSize;
+import me.tatarka.parsnip.annotations.Namespace;
+import me.tatarka.parsnip.annotations.SerializedName;
+import me.tatarka.parsnip.annotations.Text;
+import me.tatarka.parsnip.annotations.XmlQualifier;
+
+/**
+ * Generates the adapter for a single class. This mirrors what {@code ClassXmlAdapter} does
+ * reflectively: fields are visited from the class up through its superclasses, and whether a field
+ * is an attribute or a tag is decided when the adapter is created, based on whether there is an
+ * {@link XmlAdapter} for its type.
+ */
+final class AdapterGenerator {
+    private static final String SUFFIX = "_XmlAdapter";
+
+    private static final ClassName XML_PULL_PARSER = ClassName.get("org.xmlpull.v1", "XmlPullParser");
+    private static final ClassName XML_PULL_PARSER_EXCEPTION = ClassName.get("org.xmlpull.v1", "XmlPullParserException");
+    private static final ClassName XML_SERIALIZER = ClassName.get("org.xmlpull.v1", "XmlSerializer");
+    private static final ClassName TYPES = ClassName.get("me.tatarka.parsnip", "Types");
+    private static final TypeName ANNOTATIONS = ParameterizedTypeName.get(ClassName.get(Set.class),
+            WildcardTypeName.subtypeOf(Annotation.class));
+
+    private final Types typeUtils;
+    private final Elements elementUtils;
+    private final TypeElement type;
+    private final ClassName className;
+    private final String packageName;
+    private final List<Property> properties = new ArrayList<>();
+    private final Set<String> usedNames = new HashSet<>();
+
+    AdapterGenerator(ProcessingEnvironment processingEnv, TypeElement type) {
+        this.typeUtils = processingEnv.getTypeUtils();
+        this.elementUtils = processingEnv.getElementUtils();
+        this.type = type;
+        this.className = ClassName.get(type);
+        this.packageName = elementUtils.getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * Returns why an adapter can't be generated for this class, or null if it can.
+     *
+     * @throws IllegalArgumentException if the class can never be serialized.
+     */
+    String unsupportedReason() {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) return "it is abstract";
+        if (!type.getTypeParameters().isEmpty()) return "it is generic";
+        for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) return "it is private";
+            if (e.getEnclosingElement().getKind() != ElementKind.PACKAGE && !e.getModifiers().contains(Modifier.STATIC)) {
+                return "it is not a static class";
+            }
+        }
+        if (!hasAccessibleNoArgsConstructor()) return "it has no accessible no-args constructor";
+
+        Property text = null;
+        for (TypeElement t = type; t != null; t = superclass(t)) {
+            String packageName = elementUtils.getPackageOf(t).getQualifiedName().toString();
+            if (isPlatformPackage(packageName)) return "it extends a platform type";
+            if (!t.getTypeParameters().isEmpty()) return "it extends a generic class";
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+                if (modifiers.contains(Modifier.PRIVATE)) return "field '" + field.getSimpleName() + "' is private";
+                if (modifiers.contains(Modifier.FINAL)) return "field '" + field.getSimpleName() + "' is final";
+                if (!modifiers.contains(Modifier.PUBLIC) && !packageName.equals(this.packageName)) {
+                    return "field '" + field.getSimpleName() + "' is not accessible";
+                }
+                Property property = new Property(t, field);
+                String reason = property.unsupportedReason();
+                if (reason != null) return reason;
+                if (property.text) {
+                    if (text != null) {
+                        throw new IllegalArgumentException("Text annotation collision: @Text is on both '"
+                                + field.getSimpleName() + "' and '" + text.field.getSimpleName() + "'.");
+                    }
+                    text = property;
+                }
+                Property replaced = collision(property);
+                if (replaced != null) {
+                    throw new IllegalArgumentException("Field name collision: '" + property.name + "'"
+                            + " declared by both " + replaced.declaringType.getQualifiedName()
+                            + " and superclass " + property.declaringType.getQualifiedName());
+                }
+                properties.add(property);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the property that {@code property} would always be bound with the same name and
+     * namespace as, or null if there isn't one. Whether a field is a tag or an attribute is only
+     * known once the adapter is created, so this can only tell for fields that are both
+     * collections (always tags) or of the same type. Other fields with the same name are read into
+     * the first one that matches.
+     */
+    private Property collision(Property property) {
+        if (property.text) return null;
+        for (Property other : properties) {
+            if (other.text || !other.name.equals(property.name)) continue;
+            if (other.namespace == null ? property.namespace != null : !other.namespace.equals(property.namespace)) continue;
+            if (other.collection && property.collection
+                    || !other.collection && !property.collection && typeUtils.isSameType(other.type, property.type)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasAccessibleNoArgsConstructor() {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the superclass of {@code t}, or null if it's {@code Object}.
+     */
+    private TypeElement superclass(TypeElement t) {
+        TypeMirror superclass = t.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) return null;
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        if (element.getQualifiedName().contentEquals("java.lang.Object")) return null;
+        return element;
+    }
+
+    private static boolean isPlatformPackage(String packageName) {
+        return packageName.startsWith("java.")
+                || packageName.startsWith("javax.")
+                || packageName.startsWith("android.");
+    }
+
+    JavaFile generate() {
+        TypeSpec.Builder adapter = TypeSpec.classBuilder(adapterName())
+                .addOriginatingElement(type)
+                .addModifiers(Modifier.FINAL)
+                .superclass(ParameterizedTypeName.get(ClassName.get(GeneratedXmlAdapter.class), className));
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                .addParameter(XmlAdapters.class, "adapters");
+        for (Property property : properties) {
+            addProperty(adapter, constructor, property);
+        }
+        adapter.addMethod(constructor.build());
+        adapter.addMethod(fromXml());
+        if (hasAttributes()) {
+            adapter.addMethod(readAttribute());
+        }
+        adapter.addMethod(readTag());
+        adapter.addMethod(toXml());
+
+        return JavaFile.builder(packageName, adapter.build())
+                .addFileComment("Generated by parsnip-compiler. Do not modify!")
+                .build();
+    }
+
+    private String adapterName() {
+        StringBuilder name = new StringBuilder();
+        for (String simpleName : className.simpleNames()) {
+            if (name.length() > 0) name.append('_');
+            name.append(simpleName);
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    private void addProperty(TypeSpec.Builder adapter, MethodSpec.Builder constructor, Property property) {
+        CodeBlock typeLiteral = property.collection ? CodeBlock.of("$T.class", TypeName.get(typeUtils.erasure(property.elementType))) : typeLiteral(property.type);
+        TypeName boxedType = TypeName.get(property.collection ? property.elementType : property.type).box();
+
+        CodeBlock annotations;
+        if (property.qualified) {
+            String annotationsName = uniqueName(property.field.getSimpleName() + "Annotations");
+            constructor.addStatement("$T $N = fieldAnnotations($T.class, $S)", ANNOTATIONS, annotationsName,
+                    ClassName.get(property.declaringType), property.field.getSimpleName().toString());
+            annotations = CodeBlock.of("$N", annotationsName);
+        } else {
+            annotations = CodeBlock.of("NO_ANNOTATIONS");
+        }
+
+        if (!property.text) {
+            property.adapterName = uniqueName(property.field.getSimpleName() + "Adapter");
+            adapter.addField(ParameterizedTypeName.get(ClassName.get(XmlAdapter.class), boxedType), property.adapterName, Modifier.PRIVATE, Modifier.FINAL);
+            constructor.addStatement("this.$N = adapters.adapter($L, $L)", property.adapterName, typeLiteral, annotations);
+
+            property.tagName = uniqueName(constantName(property.field.getSimpleName().toString()) + "_TAG");
+            adapter.addField(FieldSpec.builder(TagInfo.class, property.tagName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T($S, $S, $S)", TagInfo.class, property.name, property.namespace, property.alias)
+                    .build());
+        }
+        if (property.collection) {
+            property.sizerName = uniqueName(property.field.getSimpleName() + "Sizer");
+            adapter.addField(CollectionSizer.class, property.sizerName, Modifier.PRIVATE, Modifier.FINAL);
+            ExpectedSize expectedSize = property.field.getAnnotation(ExpectedSize.class);
+            if (expectedSize != null && expectedSize.value() < -1) {
+                throw new IllegalArgumentException("@ExpectedSize on '" + property.field.getSimpleName() + "' in "
+                        + property.declaringType.getQualifiedName() + " must be zero or more, or -1 for the default capacity, but is "
+                        + expectedSize.value());
+            }
+            constructor.addStatement("this.$N = collectionSizer(adapters, $L)", property.sizerName, expectedSize != null ? expectedSize.value() : -1);
+        } else {
+            property.converterName = uniqueName(property.field.getSimpleName() + "Converter");
+            adapter.addField(ParameterizedTypeName.get(ClassName.get(TypeConverter.class), boxedType), property.converterName, Modifier.PRIVATE, Modifier.FINAL);
+            CodeBlock converter = CodeBlock.of("requireConverter(adapters.<$T>converter($L, $L), $L, $L)", boxedType, typeLiteral, annotations, typeLiteral, annotations);
+            if (property.text) {
+                constructor.addStatement("this.$N = $L", property.converterName, converter);
+            } else {
+                // Only an attribute if there's no adapter to write it as a tag.
+                constructor.addStatement("this.$N = $N == null ? $L : null", property.converterName, property.adapterName, converter);
+            }
+            String primitive = primitiveName(property.type);
+            if (primitive != null) {
+                ClassName primitiveConverter = ClassName.get("me.tatarka.parsnip", primitive + "Converter");
+                property.primitiveConverterName = uniqueName(property.field.getSimpleName() + "PrimitiveConverter");
+                adapter.addField(primitiveConverter, property.primitiveConverterName, Modifier.PRIVATE, Modifier.FINAL);
+                constructor.addStatement("this.$N = $N instanceof $T ? ($T) $N : null", property.primitiveConverterName,
+                        property.converterName, primitiveConverter, primitiveConverter, property.converterName);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the primitive converter for {@code type} (ex: "Int" for IntConverter), or
+     * null if there isn't one.
+     */
+    private static String primitiveName(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+                return "Int";
+            case LONG:
+                return "Long";
+            case DOUBLE:
+                return "Double";
+            case BOOLEAN:
+                return "Boolean";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Adds a statement that reads {@code value} into the property, without boxing it if possible.
+     */
+    private void addReadValue(MethodSpec.Builder method, Property property, String value) {
+        if (property.primitiveConverterName != null) {
+            method.beginControlFlow("if ($N != null)", property.primitiveConverterName)
+                    .addStatement("$L = $N.parse$L($L)", property.access("result"), property.primitiveConverterName,
+                            primitiveName(property.type), value)
+                    .nextControlFlow("else")
+                    .addStatement("$L = $N.from($L)", property.access("result"), property.converterName, value)
+                    .endControlFlow();
+        } else {
+            method.addStatement("$L = $N.from($L)", property.access("result"), property.converterName, value);
+        }
+    }
+
+    /**
+     * Returns an expression that converts the property to a string, without boxing it if possible.
+     */
+    private CodeBlock writeValue(Property property) {
+        if (property.primitiveConverterName != null) {
+            return CodeBlock.of("$N != null ? $N.format$L($L) : $N.to($L)", property.primitiveConverterName,
+                    property.primitiveConverterName, primitiveName(property.type), property.access("value"),
+                    property.converterName, property.access("value"));
+        }
+        return CodeBlock.of("$N.to($L)", property.converterName, property.access("value"));
+    }
+
+    private MethodSpec fromXml() {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("fromXml")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(className)
+                .addParameter(XML_PULL_PARSER, "parser")
+                .addParameter(TagInfo.class, "tagInfo")
+                .addException(XML_PULL_PARSER_EXCEPTION)
+                .addException(java.io.IOException.class);
+
+        method.addStatement("$T result = new $T()", className, className);
+        for (Property property : properties) {
+            if (property.collection) {
+                CodeBlock field = property.access("result");
+                method.beginControlFlow("if ($L == null)", field)
+                        .addStatement("$L = $N.$L()", field, property.sizerName, property.set ? "newSet" : "newList")
+                        .endControlFlow();
+            }
+        }
+        method.beginControlFlow("if (tagInfo == $T.ROOT)", TagInfo.class)
+                .addStatement("readToStartTag(parser)")
+                .endControlFlow();
+        if (hasAttributes()) {
+            method.beginControlFlow("for (int i = 0, size = parser.getAttributeCount(); i < size; i++)")
+                    .addStatement("readAttribute(parser, i, result)")
+                    .endControlFlow();
+        }
+
+        Property text = textProperty();
+        method.addCode("loop:\n")
+                .beginControlFlow("while ($L != $T.END_TAG)", text != null ? "parser.next()" : "nextSkippingText(parser)", XML_PULL_PARSER)
+                .beginControlFlow("switch (parser.getEventType())")
+                .addCode("case $T.START_TAG:\n$>", XML_PULL_PARSER)
+                .beginControlFlow("if (!readTag(parser, result))")
+                .addStatement("skip(parser)")
+                .endControlFlow()
+                .addStatement("break")
+                .addCode("$<");
+        if (text != null) {
+            method.addCode("case $T.TEXT:\n$>", XML_PULL_PARSER);
+            if (text.primitiveConverterName != null) {
+                addReadValue(method, text, "parser.getText()");
+            } else {
+                method.addStatement("$L = fromText(parser, $N)", text.access("result"), text.converterName);
+            }
+            method.addStatement("break")
+                    .addCode("$<");
+        }
+        method.addCode("case $T.END_DOCUMENT:\n$>", XML_PULL_PARSER)
+                .addStatement("break loop")
+                .addCode("$<")
+                .endControlFlow()
+                .endControlFlow();
+        for (Property property : properties) {
+            if (property.collection) {
+                CodeBlock field = property.access("result");
+                method.addStatement("$L = $N.finish($L)", field, property.sizerName, field);
+            }
+        }
+        method.addStatement("return result");
+        return method.build();
+    }
+
+    private MethodSpec readAttribute() {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("readAttribute")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(XML_PULL_PARSER, "parser")
+                .addParameter(int.class, "index")
+                .addParameter(className, "result");
+
+        Map<String, List<Property>> attributes = new LinkedHashMap<>();
+        boolean namespaced = false;
+        for (Property property : properties) {
+            if (property.text || property.collection) continue;
+            group(attributes, property);
+            namespaced |= property.namespace != null;
+        }
+        if (namespaced) {
+            method.addStatement("String namespace = parser.getAttributeNamespace(index)");
+        }
+        method.beginControlFlow("switch (parser.getAttributeName(index))");
+        for (Map.Entry<String, List<Property>> entry : attributes.entrySet()) {
+            method.addCode("case $S:\n$>", entry.getKey());
+            boolean first = true;
+            for (Property property : entry.getValue()) {
+                CodeBlock condition = property.namespace != null
+                        ? CodeBlock.of("$N != null && $S.equals(namespace)", property.converterName, property.namespace)
+                        : CodeBlock.of("$N != null", property.converterName);
+                if (first) {
+                    method.beginControlFlow("if ($L)", condition);
+                    first = false;
+                } else {
+                    method.nextControlFlow("else if ($L)", condition);
+                }
+                addReadValue(method, property, "parser.getAttributeValue(index)");
+            }
+            method.endControlFlow()
+                    .addStatement("break")
+                    .addCode("$<");
+        }
+        method.endControlFlow();
+        return method.build();
+    }
+
+    private MethodSpec readTag() {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("readTag")
+                .addModifiers(Modifier.PRIVATE)
+                .returns(boolean.class)
+                .addParameter(XML_PULL_PARSER, "parser")
+                .addParameter(className, "result")
+                .addException(XML_PULL_PARSER_EXCEPTION)
+                .addException(java.io.IOException.class);
+
+        Map<String, List<Property>> tags = new LinkedHashMap<>();
+        boolean namespaced = false;
+        for (Property property : properties) {
+            if (property.text) continue;
+            group(tags, property);
+            namespaced |= property.namespace != null;
+        }
+        if (namespaced) {
+            method.addStatement("String namespace = parser.getNamespace()");
+        }
+        if (!tags.isEmpty()) {
+            method.beginControlFlow("switch (parser.getName())");
+            for (Map.Entry<String, List<Property>> entry : tags.entrySet()) {
+                method.addCode("case $S:\n$>", entry.getKey());
+                boolean first = true;
+                boolean exhaustive = false;
+                for (Property property : entry.getValue()) {
+                    CodeBlock condition;
+                    if (property.collection) {
+                        condition = property.namespace != null ? CodeBlock.of("$S.equals(namespace)", property.namespace) : null;
+                    } else {
+                        condition = property.namespace != null
+                                ? CodeBlock.of("$N != null && $S.equals(namespace)", property.adapterName, property.namespace)
+                                : CodeBlock.of("$N != null", property.adapterName);
+                    }
+                    if (condition == null) {
+                        // Always matches, so any following bindings with this name never will.
+                        if (!first) method.nextControlFlow("else");
+                        readTagValue(method, property);
+                        exhaustive = true;
+                        break;
+                    }
+                    if (first) {
+                        method.beginControlFlow("if ($L)", condition);
+                        first = false;
+                    } else {
+                        method.nextControlFlow("else if ($L)", condition);
+                    }
+                    readTagValue(method, property);
+                }
+                if (!first) method.endControlFlow();
+                if (!exhaustive) method.addStatement("break");
+                method.addCode("$<");
+            }
+            method.endControlFlow();
+        }
+        method.addStatement("return false");
+        return method.build();
+    }
+
+    private void readTagValue(MethodSpec.Builder method, Property property) {
+        if (property.collection) {
+            method.addStatement("$L.add($N.fromXml(parser, $N))", property.access("result"), property.adapterName, property.tagName);
+        } else {
+            method.addStatement("$L = $N.fromXml(parser, $N)", property.access("result"), property.adapterName, property.tagName);
+        }
+        method.addStatement("return true");
+    }
+
+    private MethodSpec toXml() {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("toXml")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(XML_SERIALIZER, "serializer")
+                .addParameter(TagInfo.class, "tagInfo")
+                .addParameter(className, "value")
+                .addException(java.io.IOException.class);
+
+        // Write declared namespaces for attributes and tags
+        Set<List<String>> declaredNamespaces = new LinkedHashSet<>();
+        for (Property property : properties) {
+            if (!property.text && property.namespace != null) {
+                List<String> namespace = new ArrayList<>(2);
+                namespace.add(property.alias);
+                namespace.add(property.namespace);
+                if (declaredNamespaces.add(namespace)) {
+                    method.addStatement("serializer.setPrefix($S, $S)", property.alias, property.namespace);
+                }
+            }
+        }
+
+        method.addStatement("String namespace = tagInfo == $T.ROOT ? null : tagInfo.namespace()", TagInfo.class)
+                .addStatement("String name = tagInfo == $T.ROOT ? $S : tagInfo.name()", TagInfo.class, rootName())
+                .addStatement("serializer.startTag(namespace, name)");
+        for (Property property : properties) {
+            if (property.text || property.collection) continue;
+            method.beginControlFlow("if ($N != null)", property.converterName)
+                    .addStatement("String attributeValue = $L", writeValue(property))
+                    .beginControlFlow("if (attributeValue != null)")
+                    .addStatement("serializer.attribute($S, $S, attributeValue)", property.namespace, property.name)
+                    .endControlFlow()
+                    .endControlFlow();
+        }
+        for (Property property : properties) {
+            if (property.text) continue;
+            if (property.collection) {
+                TypeName elementType = TypeName.get(property.elementType).box();
+                method.beginControlFlow("if ($L != null)", property.access("value"))
+                        .beginControlFlow("for ($T item : $L)", elementType, property.access("value"))
+                        .addStatement("$N.toXml(serializer, $N, item)", property.adapterName, property.tagName)
+                        .endControlFlow()
+                        .endControlFlow();
+            } else {
+                method.beginControlFlow("if ($N != null)", property.adapterName)
+                        .addStatement("$N.toXml(serializer, $N, $L)", property.adapterName, property.tagName, property.access("value"))
+                        .endControlFlow();
+            }
+        }
+        Property text = textProperty();
+        if (text != null) {
+            method.addStatement("serializer.text($L)", writeValue(text));
+        }
+        method.addStatement("serializer.endTag(namespace, name)");
+        return method.build();
+    }
+
+    private String rootName() {
+        SerializedName serializedName = type.getAnnotation(SerializedName.class);
+        return serializedName != null ? serializedName.value() : type.getSimpleName().toString();
+    }
+
+    private boolean hasAttributes() {
+        for (Property property : properties) {
+            if (!property.text && !property.collection) return true;
+        }
+        return false;
+    }
+
+    private Property textProperty() {
+        for (Property property : properties) {
+            if (property.text) return property;
+        }
+        return null;
+    }
+
+    private static void group(Map<String, List<Property>> groups, Property property) {
+        List<Property> group = groups.get(property.name);
+        if (group == null) {
+            group = new ArrayList<>();
+            groups.put(property.name, group);
+        }
+        group.add(property);
+    }
+
+    private String uniqueName(String name) {
+        String result = name;
+        for (int i = 2; !usedNames.add(result); i++) {
+            result = name + i;
+        }
+        return result;
+    }
+
+    private static String constantName(String name) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) result.append('_');
+            result.append(Character.toUpperCase(c));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns code that evaluates to the {@link java.lang.reflect.Type} for {@code type} at
+     * runtime, or null if the type isn't supported.
+     */
+    private CodeBlock typeLiteral(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return CodeBlock.of("$T.class", TypeName.get(type));
+        }
+        switch (type.getKind()) {
+            case ARRAY: {
+                TypeMirror componentType = ((ArrayType) type).getComponentType();
+                CodeBlock component = typeLiteral(componentType);
+                if (component == null) return null;
+                if (componentType.getKind().isPrimitive() || isRaw(componentType)) {
+                    return CodeBlock.of("$T.class", TypeName.get(type));
+                }
+                return CodeBlock.of("$T.arrayOf($L)", TYPES, component);
+            }
+            case DECLARED: {
+                DeclaredType declaredType = (DeclaredType) type;
+                ClassName rawType = ClassName.get((TypeElement) declaredType.asElement());
+                if (declaredType.getTypeArguments().isEmpty()) {
+                    return CodeBlock.of("$T.class", rawType);
+                }
+                CodeBlock.Builder result = CodeBlock.builder().add("$T.newParameterizedType($T.class", TYPES, rawType);
+                for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
+                    CodeBlock argument = typeLiteral(typeArgument);
+                    if (argument == null) return null;
+                    result.add(", $L", argument);
+                }
+                return result.add(")").build();
+            }
+            case WILDCARD: {
+                WildcardType wildcardType = (WildcardType) type;
+                if (wildcardType.getSuperBound() != null) {
+                    CodeBlock bound = typeLiteral(wildcardType.getSuperBound());
+                    return bound != null ? CodeBlock.of("$T.supertypeOf($L)", TYPES, bound) : null;
+                }
+                TypeMirror extendsBound = wildcardType.getExtendsBound();
+                CodeBlock bound = extendsBound != null ? typeLiteral(extendsBound) : CodeBlock.of("$T.class", Object.class);
+                return bound != null ? CodeBlock.of("$T.subtypeOf($L)", TYPES, bound) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isRaw(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).getTypeArguments().isEmpty();
+    }
+
+    private final class Property {
+        final TypeElement declaringType;
+        final VariableElement field;
+        final TypeMirror type;
+        final String name;
+        final String namespace;
+        final String alias;
+        final boolean text;
+        final boolean qualified;
+        boolean collection;
+        boolean set;
+        TypeMirror elementType;
+        String adapterName;
+        String converterName;
+        // A primitive converter, if the field is primitive and its converter supports it.
+        String primitiveConverterName;
+        // Creates the collection, if the field is one.
+        String sizerName;
+        String tagName;
+
+        Property(TypeElement declaringType, VariableElement field) {
+            this.declaringType = declaringType;
+            this.field = field;
+            this.type = field.asType();
+            SerializedName serializedName = field.getAnnotation(SerializedName.class);
+            this.name = serializedName != null ? serializedName.value() : field.getSimpleName().toString();
+            Namespace namespace = field.getAnnotation(Namespace.class);
+            this.namespace = namespace != null ? namespace.value() : null;
+            this.alias = namespace != null ? namespace.alias() : null;
+            this.qualified = hasQualifier(field);
+
+            String rawType = typeUtils.erasure(type).toString();
+            if (rawType.equals("java.util.List") || rawType.equals("java.util.Collection") || rawType.equals("java.util.Set")) {
+                // Collections are read as multiple tags of the same name.
+                collection = true;
+                set = rawType.equals("java.util.Set");
+                List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+                if (!typeArguments.isEmpty()) {
+                    TypeMirror typeArgument = typeArguments.get(0);
+                    if (typeArgument.getKind() == TypeKind.WILDCARD) {
+                        typeArgument = ((WildcardType) typeArgument).getExtendsBound();
+                    }
+                    elementType = typeArgument;
+                }
+            }
+            this.text = !collection && field.getAnnotation(Text.class) != null;
+        }
+
+        String unsupportedReason() {
+            if (collection) {
+                if (elementType == null || elementType.getKind() != TypeKind.DECLARED) {
+                    return "field '" + field.getSimpleName() + "' has an unsupported collection type";
+                }
+            } else if (typeLiteral(type) == null) {
+                return "field '" + field.getSimpleName() + "' has an unsupported type";
+            }
+            return null;
+        }
+
+        CodeBlock access(String receiver) {
+            if (declaringType.equals(AdapterGenerator.this.type)) {
+                return CodeBlock.of("$N.$N", receiver, field.getSimpleName().toString());
+            }
+            // Cast so that a field hidden by the subclass is still accessed.
+            return CodeBlock.of("(($T) $N).$N", ClassName.get(declaringType), receiver, field.getSimpleName().toString());
+        }
+    }
+
+    private static boolean hasQualifier(VariableElement field) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().asElement().getAnnotation(XmlQualifier.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip.compiler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+import me.tatarka.parsnip.annotations.ExpectedSize;
+import me.tatarka.parsnip.annotations.Namespace;
+import me.tatarka.parsnip.annotations.SerializedName;
+import me.tatarka.parsnip.annotations.Tag;
+import me.tatarka.parsnip.annotations.Text;
+
+/**
+ * Generates an {@link me.tatarka.parsnip.XmlAdapter} for each class that uses parsnip's
+ * annotations, so that it can be read and written without reflection. Classes that can't be
+ * accessed directly from generated code (private fields, final fields, no accessible no-arg
+ * constructor, generics) are left to the reflective adapter.
+ */
+public final class ParsnipProcessor extends AbstractProcessor {
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new LinkedHashSet<>(Arrays.asList(
+                SerializedName.class.getCanonicalName(),
+                Tag.class.getCanonicalName(),
+                Text.class.getCanonicalName(),
+                Namespace.class.getCanonicalName(),
+                ExpectedSize.class.getCanonicalName()
+        ));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) element);
+                } else if (element.getKind() == ElementKind.FIELD
+                        && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+
+        for (TypeElement type : types) {
+            AdapterGenerator generator = new AdapterGenerator(processingEnv, type);
+            try {
+                String reason = generator.unsupportedReason();
+                if (reason != null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                            "Not generating an XmlAdapter for " + type.getQualifiedName() + ", " + reason
+                                    + ". It will be read reflectively.", type);
+                    continue;
+                }
+                generator.generate().writeTo(processingEnv.getFiler());
+            } catch (IllegalArgumentException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Failed to write XmlAdapter for " + type.getQualifiedName() + ": " + e.getMessage(), type);
+            }
+        }
+        // Don't claim the annotations, they are also read at runtime.
+        return false;
+    }
+}
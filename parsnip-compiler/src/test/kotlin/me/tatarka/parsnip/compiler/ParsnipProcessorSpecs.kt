@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip.compiler
+
+import me.tatarka.parsnip.Xml
+import me.tatarka.parsnip.XmlAdapter
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import org.xmlpull.v1.XmlPullParser
+import java.io.File
+import java.lang.reflect.Type
+import java.net.URLClassLoader
+import java.nio.file.Files
+import javax.tools.Diagnostic
+import javax.tools.DiagnosticCollector
+import javax.tools.JavaFileObject
+import javax.tools.ToolProvider
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@RunWith(JUnitPlatform::class)
+class ParsnipProcessorSpecs : Spek({
+    describe("the parsnip processor") {
+        context("a class that can be generated") {
+            val sources = arrayOf(
+                    "test.Foo" to """
+                        package test;
+                        import java.util.List;
+                        import me.tatarka.parsnip.annotations.*;
+                        @SerializedName("foo")
+                        public class Foo {
+                            @SerializedName("n") public String name;
+                            public int count;
+                            @Namespace(value = "urn:x", alias = "x") public String ns;
+                            public Bar bar;
+                            @ExpectedSize(4) public List<Bar> bars;
+                        }
+                    """,
+                    "test.Bar" to """
+                        package test;
+                        import me.tatarka.parsnip.annotations.*;
+                        public class Bar {
+                            public long id;
+                            @Text public String value;
+                        }
+                    """)
+            val generated = compile(*sources)
+            val reflective = compile(*sources, process = false)
+            val xml = "<foo xmlns:x=\"urn:x\" n=\"a\" count=\"2\" x:ns=\"b\"><bar id=\"3\">c</bar><bars id=\"4\">d</bars><bars id=\"5\">e</bars></foo>"
+
+            it("should compile without errors") {
+                assertEquals(emptyList(), generated.errors)
+            }
+
+            it("should generate an adapter for each class") {
+                assertTrue(generated.hasClass("test.Foo_XmlAdapter"))
+                assertTrue(generated.hasClass("test.Bar_XmlAdapter"))
+            }
+
+            it("should use the generated adapter") {
+                assertEquals("test.Foo_XmlAdapter", generated.adapter("test.Foo").javaClass.name)
+            }
+
+            it("should read and write the same as the reflective adapter") {
+                val generatedAdapter = generated.adapter("test.Foo")
+                val reflectiveAdapter = reflective.adapter("test.Foo")
+                assertFalse(reflectiveAdapter.javaClass.name.endsWith("_XmlAdapter"))
+                assertEquals(reflectiveAdapter.toXml(reflectiveAdapter.fromXml(xml)), generatedAdapter.toXml(generatedAdapter.fromXml(xml)))
+            }
+
+            it("should read every field") {
+                val adapter = generated.adapter("test.Foo")
+                assertEquals("<foo n=\"a\" count=\"2\" x:ns=\"b\" xmlns:x=\"urn:x\"><bar id=\"3\">c</bar><bars id=\"4\">d</bars><bars id=\"5\">e</bars></foo>",
+                        adapter.toXml(adapter.fromXml(xml)))
+            }
+        }
+
+        context("a class read from an indented document") {
+            val sources = arrayOf(
+                    "test.Feed" to """
+                        package test;
+                        import java.util.List;
+                        import me.tatarka.parsnip.annotations.*;
+                        @SerializedName("feed")
+                        public class Feed {
+                            public String title;
+                            public List<Entry> entry;
+                        }
+                    """,
+                    "test.Entry" to """
+                        package test;
+                        import me.tatarka.parsnip.annotations.*;
+                        public class Entry {
+                            public long id;
+                            @Text public String value;
+                        }
+                    """)
+            val generated = compile(*sources)
+            val reflective = compile(*sources, process = false)
+            val xml = "<feed title=\"a\">\n  <!-- comment -->\n  <entry id=\"1\">\n    b\n  </entry>\n  text\n  <entry id=\"2\">c</entry>\n</feed>\n"
+
+            it("should skip the indentation of a class without text") {
+                val adapter = generated.adapter("test.Feed")
+                assertEquals("test.Feed_XmlAdapter", adapter.javaClass.name)
+                assertEquals("<feed title=\"a\"><entry id=\"1\">\n    b\n  </entry><entry id=\"2\">c</entry></feed>",
+                        adapter.toXml(adapter.fromXml(xml)))
+            }
+
+            it("should read the same as the reflective adapter") {
+                val generatedAdapter = generated.adapter("test.Feed")
+                val reflectiveAdapter = reflective.adapter("test.Feed")
+                assertEquals(reflectiveAdapter.toXml(reflectiveAdapter.fromXml(xml)), generatedAdapter.toXml(generatedAdapter.fromXml(xml)))
+            }
+        }
+
+        context("a nested class") {
+            val compilation = compile("test.Outer" to """
+                package test;
+                import me.tatarka.parsnip.annotations.*;
+                public class Outer {
+                    public static class Inner {
+                        @SerializedName("v") public String value;
+                    }
+                }
+            """)
+
+            it("should generate an adapter named after the enclosing classes") {
+                assertTrue(compilation.hasClass("test.Outer_Inner_XmlAdapter"))
+            }
+
+            it("should use the generated adapter") {
+                val adapter = compilation.adapter("test.Outer\$Inner")
+                assertEquals("test.Outer_Inner_XmlAdapter", adapter.javaClass.name)
+                assertEquals("<Inner v=\"a\" />", adapter.toXml(adapter.fromXml("<Inner v=\"a\"/>")))
+            }
+        }
+
+        for ((name, source, reason) in listOf(
+                Triple("a private field", "@SerializedName(\"n\") private String name;", "field 'name' is private"),
+                Triple("a final field", "@SerializedName(\"n\") public final String name = null;", "field 'name' is final"),
+                Triple("no no-args constructor", "@SerializedName(\"n\") public String name; public Skipped(String name) {}", "it has no accessible no-args constructor"))) {
+            context("a class with $name") {
+                val compilation = compile("test.Skipped" to """
+                    package test;
+                    import me.tatarka.parsnip.annotations.*;
+                    public class Skipped {
+                        $source
+                    }
+                """)
+
+                it("should compile without errors") {
+                    assertEquals(emptyList(), compilation.errors)
+                }
+
+                it("should not generate an adapter") {
+                    assertFalse(compilation.hasClass("test.Skipped_XmlAdapter"))
+                }
+
+                it("should say why") {
+                    assertEquals(listOf("Not generating an XmlAdapter for test.Skipped, $reason. It will be read reflectively."), compilation.notes)
+                }
+            }
+        }
+
+        context("a generic class") {
+            val compilation = compile("test.Generic" to """
+                package test;
+                import me.tatarka.parsnip.annotations.*;
+                public class Generic<T> {
+                    @SerializedName("n") public String name;
+                }
+            """)
+
+            it("should not generate an adapter") {
+                assertFalse(compilation.hasClass("test.Generic_XmlAdapter"))
+                assertEquals(listOf("Not generating an XmlAdapter for test.Generic, it is generic. It will be read reflectively."), compilation.notes)
+            }
+        }
+
+        context("a class with two fields of the same name") {
+            val compilation = compile("test.Collision" to """
+                package test;
+                import me.tatarka.parsnip.annotations.*;
+                public class Collision {
+                    @SerializedName("name") public String first;
+                    @SerializedName("name") public String second;
+                }
+            """)
+
+            it("should fail with a clear error") {
+                assertEquals(listOf("Field name collision: 'name' declared by both test.Collision and superclass test.Collision"), compilation.errors)
+            }
+        }
+
+        context("a class with a field of the same name in another namespace") {
+            val compilation = compile("test.Namespaced" to """
+                package test;
+                import me.tatarka.parsnip.annotations.*;
+                public class Namespaced {
+                    @SerializedName("name") public String first;
+                    @SerializedName("name") @Namespace("urn:x") public String second;
+                }
+            """)
+
+            it("should generate an adapter") {
+                assertEquals(emptyList(), compilation.errors)
+                assertTrue(compilation.hasClass("test.Namespaced_XmlAdapter"))
+            }
+        }
+
+        context("a class with a negative @ExpectedSize") {
+            val compilation = compile("test.Sized" to """
+                package test;
+                import java.util.List;
+                import me.tatarka.parsnip.annotations.*;
+                public class Sized {
+                    @ExpectedSize(-2) public List<String> items;
+                }
+            """)
+
+            it("should fail with a clear error") {
+                assertEquals(listOf("@ExpectedSize on 'items' in test.Sized must be zero or more, or -1 for the default capacity, but is -2"), compilation.errors)
+            }
+        }
+    }
+})
+
+private class Compilation(private val classes: File, diagnostics: List<Diagnostic<out JavaFileObject>>) {
+    val errors = diagnostics.filter { it.kind == Diagnostic.Kind.ERROR }.map { it.getMessage(null) }
+    val notes = diagnostics.filter { it.kind == Diagnostic.Kind.NOTE }.map { it.getMessage(null) }
+    private val classLoader = URLClassLoader(arrayOf(classes.toURI().toURL()), Xml::class.java.classLoader)
+
+    fun hasClass(name: String) = File(classes, name.replace('.', '/') + ".class").exists()
+
+    fun adapter(name: String): XmlAdapter<Any> = Xml.Builder().build().adapter<Any>(classLoader.loadClass(name) as Type)
+}
+
+/**
+ * Compiles the given sources, running the processor over them if {@code process} is true.
+ */
+private fun compile(vararg sources: Pair<String, String>, process: Boolean = true): Compilation {
+    val sourceDir = Files.createTempDirectory("sources").toFile()
+    val classes = Files.createTempDirectory("classes").toFile()
+    val files = sources.map { (name, source) ->
+        val file = File(sourceDir, name.replace('.', '/') + ".java")
+        file.parentFile.mkdirs()
+        file.writeText(source.trimIndent())
+        file
+    }
+    val classpath = listOf(Xml::class.java, XmlPullParser::class.java)
+            .map { File(it.protectionDomain.codeSource.location.toURI()).path }
+            .joinToString(File.pathSeparator)
+    val compiler = ToolProvider.getSystemJavaCompiler()
+    val diagnostics = DiagnosticCollector<JavaFileObject>()
+    val fileManager = compiler.getStandardFileManager(diagnostics, null, null)
+    val options = mutableListOf("-d", classes.path, "-classpath", classpath)
+    if (!process) options.add("-proc:none")
+    val task = compiler.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromFiles(files))
+    if (process) task.setProcessors(listOf(ParsnipProcessor()))
+    task.call()
+    fileManager.close()
+    return Compilation(classes, diagnostics.diagnostics)
+}
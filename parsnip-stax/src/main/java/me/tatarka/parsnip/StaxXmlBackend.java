@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * A backend that parses and serializes with a StAX implementation, ex: Woodstox or Aalto, which are
+ * much faster than kxml2 on a server JVM. StAX isn't available on Android.
+ * <pre>{@code
+ * Xml xml = new Xml.Builder()
+ *     .backend(new StaxXmlBackend(new WstxInputFactory(), new WstxOutputFactory()))
+ *     .build();
+ * }</pre>
+ * The parsers read the same events kxml2 does. The one difference is that
+ * {@link XmlPullParser#isEmptyElementTag()} is always false, since StAX doesn't report it. Empty
+ * elements are written as a start and end tag.
+ */
+public final class StaxXmlBackend extends XmlBackend {
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+
+    /**
+     * Uses the default StAX implementation, see {@link XMLInputFactory#newInstance()}.
+     */
+    public StaxXmlBackend() {
+        this(XMLInputFactory.newInstance(), XMLOutputFactory.newInstance());
+    }
+
+    /**
+     * Uses the given factories. The input factory is configured to be namespace aware, to coalesce
+     * text and to not support DTDs, so it shouldn't be shared with code that needs otherwise.
+     */
+    public StaxXmlBackend(XMLInputFactory inputFactory, XMLOutputFactory outputFactory) {
+        if (inputFactory == null) throw new IllegalArgumentException("inputFactory == null");
+        if (outputFactory == null) throw new IllegalArgumentException("outputFactory == null");
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.inputFactory = inputFactory;
+        this.outputFactory = outputFactory;
+    }
+
+    @Override
+    public XmlPullParser newParser(InputStream stream, String encoding) throws XmlPullParserException {
+        StaxXmlPullParser parser = new StaxXmlPullParser(inputFactory);
+        parser.setInput(stream, encoding);
+        return parser;
+    }
+
+    @Override
+    public XmlPullParser newParser(Reader reader) throws XmlPullParserException {
+        StaxXmlPullParser parser = new StaxXmlPullParser(inputFactory);
+        parser.setInput(reader);
+        return parser;
+    }
+
+    @Override
+    public XmlSerializer newSerializer(OutputStream stream, String encoding) throws IOException {
+        StaxXmlSerializer serializer = new StaxXmlSerializer(outputFactory);
+        serializer.setOutput(stream, encoding);
+        return serializer;
+    }
+
+    @Override
+    public XmlSerializer newSerializer(Writer writer) throws IOException {
+        StaxXmlSerializer serializer = new StaxXmlSerializer(outputFactory);
+        serializer.setOutput(writer);
+        return serializer;
+    }
+
+    @Override
+    public String toString() {
+        return "StaxXmlBackend(" + inputFactory.getClass().getName() + ", " + outputFactory.getClass().getName() + ")";
+    }
+}
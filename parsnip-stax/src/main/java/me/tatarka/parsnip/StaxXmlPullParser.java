@@ -0,0 +1,476 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a StAX {@link XMLStreamReader} as an {@link XmlPullParser}, with the same events
+ * {@link org.kxml2.io.KXmlParser} would report: text, CDATA and entities are merged, and comments,
+ * processing instructions and whitespace outside the root element are skipped.
+ */
+final class StaxXmlPullParser implements XmlPullParser {
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    private final XMLInputFactory factory;
+    private XMLStreamReader reader;
+    private String inputEncoding;
+    // If the reader has already moved to the next event, after the text before it was merged.
+    private boolean pending;
+
+    private int type = START_DOCUMENT;
+    private int depth;
+    private String name;
+    private String namespace;
+    private String prefix;
+
+    private final StringBuilder textBuilder = new StringBuilder();
+    private String text;
+    private char[] chars = new char[128];
+    private boolean whitespace;
+
+    // The number of namespaces declared at each depth and above.
+    private int[] namespaceCounts = new int[16];
+    private String[] namespacePrefixes = new String[8];
+    private String[] namespaceUris = new String[8];
+
+    StaxXmlPullParser(XMLInputFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) throws XmlPullParserException {
+        if (FEATURE_PROCESS_NAMESPACES.equals(name) ? !state : state) {
+            throw new XmlPullParserException("unsupported feature: " + name + " = " + state);
+        }
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return FEATURE_PROCESS_NAMESPACES.equals(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws XmlPullParserException {
+        throw new XmlPullParserException("unsupported property: " + name);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setInput(Reader in) throws XmlPullParserException {
+        if (in == null) throw new IllegalArgumentException("in == null");
+        try {
+            reset(factory.createXMLStreamReader(in), null);
+        } catch (XMLStreamException e) {
+            throw new XmlPullParserException(e.getMessage(), null, e);
+        }
+    }
+
+    @Override
+    public void setInput(InputStream inputStream, String inputEncoding) throws XmlPullParserException {
+        if (inputStream == null) throw new IllegalArgumentException("inputStream == null");
+        try {
+            reset(inputEncoding != null
+                    ? factory.createXMLStreamReader(inputStream, inputEncoding)
+                    : factory.createXMLStreamReader(inputStream), inputEncoding);
+        } catch (XMLStreamException e) {
+            throw new XmlPullParserException(e.getMessage(), null, e);
+        }
+    }
+
+    private void reset(XMLStreamReader reader, String inputEncoding) {
+        this.reader = reader;
+        this.inputEncoding = inputEncoding;
+        pending = false;
+        type = START_DOCUMENT;
+        depth = 0;
+        name = namespace = prefix = null;
+        text = null;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        if (inputEncoding != null) return inputEncoding;
+        return reader != null ? reader.getEncoding() : null;
+    }
+
+    @Override
+    public void defineEntityReplacementText(String entityName, String replacementText) throws XmlPullParserException {
+        throw new XmlPullParserException("custom entities are not supported");
+    }
+
+    @Override
+    public int getNamespaceCount(int depth) throws XmlPullParserException {
+        if (depth > this.depth) throw new IndexOutOfBoundsException();
+        return namespaceCounts[depth];
+    }
+
+    @Override
+    public String getNamespacePrefix(int pos) throws XmlPullParserException {
+        return namespacePrefixes[pos];
+    }
+
+    @Override
+    public String getNamespaceUri(int pos) throws XmlPullParserException {
+        return namespaceUris[pos];
+    }
+
+    @Override
+    public String getNamespace(String prefix) {
+        if ("xml".equals(prefix)) return XML_NAMESPACE;
+        if ("xmlns".equals(prefix)) return XMLNS_NAMESPACE;
+        for (int i = namespaceCounts[depth] - 1; i >= 0; i--) {
+            String declared = namespacePrefixes[i];
+            if (prefix == null ? declared == null : prefix.equals(declared)) {
+                return namespaceUris[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        StringBuilder description = new StringBuilder(type < TYPES.length ? TYPES[type] : "unknown");
+        if (type == START_TAG || type == END_TAG) {
+            description.append(type == START_TAG ? " <" : " </");
+            if (prefix != null) description.append(prefix).append(':');
+            description.append(name).append('>');
+        }
+        return description.append(" @").append(getLineNumber()).append(':').append(getColumnNumber()).toString();
+    }
+
+    @Override
+    public int getLineNumber() {
+        Location location = reader != null ? reader.getLocation() : null;
+        return location != null ? location.getLineNumber() : -1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        Location location = reader != null ? reader.getLocation() : null;
+        return location != null ? location.getColumnNumber() : -1;
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (type != TEXT) {
+            throw new XmlPullParserException("not on text", this, null);
+        }
+        return whitespace;
+    }
+
+    @Override
+    public String getText() {
+        if (type != TEXT) return null;
+        if (text == null) {
+            text = textBuilder.toString();
+        }
+        return text;
+    }
+
+    @Override
+    public char[] getTextCharacters(int[] holderForStartAndLength) {
+        if (type != TEXT) {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+        int length = textBuilder.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        textBuilder.getChars(0, length, chars, 0);
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = length;
+        return chars;
+    }
+
+    @Override
+    public String getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Always false, StAX doesn't report whether a tag was empty.
+     */
+    @Override
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        if (type != START_TAG) {
+            throw new XmlPullParserException("not on a start tag", this, null);
+        }
+        return false;
+    }
+
+    // The reader is still on the start element while the parser is on a start tag.
+
+    @Override
+    public int getAttributeCount() {
+        return type == START_TAG ? reader.getAttributeCount() : -1;
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        checkAttribute(index);
+        return emptyIfNull(reader.getAttributeNamespace(index));
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        checkAttribute(index);
+        return reader.getAttributeLocalName(index);
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        checkAttribute(index);
+        return nullIfEmpty(reader.getAttributePrefix(index));
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        checkAttribute(index);
+        return reader.getAttributeType(index);
+    }
+
+    @Override
+    public boolean isAttributeDefault(int index) {
+        checkAttribute(index);
+        return !reader.isAttributeSpecified(index);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        checkAttribute(index);
+        return reader.getAttributeValue(index);
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String name) {
+        if (type != START_TAG) return null;
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            if (reader.getAttributeLocalName(i).equals(name)
+                    && (namespace == null || namespace.equals(emptyIfNull(reader.getAttributeNamespace(i))))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private void checkAttribute(int index) {
+        if (type != START_TAG || index < 0 || index >= reader.getAttributeCount()) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+
+    @Override
+    public int getEventType() throws XmlPullParserException {
+        return type;
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (reader == null) {
+            throw new XmlPullParserException("no input", this, null);
+        }
+        if (type == END_TAG) {
+            depth--;
+        }
+        if (type == END_DOCUMENT) {
+            return type;
+        }
+        name = namespace = prefix = null;
+        text = null;
+        try {
+            while (true) {
+                int event = pending ? reader.getEventType() : reader.next();
+                pending = false;
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        pushNamespaces();
+                        readName();
+                        return type = START_TAG;
+                    case XMLStreamConstants.END_ELEMENT:
+                        readName();
+                        return type = END_TAG;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (depth > 0) {
+                            readText();
+                            return type = TEXT;
+                        }
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        throw new XmlPullParserException("unresolved: &" + reader.getLocalName() + ";", this, null);
+                    case XMLStreamConstants.END_DOCUMENT:
+                        if (depth > 0) {
+                            throw new XmlPullParserException("Unexpected EOF", this, null);
+                        }
+                        return type = END_DOCUMENT;
+                    default:
+                        // Comments, processing instructions and the doctype.
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new XmlPullParserException(e.getMessage(), this, e);
+        }
+    }
+
+    /**
+     * Merges the text at the reader with any text after it, up to the next tag. Leaves the reader
+     * on the event after.
+     */
+    private void readText() throws XMLStreamException, XmlPullParserException {
+        textBuilder.setLength(0);
+        whitespace = true;
+        int event = reader.getEventType();
+        while (true) {
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                int start = reader.getTextStart();
+                int length = reader.getTextLength();
+                char[] text = reader.getTextCharacters();
+                if (whitespace) {
+                    for (int i = start; i < start + length; i++) {
+                        if (text[i] > ' ') {
+                            whitespace = false;
+                            break;
+                        }
+                    }
+                }
+                textBuilder.append(text, start, length);
+            } else if (event == XMLStreamConstants.ENTITY_REFERENCE) {
+                throw new XmlPullParserException("unresolved: &" + reader.getLocalName() + ";", this, null);
+            } else if (event != XMLStreamConstants.COMMENT && event != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                break;
+            }
+            event = reader.next();
+        }
+        pending = true;
+    }
+
+    private void readName() {
+        name = reader.getLocalName();
+        namespace = emptyIfNull(reader.getNamespaceURI());
+        prefix = nullIfEmpty(reader.getPrefix());
+    }
+
+    private void pushNamespaces() {
+        if (depth == namespaceCounts.length) {
+            namespaceCounts = Arrays.copyOf(namespaceCounts, depth * 2);
+        }
+        int count = namespaceCounts[depth - 1];
+        int declared = reader.getNamespaceCount();
+        if (count + declared > namespacePrefixes.length) {
+            int size = Math.max(count + declared, namespacePrefixes.length * 2);
+            namespacePrefixes = Arrays.copyOf(namespacePrefixes, size);
+            namespaceUris = Arrays.copyOf(namespaceUris, size);
+        }
+        for (int i = 0; i < declared; i++) {
+            namespacePrefixes[count] = nullIfEmpty(reader.getNamespacePrefix(i));
+            namespaceUris[count] = emptyIfNull(reader.getNamespaceURI(i));
+            count++;
+        }
+        namespaceCounts[depth] = count;
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        throw new XmlPullParserException("nextToken() is not supported", this, null);
+    }
+
+    @Override
+    public void require(int type, String namespace, String name) throws XmlPullParserException, IOException {
+        if (type != this.type
+                || (namespace != null && !namespace.equals(getNamespace()))
+                || (name != null && !name.equals(getName()))) {
+            throw new XmlPullParserException("expected " + TYPES[type] + " " + name + " but was " + getPositionDescription(), this, null);
+        }
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        if (type != START_TAG) {
+            throw new XmlPullParserException("precondition: START_TAG", this, null);
+        }
+        next();
+        String result;
+        if (type == TEXT) {
+            result = getText();
+            next();
+        } else {
+            result = "";
+        }
+        if (type != END_TAG) {
+            throw new XmlPullParserException("END_TAG expected", this, null);
+        }
+        return result;
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        next();
+        if (type == TEXT && whitespace) {
+            next();
+        }
+        if (type != END_TAG && type != START_TAG) {
+            throw new XmlPullParserException("unexpected type", this, null);
+        }
+        return type;
+    }
+
+    private static String emptyIfNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes to a StAX {@link XMLStreamWriter} as an {@link XmlSerializer}. Namespace prefixes are
+ * tracked here the way {@link org.kxml2.io.KXmlSerializer} does it: {@link #setPrefix(String,
+ * String)} declares a prefix on the next start tag, and a namespace without a prefix gets a
+ * generated one.
+ */
+final class StaxXmlSerializer implements XmlSerializer {
+    private final XMLOutputFactory factory;
+    private XMLStreamWriter writer;
+
+    private int depth;
+    // The namespace and name of the open element at each depth.
+    private String[] elements = new String[16];
+    // Prefix and namespace pairs in scope, including those set for the next start tag.
+    private String[] bindings = new String[16];
+    private int bindingCount;
+    // The first binding not yet written out.
+    private int pendingBinding;
+    // The binding count before the element at each depth declared its own.
+    private int[] bindingStarts = new int[8];
+    private int generatedPrefixes;
+
+    StaxXmlSerializer(XMLOutputFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) {
+        throw new IllegalStateException("unsupported feature: " + name);
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        throw new IllegalStateException("unsupported property: " + name);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setOutput(OutputStream os, String encoding) throws IOException {
+        if (os == null) throw new IllegalArgumentException("os == null");
+        try {
+            reset(encoding != null ? factory.createXMLStreamWriter(os, encoding) : factory.createXMLStreamWriter(os));
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void setOutput(Writer writer) throws IOException {
+        if (writer == null) throw new IllegalArgumentException("writer == null");
+        try {
+            reset(factory.createXMLStreamWriter(writer));
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void reset(XMLStreamWriter writer) {
+        this.writer = writer;
+        depth = 0;
+        bindingCount = 0;
+        pendingBinding = 0;
+        generatedPrefixes = 0;
+    }
+
+    @Override
+    public void startDocument(String encoding, Boolean standalone) throws IOException {
+        try {
+            if (encoding != null) {
+                writer.writeStartDocument(encoding, "1.0");
+            } else {
+                writer.writeStartDocument();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        while (depth > 0) {
+            endTag(elements[depth * 2 - 2], elements[depth * 2 - 1]);
+        }
+        try {
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void setPrefix(String prefix, String namespace) {
+        if (prefix == null) prefix = "";
+        if (namespace == null) namespace = "";
+        if (prefix.equals(findPrefix(namespace, true))) {
+            return;
+        }
+        addBinding(prefix, namespace);
+    }
+
+    @Override
+    public String getPrefix(String namespace, boolean generatePrefix) {
+        String prefix = findPrefix(namespace, true);
+        if (prefix == null && generatePrefix) {
+            prefix = generatePrefix(namespace);
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns the prefix bound to {@code namespace}, ignoring prefixes that are bound to something
+     * else in a nested scope.
+     */
+    private String findPrefix(String namespace, boolean includeDefault) {
+        for (int i = bindingCount * 2 - 2; i >= 0; i -= 2) {
+            if (!bindings[i + 1].equals(namespace) || (!includeDefault && bindings[i].isEmpty())) {
+                continue;
+            }
+            String prefix = bindings[i];
+            boolean shadowed = false;
+            for (int j = i + 2; j < bindingCount * 2; j += 2) {
+                if (bindings[j].equals(prefix)) {
+                    shadowed = true;
+                    break;
+                }
+            }
+            if (!shadowed) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    private String generatePrefix(String namespace) {
+        String prefix;
+        do {
+            prefix = "n" + generatedPrefixes++;
+        } while (findNamespace(prefix) != null);
+        addBinding(prefix, namespace);
+        return prefix;
+    }
+
+    private String findNamespace(String prefix) {
+        for (int i = bindingCount * 2 - 2; i >= 0; i -= 2) {
+            if (bindings[i].equals(prefix)) {
+                return bindings[i + 1];
+            }
+        }
+        return null;
+    }
+
+    private void addBinding(String prefix, String namespace) {
+        if (bindingCount * 2 == bindings.length) {
+            bindings = Arrays.copyOf(bindings, bindings.length * 2);
+        }
+        bindings[bindingCount * 2] = prefix;
+        bindings[bindingCount * 2 + 1] = namespace;
+        bindingCount++;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getNamespace() {
+        return depth > 0 ? elements[depth * 2 - 2] : null;
+    }
+
+    @Override
+    public String getName() {
+        return depth > 0 ? elements[depth * 2 - 1] : null;
+    }
+
+    @Override
+    public XmlSerializer startTag(String namespace, String name) throws IOException {
+        if (name == null) throw new IllegalArgumentException("name == null");
+        if (namespace == null) namespace = "";
+        String prefix = "";
+        if (!namespace.isEmpty()) {
+            prefix = findPrefix(namespace, true);
+            if (prefix == null) {
+                prefix = generatePrefix(namespace);
+            }
+        } else {
+            // The element can't be in the default namespace, so drop a default set for it and
+            // unset one inherited from its parent. Children in that namespace get a prefix instead.
+            int kept = pendingBinding;
+            for (int i = pendingBinding; i < bindingCount; i++) {
+                if (!bindings[i * 2].isEmpty() || bindings[i * 2 + 1].isEmpty()) {
+                    bindings[kept * 2] = bindings[i * 2];
+                    bindings[kept * 2 + 1] = bindings[i * 2 + 1];
+                    kept++;
+                }
+            }
+            bindingCount = kept;
+            String defaultNamespace = findNamespace("");
+            if (defaultNamespace != null && !defaultNamespace.isEmpty()) {
+                addBinding("", "");
+            }
+        }
+        depth++;
+        if (depth == bindingStarts.length) {
+            bindingStarts = Arrays.copyOf(bindingStarts, depth * 2);
+        }
+        if (depth * 2 > elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+        bindingStarts[depth] = pendingBinding;
+        elements[depth * 2 - 2] = namespace;
+        elements[depth * 2 - 1] = name;
+        try {
+            writer.writeStartElement(prefix, name, namespace);
+            writeBindings();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return this;
+    }
+
+    private void writeBindings() throws XMLStreamException {
+        for (int i = pendingBinding; i < bindingCount; i++) {
+            String prefix = bindings[i * 2];
+            String namespace = bindings[i * 2 + 1];
+            if (prefix.isEmpty()) {
+                writer.writeDefaultNamespace(namespace);
+            } else {
+                writer.writeNamespace(prefix, namespace);
+            }
+        }
+        pendingBinding = bindingCount;
+    }
+
+    @Override
+    public XmlSerializer attribute(String namespace, String name, String value) throws IOException {
+        try {
+            if (namespace == null || namespace.isEmpty()) {
+                writer.writeAttribute(name, value);
+            } else {
+                // Attributes can't use the default namespace.
+                String prefix = findPrefix(namespace, false);
+                if (prefix == null) {
+                    prefix = generatePrefix(namespace);
+                    writeBindings();
+                }
+                writer.writeAttribute(prefix, namespace, name, value);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public XmlSerializer endTag(String namespace, String name) throws IOException {
+        if (namespace == null) namespace = "";
+        if (depth == 0 || !namespace.equals(elements[depth * 2 - 2]) || !name.equals(elements[depth * 2 - 1])) {
+            throw new IllegalArgumentException("</{" + namespace + "}" + name + "> does not match start");
+        }
+        try {
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        bindingCount = bindingStarts[depth];
+        pendingBinding = bindingCount;
+        depth--;
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(String text) throws IOException {
+        try {
+            writer.writeCharacters(text);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(char[] buf, int start, int len) throws IOException {
+        try {
+            writer.writeCharacters(buf, start, len);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public void cdsect(String text) throws IOException {
+        try {
+            writer.writeCData(text);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void entityRef(String text) throws IOException {
+        try {
+            writer.writeEntityRef(text);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String text) throws IOException {
+        int space = text.indexOf(' ');
+        try {
+            if (space == -1) {
+                writer.writeProcessingInstruction(text);
+            } else {
+                writer.writeProcessingInstruction(text.substring(0, space), text.substring(space + 1));
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void comment(String text) throws IOException {
+        try {
+            writer.writeComment(text);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void docdecl(String text) throws IOException {
+        try {
+            writer.writeDTD("<!DOCTYPE" + text + ">");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(String text) throws IOException {
+        text(text);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.classes.TagObject
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import kotlin.test.assertEquals
+
+@RunWith(JUnitPlatform::class)
+class StaxXmlBackendSpecs : Spek({
+    describe("an Xml with a StAX backend") {
+        val xml = Xml.Builder().backend(StaxXmlBackend()).build()
+
+        context("an object read from xml") {
+            val adapter = xml.adapter(TagObject::class.java)
+            val tagObject = adapter.fromXml("<TagObject><text>te<!-- comment -->st</text><item>test1</item><item><![CDATA[test2]]></item></TagObject>")
+
+            it("should set the text field") {
+                assertEquals("test", tagObject.text)
+            }
+
+            it("should set the items field") {
+                assertEquals(listOf("test1", "test2"), tagObject.items)
+            }
+        }
+
+        context("an object written to xml") {
+            val adapter = xml.adapter(TagObject::class.java)
+            val result = adapter.toXml(TagObject(text = "test", items = listOf("test1", "test2")))
+
+            it("should write the fields as tags") {
+                assertEquals("<TagObject><text>test</text><item>test1</item><item>test2</item></TagObject>", result)
+            }
+        }
+    }
+})
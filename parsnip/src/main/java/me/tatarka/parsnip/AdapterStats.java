@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of how adapters and converters have been created and looked up, from
+ * {@link Xml#stats()}. Use it to find slow or deeply chained factories, and to check that
+ * {@link Xml#warmUp(Type...)} created everything that is later used.
+ */
+public final class AdapterStats {
+    private final long adapterCacheHitCount;
+    private final long adapterCacheMissCount;
+    private final long converterCacheHitCount;
+    private final long converterCacheMissCount;
+    private final long deferredAdapterCount;
+    private final int adapterCount;
+    private final int converterCount;
+    private final Map<Type, Long> adapterProbeCounts;
+    private final Map<Type, Long> converterProbeCounts;
+    private final long predictedMatchHitCount;
+    private final long predictedMatchMissCount;
+    private final List<XmlAdapter.Factory> adapterFactories;
+    private final long[] adapterFactoryNanos;
+    private final List<TypeConverter.Factory> converterFactories;
+    private final long[] converterFactoryNanos;
+
+    AdapterStats(long adapterCacheHitCount, long adapterCacheMissCount,
+                 long converterCacheHitCount, long converterCacheMissCount,
+                 long deferredAdapterCount, int adapterCount, int converterCount,
+                 Map<Type, Long> adapterProbeCounts, Map<Type, Long> converterProbeCounts,
+                 long predictedMatchHitCount, long predictedMatchMissCount,
+                 List<XmlAdapter.Factory> adapterFactories, long[] adapterFactoryNanos,
+                 List<TypeConverter.Factory> converterFactories, long[] converterFactoryNanos) {
+        this.adapterCacheHitCount = adapterCacheHitCount;
+        this.adapterCacheMissCount = adapterCacheMissCount;
+        this.converterCacheHitCount = converterCacheHitCount;
+        this.converterCacheMissCount = converterCacheMissCount;
+        this.deferredAdapterCount = deferredAdapterCount;
+        this.adapterCount = adapterCount;
+        this.converterCount = converterCount;
+        this.adapterProbeCounts = Collections.unmodifiableMap(adapterProbeCounts);
+        this.converterProbeCounts = Collections.unmodifiableMap(converterProbeCounts);
+        this.predictedMatchHitCount = predictedMatchHitCount;
+        this.predictedMatchMissCount = predictedMatchMissCount;
+        this.adapterFactories = adapterFactories;
+        this.adapterFactoryNanos = adapterFactoryNanos;
+        this.converterFactories = converterFactories;
+        this.converterFactoryNanos = converterFactoryNanos;
+    }
+
+    /**
+     * The number of adapter lookups that were answered from the cache.
+     */
+    public long adapterCacheHitCount() {
+        return adapterCacheHitCount;
+    }
+
+    /**
+     * The number of adapter lookups that had to ask the factories.
+     */
+    public long adapterCacheMissCount() {
+        return adapterCacheMissCount;
+    }
+
+    /**
+     * The number of converter lookups that were answered from the cache.
+     */
+    public long converterCacheHitCount() {
+        return converterCacheHitCount;
+    }
+
+    /**
+     * The number of converter lookups that had to ask the factories.
+     */
+    public long converterCacheMissCount() {
+        return converterCacheMissCount;
+    }
+
+    /**
+     * The number of placeholder adapters created while building adapters, one per adapter build.
+     * A placeholder is handed out in place of an adapter that refers back to itself.
+     */
+    public long deferredAdapterCount() {
+        return deferredAdapterCount;
+    }
+
+    /**
+     * The number of adapters currently cached.
+     */
+    public int adapterCount() {
+        return adapterCount;
+    }
+
+    /**
+     * The number of converters currently cached.
+     */
+    public int converterCount() {
+        return converterCount;
+    }
+
+    /**
+     * How many times an adapter factory was asked to create an adapter for each type. A type that
+     * needs many probes sits behind a long chain of factories that don't handle it.
+     */
+    public Map<Type, Long> adapterFactoryProbeCounts() {
+        return adapterProbeCounts;
+    }
+
+    /**
+     * How many times a converter factory was asked to create a converter for each type. These are
+     * counted apart from {@link #adapterFactoryProbeCounts()}, since an attribute's type is usually
+     * probed by both: first for an adapter, then for a converter.
+     */
+    public Map<Type, Long> converterFactoryProbeCounts() {
+        return converterProbeCounts;
+    }
+
+    /**
+     * The number of tags and attributes the reflective adapters matched to a field by predicting
+     * that the document is in the same order as the last one. Lookups are counted once each
+     * object has been read, so an object still being read isn't counted yet.
+     */
+    public long predictedMatchHitCount() {
+        return predictedMatchHitCount;
+    }
+
+    /**
+     * The number of tags and attributes the reflective adapters had to look up by name, because
+     * they weren't where the last document had them, or aren't bound to a field.
+     */
+    public long predictedMatchMissCount() {
+        return predictedMatchMissCount;
+    }
+
+    /**
+     * The fraction of tag and attribute lookups that were predicted, between 0 and 1.
+     */
+    public double predictedMatchHitRate() {
+        long total = predictedMatchHitCount + predictedMatchMissCount;
+        return total != 0 ? (double) predictedMatchHitCount / total : 0;
+    }
+
+    /**
+     * The total time spent in {@code factory.create()}. This includes the time it spent creating
+     * the adapters it depends on.
+     *
+     * @throws IllegalArgumentException if the factory is not registered.
+     */
+    public long factoryTime(XmlAdapter.Factory factory, TimeUnit unit) {
+        int index = adapterFactories.indexOf(factory);
+        if (index == -1) {
+            throw new IllegalArgumentException("Unknown factory " + factory);
+        }
+        return unit.convert(adapterFactoryNanos[index], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The total time spent in {@code factory.create()}.
+     *
+     * @throws IllegalArgumentException if the factory is not registered.
+     */
+    public long factoryTime(TypeConverter.Factory factory, TimeUnit unit) {
+        int index = converterFactories.indexOf(factory);
+        if (index == -1) {
+            throw new IllegalArgumentException("Unknown factory " + factory);
+        }
+        return unit.convert(converterFactoryNanos[index], TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder()
+                .append("adapters: ").append(adapterCount)
+                .append(" (").append(adapterCacheHitCount).append(" hits, ")
+                .append(adapterCacheMissCount).append(" misses, ")
+                .append(deferredAdapterCount).append(" deferred)\n")
+                .append("converters: ").append(converterCount)
+                .append(" (").append(converterCacheHitCount).append(" hits, ")
+                .append(converterCacheMissCount).append(" misses)\n")
+                .append("predicted matches: ").append(predictedMatchHitCount).append(" hits, ")
+                .append(predictedMatchMissCount).append(" misses\n");
+        for (int i = 0; i < adapterFactories.size(); i++) {
+            result.append(adapterFactories.get(i)).append(": ")
+                    .append(TimeUnit.NANOSECONDS.toMicros(adapterFactoryNanos[i])).append("us\n");
+        }
+        for (int i = 0; i < converterFactories.size(); i++) {
+            result.append(converterFactories.get(i)).append(": ")
+                    .append(TimeUnit.NANOSECONDS.toMicros(converterFactoryNanos[i])).append("us\n");
+        }
+        result.setLength(result.length() - 1);
+        return result.toString();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the binding for a tag or attribute. Documents of the same type almost always list their
+ * children and attributes in the same order, so this remembers which binding followed each binding
+ * last time (and which binding was at each attribute position) and checks that one first. Only if
+ * that doesn't match does it fall back to a {@link NameTable} lookup. Callers check the prediction
+ * first and only call the matching {@code find} method if it's -1.
+ * <p>
+ * The predictions are shared by every thread using the adapter. Racing updates can only cause an
+ * extra miss, so they aren't synchronized. Nothing is written on a hit, so that threads reading
+ * documents in the usual order don't write to shared memory at all.
+ */
+final class BindingMatcher<B> {
+    // Attribute positions beyond this aren't predicted.
+    private static final int MAX_ATTRIBUTE_POSITIONS = 32;
+
+    private final List<B> bindings;
+    private final String[] names;
+    private final String[] namespaces;
+    // Only bindings that are the only one with their name are predicted, a binding for the same
+    // name in a different namespace may need to win instead.
+    private final boolean[] predictable;
+    private final NameTable table;
+    // The binding that followed binding i last time is at i + 1, the first binding is at 0.
+    private final int[] predictedNext;
+    private final int[] predictedAt;
+
+    BindingMatcher(List<B> bindings, List<TagInfo> tagInfos, Names interned) {
+        this.bindings = bindings;
+        int size = bindings.size();
+        names = new String[size];
+        namespaces = new String[size];
+        List<String> nameList = new ArrayList<>(size);
+        List<String> namespaceList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TagInfo tagInfo = tagInfos.get(i);
+            // The parser returns the same instances, so matching usually only compares references.
+            names[i] = interned.intern(tagInfo.name());
+            namespaces[i] = tagInfo.namespace() != null ? interned.intern(tagInfo.namespace()) : null;
+            nameList.add(names[i]);
+            namespaceList.add(namespaces[i]);
+        }
+        table = new NameTable(nameList, namespaceList);
+        predictable = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            predictable[i] = table.isUnique(names[i]);
+        }
+        predictedNext = new int[size + 1];
+        Arrays.fill(predictedNext, -1);
+        predictedAt = new int[size == 0 ? 0 : MAX_ATTRIBUTE_POSITIONS];
+        Arrays.fill(predictedAt, -1);
+    }
+
+    boolean isEmpty() {
+        return bindings.isEmpty();
+    }
+
+    B get(int index) {
+        return bindings.get(index);
+    }
+
+    /**
+     * Returns the index of the binding predicted to follow the tag bound to {@code previous} (or -1
+     * for the first tag) if it's the binding for the given tag, or -1 if it isn't.
+     */
+    int predictNext(int previous, String name, String namespace) {
+        int predicted = predictedNext[previous + 1];
+        return predicted != -1 && matches(predicted, name, namespace) ? predicted : -1;
+    }
+
+    /**
+     * Returns the index of the binding for the given tag, which follows the tag bound to
+     * {@code previous} (or -1 for the first tag), or -1 if there isn't one. The binding found is
+     * predicted next time.
+     */
+    int findNext(int previous, String name, String namespace) {
+        int index = table.indexOf(name, namespace);
+        if (index != -1) {
+            predictedNext[previous + 1] = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the binding predicted for the attribute at {@code position} if it's the
+     * binding for the given attribute, or -1 if it isn't.
+     */
+    int predictAt(int position, String name, String namespace) {
+        if (position >= predictedAt.length) return -1;
+        int predicted = predictedAt[position];
+        return predicted != -1 && matches(predicted, name, namespace) ? predicted : -1;
+    }
+
+    /**
+     * Returns the index of the binding for the attribute at {@code position}, or -1 if there isn't
+     * one. The binding found is predicted next time.
+     */
+    int findAt(int position, String name, String namespace) {
+        int index = table.indexOf(name, namespace);
+        if (index != -1 && position < predictedAt.length) {
+            predictedAt[position] = index;
+        }
+        return index;
+    }
+
+    private boolean matches(int index, String name, String namespace) {
+        if (!predictable[index]) return false;
+        String expectedName = names[index];
+        if (expectedName != name && !expectedName.equals(name)) return false;
+        // All namespaces match if none expected.
+        String expectedNamespace = namespaces[index];
+        return expectedNamespace == null || expectedNamespace == namespace || expectedNamespace.equals(namespace);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.tatarka.parsnip.ClassXmlAdapter.ClassPlan;
+import me.tatarka.parsnip.ClassXmlAdapter.FieldPlan;
+
+/**
+ * A compact binary form of the {@link ClassPlan}s for a set of classes. Each plan is only decoded
+ * when an adapter for its class is first created. Each plan stores a fingerprint of the fields of
+ * its class, a plan that no longer matches its class (ex: a field was added or renamed) is ignored
+ * and the class is reflected on as usual. Annotations aren't part of the fingerprint, so changing
+ * only an annotation needs a new snapshot.
+ */
+final class BindingSnapshot {
+    private static final int MAGIC = 0x50534e50; // PSNP
+    private static final int VERSION = 3;
+
+    private static final byte TYPE_CLASS = 0;
+    private static final byte TYPE_PARAMETERIZED = 1;
+    private static final byte TYPE_GENERIC_ARRAY = 2;
+    private static final byte TYPE_WILDCARD = 3;
+
+    private static final int FLAG_TEXT = 1;
+    private static final int FLAG_QUALIFIED = 1 << 1;
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        Class<?>[] primitives = {boolean.class, byte.class, char.class, double.class, float.class,
+                int.class, long.class, short.class, void.class};
+        for (Class<?> primitive : primitives) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+    }
+
+    private final Map<String, byte[]> plans;
+    private final ClassLoader classLoader;
+
+    private BindingSnapshot(Map<String, byte[]> plans, ClassLoader classLoader) {
+        this.plans = plans;
+        this.classLoader = classLoader;
+    }
+
+    static void write(OutputStream stream, Collection<ClassPlan> plans) throws IOException {
+        List<String> keys = new ArrayList<>(plans.size());
+        List<byte[]> blocks = new ArrayList<>(plans.size());
+        for (ClassPlan plan : plans) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            try {
+                writePlan(new DataOutputStream(block), plan);
+            } catch (UnsupportedTypeException e) {
+                // Can't be represented, this class will just be reflected on when loaded.
+                continue;
+            }
+            keys.add(key(plan.type));
+            blocks.add(block.toByteArray());
+        }
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeUTF(keys.get(i));
+            byte[] block = blocks.get(i);
+            out.writeInt(block.length);
+            out.write(block);
+        }
+        out.flush();
+    }
+
+    static BindingSnapshot read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binding snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binding snapshot version: " + version);
+        }
+        int count = in.readInt();
+        Map<String, byte[]> plans = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            byte[] block = new byte[in.readInt()];
+            in.readFully(block);
+            plans.put(key, block);
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = BindingSnapshot.class.getClassLoader();
+        }
+        return new BindingSnapshot(plans, classLoader);
+    }
+
+    /**
+     * Returns the plan for {@code type}, or null if there isn't one or it's out of date.
+     */
+    ClassPlan plan(Type type) {
+        byte[] block = plans.get(key(type));
+        if (block == null) return null;
+        try {
+            return readPlan(type, new DataInputStream(new ByteArrayInputStream(block)));
+        } catch (IOException | ClassNotFoundException | NoSuchFieldException | SecurityException ignored) {
+            // The classes have changed since the snapshot was taken.
+            return null;
+        }
+    }
+
+    private static String key(Type type) {
+        return Types.typeToString(Types.canonicalize(type));
+    }
+
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(Field a, Field b) {
+            return a.getName().compareTo(b.getName());
+        }
+    };
+
+    /**
+     * Returns a hash of the bound fields of {@code rawType} and its superclasses: their names,
+     * modifiers and types. Annotations aren't included, reading them is most of the reflection a
+     * snapshot is meant to save, so a snapshot has to be written again when they change.
+     * Reflection doesn't return fields in a fixed order, so they're sorted. If {@code fields} isn't
+     * null, each bound field is put in it by its declaring class and name.
+     */
+    static long fingerprint(Class<?> rawType, Map<String, Field> fields) {
+        StringBuilder description = new StringBuilder();
+        for (Class<?> c = rawType; c != Object.class && c != null; c = c.getSuperclass()) {
+            boolean platformType = ClassXmlAdapter.isPlatformType(c);
+            // The class itself is already the snapshot's key.
+            description.append(';');
+            if (c != rawType) {
+                description.append(c.getName());
+            }
+            Field[] declaredFields = c.getDeclaredFields();
+            Arrays.sort(declaredFields, FIELD_ORDER);
+            for (Field field : declaredFields) {
+                if (!ClassXmlAdapter.includeField(platformType, field.getModifiers())) continue;
+                description.append(',').append(field.getName())
+                        .append(' ').append(field.getModifiers())
+                        .append(' ').append(Types.typeToString(field.getGenericType()));
+                if (fields != null) {
+                    fields.put(fieldKey(c.getName(), field.getName()), field);
+                }
+            }
+        }
+        // 64-bit FNV-1a, String.hashCode() collides too easily to be trusted here.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = description.length(); i < length; i++) {
+            hash ^= description.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String fieldKey(String declaringClass, String name) {
+        return declaringClass + '#' + name;
+    }
+
+    private static void writePlan(DataOutputStream out, ClassPlan plan) throws IOException {
+        out.writeLong(fingerprint(Types.getRawType(plan.type), null));
+        out.writeUTF(plan.tagInfo.name());
+        writeNullableUTF(out, plan.tagInfo.namespace());
+        writeNullableUTF(out, plan.tagInfo.alias());
+        out.writeInt(plan.fields.size());
+        for (FieldPlan field : plan.fields) {
+            out.writeUTF(field.field.getDeclaringClass().getName());
+            out.writeUTF(field.field.getName());
+            writeType(out, field.type);
+            out.writeUTF(field.name);
+            writeNullableUTF(out, field.namespace);
+            writeNullableUTF(out, field.alias);
+            out.writeInt(field.expectedSize);
+            int flags = 0;
+            if (field.text) flags |= FLAG_TEXT;
+            if (!field.annotations.isEmpty()) flags |= FLAG_QUALIFIED;
+            out.writeByte(flags);
+        }
+    }
+
+    private ClassPlan readPlan(Type type, DataInputStream in) throws IOException, ClassNotFoundException, NoSuchFieldException {
+        Map<String, Field> declaredFields = new HashMap<>();
+        if (in.readLong() != fingerprint(Types.getRawType(type), declaredFields)) {
+            throw new IOException(type + " has changed since the snapshot was written");
+        }
+        TagInfo tagInfo = new TagInfo(in.readUTF(), readNullableUTF(in), readNullableUTF(in));
+        int count = in.readInt();
+        List<FieldPlan> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String declaringClass = in.readUTF();
+            String fieldName = in.readUTF();
+            Field field = declaredFields.get(fieldKey(declaringClass, fieldName));
+            if (field == null) {
+                throw new NoSuchFieldException(declaringClass + "." + fieldName);
+            }
+            Type fieldType = readType(in);
+            if (!field.getType().isAssignableFrom(Types.getRawType(fieldType))) {
+                throw new IOException("Field " + field + " is no longer a " + fieldType);
+            }
+            String name = in.readUTF();
+            String namespace = readNullableUTF(in);
+            String alias = readNullableUTF(in);
+            int expectedSize = in.readInt();
+            int flags = in.readByte();
+            // Qualifier annotations can't be stored, these fields still need to be reflected on.
+            Set<? extends Annotation> annotations = (flags & FLAG_QUALIFIED) != 0
+                    ? Util.xmlAnnotations(field) : Util.NO_ANNOTATIONS;
+            field.setAccessible(true);
+            fields.add(new FieldPlan(field, fieldType, annotations, name, namespace, alias, (flags & FLAG_TEXT) != 0, expectedSize));
+        }
+        return new ClassPlan(type, tagInfo, fields);
+    }
+
+    private static void writeType(DataOutputStream out, Type type) throws IOException {
+        if (type instanceof Class) {
+            out.writeByte(TYPE_CLASS);
+            out.writeUTF(((Class<?>) type).getName());
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            out.writeByte(TYPE_PARAMETERIZED);
+            Type ownerType = parameterizedType.getOwnerType();
+            out.writeBoolean(ownerType != null);
+            if (ownerType != null) {
+                writeType(out, ownerType);
+            }
+            writeType(out, parameterizedType.getRawType());
+            writeTypes(out, parameterizedType.getActualTypeArguments());
+        } else if (type instanceof GenericArrayType) {
+            out.writeByte(TYPE_GENERIC_ARRAY);
+            writeType(out, ((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            WildcardType wildcardType = (WildcardType) type;
+            out.writeByte(TYPE_WILDCARD);
+            writeTypes(out, wildcardType.getUpperBounds());
+            writeTypes(out, wildcardType.getLowerBounds());
+        } else {
+            throw new UnsupportedTypeException();
+        }
+    }
+
+    private static void writeTypes(DataOutputStream out, Type[] types) throws IOException {
+        out.writeInt(types.length);
+        for (Type type : types) {
+            writeType(out, type);
+        }
+    }
+
+    private Type readType(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case TYPE_CLASS:
+                return loadClass(in.readUTF());
+            case TYPE_PARAMETERIZED: {
+                Type ownerType = in.readBoolean() ? readType(in) : null;
+                Type rawType = readType(in);
+                Type[] typeArguments = readTypes(in);
+                return Types.newParameterizedTypeWithOwner(ownerType, rawType, typeArguments);
+            }
+            case TYPE_GENERIC_ARRAY:
+                return Types.arrayOf(readType(in));
+            case TYPE_WILDCARD: {
+                Type[] upperBounds = readTypes(in);
+                Type[] lowerBounds = readTypes(in);
+                return lowerBounds.length != 0 ? Types.supertypeOf(lowerBounds[0]) : Types.subtypeOf(upperBounds[0]);
+            }
+            default:
+                throw new IOException("Unknown type kind: " + kind);
+        }
+    }
+
+    private Type[] readTypes(DataInputStream in) throws IOException, ClassNotFoundException {
+        Type[] types = new Type[in.readInt()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = readType(in);
+        }
+        return types;
+    }
+
+    private Class<?> loadClass(String name) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null) return primitive;
+        return Class.forName(name, false, classLoader);
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static class UnsupportedTypeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
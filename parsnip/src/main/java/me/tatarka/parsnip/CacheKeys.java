@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns (type, annotations) pairs into keys that compare by identity, so that repeated lookups
+ * with the same annotations don't allocate or hash annotations.
+ */
+final class CacheKeys {
+    // Each type keeps a short list of its distinct annotation sets that's searched without
+    // allocating; any more than this go through keys that hash the annotations instead.
+    private static final int MAX_ENTRIES_PER_TYPE = 16;
+
+    private final ConcurrentHashMap<Type, Entry[]> qualifiedKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, Key> overflowKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Returns an opaque object that's the same instance if the type and annotations are equal. An
+     * unqualified type is its own key.
+     */
+    Object get(Type type, Set<? extends Annotation> annotations) {
+        if (annotations.isEmpty()) return type;
+
+        // Look the type up as passed first. It's usually equal to the canonical type it was stored
+        // with, and canonicalizing a parameterized type allocates a new one on every lookup.
+        Entry[] entries = qualifiedKeys.get(type);
+        Key key = find(entries, annotations);
+        if (key != null) return key;
+
+        type = Types.canonicalize(type);
+        entries = qualifiedKeys.get(type);
+        key = find(entries, annotations);
+        if (key != null) return key;
+        if (entries == null || entries.length < MAX_ENTRIES_PER_TYPE) {
+            synchronized (this) {
+                // Another thread may have added it while we were waiting on the lock.
+                entries = qualifiedKeys.get(type);
+                key = find(entries, annotations);
+                if (key != null) return key;
+                if (entries == null || entries.length < MAX_ENTRIES_PER_TYPE) {
+                    key = new Key(type, annotations);
+                    add(type, entries, key);
+                    return key;
+                }
+            }
+        }
+        key = new Key(type, annotations);
+        Key existing = overflowKeys.putIfAbsent(key, key);
+        return existing != null ? existing : key;
+    }
+
+    private static Key find(Entry[] entries, Set<? extends Annotation> annotations) {
+        if (entries == null) return null;
+        // Most callers pass the same annotation set every time.
+        for (Entry entry : entries) {
+            if (entry.annotations == annotations) return entry.key;
+        }
+        for (Entry entry : entries) {
+            if (entry.annotations.equals(annotations)) return entry.key;
+        }
+        return null;
+    }
+
+    // Only one entry is kept for equal annotation sets, so callers that build a new set for every
+    // lookup don't use up the slots.
+    private void add(Type type, Entry[] entries, Key key) {
+        Entry[] newEntries;
+        if (entries == null) {
+            newEntries = new Entry[1];
+        } else {
+            newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, entries.length);
+        }
+        newEntries[newEntries.length - 1] = new Entry(key.annotations, key);
+        qualifiedKeys.put(type, newEntries);
+    }
+
+    private static final class Entry {
+        final Set<? extends Annotation> annotations;
+        final Key key;
+
+        Entry(Set<? extends Annotation> annotations, Key key) {
+            this.annotations = annotations;
+            this.key = key;
+        }
+    }
+
+    /**
+     * There is only ever one instance handed out for the same type and annotations; equality is
+     * only used to find it again once a type has more annotation sets than fit in its entries.
+     */
+    private static final class Key {
+        final Type type;
+        final Set<? extends Annotation> annotations;
+
+        Key(Type type, Set<? extends Annotation> annotations) {
+            this.type = type;
+            this.annotations = annotations;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Types.equals(type, other.type) && annotations.equals(other.annotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + annotations.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return Types.typeToString(type) + " annotated " + annotations;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+/**
+ * A {@link TypeConverter} that can convert text straight from the parser's buffer, without first
+ * copying it into a {@link String}. Implement this on your converter and it will be used for tag
+ * and text values. {@link #from(String)} is still used where the parser already has a string, and
+ * should behave the same.
+ */
+public interface CharArrayConverter<T> extends TypeConverter<T> {
+
+    /**
+     * Converts the characters {@code buffer[start, start + length)}. The buffer belongs to the
+     * parser and is only valid for the duration of this call.
+     */
+    T from(char[] buffer, int start, int length);
+}
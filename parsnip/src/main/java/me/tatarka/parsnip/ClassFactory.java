@@ -24,6 +24,10 @@ import java.lang.reflect.Method;
 /**
  * Magic that creates instances of arbitrary concrete classes. Derived from Gson's UnsafeAllocator
  * and ConstructorConstructor classes.
+ * <p>
+ * Everything is called reflectively. A method handle bound to the class allocates faster on the
+ * JVM (see ClassFactoryBenchmark in the tests), but this class must load on Android versions
+ * without {@code java.lang.invoke}, and D8 rejects {@code invokeExact()} below API 26.
  *
  * @author Joel Leitch
  * @author Jesse Wilson
@@ -35,42 +39,16 @@ abstract class ClassFactory<T> {
     public static <T> ClassFactory<T> get(final Class<?> rawType) {
         // Try to find a no-args constructor. May be any visibility including private.
         try {
-            final Constructor<?> constructor = rawType.getDeclaredConstructor();
+            Constructor<?> constructor = rawType.getDeclaredConstructor();
             constructor.setAccessible(true);
-            return new ClassFactory<T>() {
-                @SuppressWarnings("unchecked") // T is the same raw type as is requested
-                @Override
-                public T newInstance() throws IllegalAccessException, InvocationTargetException,
-                        InstantiationException {
-                    Object[] args = null;
-                    return (T) constructor.newInstance(args);
-                }
-            };
+            return forConstructor(constructor);
         } catch (NoSuchMethodException ignored) {
             // No no-args constructor. Fall back to something more magical...
         }
 
-        // Try the JVM's Unsafe mechanism.
-        // public class Unsafe {
-        //   public Object allocateInstance(Class<?> type);
-        // }
-        try {
-            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
-            Field f = unsafeClass.getDeclaredField("theUnsafe");
-            f.setAccessible(true);
-            final Object unsafe = f.get(null);
-            final Method allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
-            return new ClassFactory<T>() {
-                @SuppressWarnings("unchecked")
-                @Override
-                public T newInstance() throws InvocationTargetException, IllegalAccessException {
-                    return (T) allocateInstance.invoke(unsafe, rawType);
-                }
-            };
-        } catch (IllegalAccessException e) {
-            throw new AssertionError();
-        } catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException ignored) {
-            // Not the expected version of the Oracle Java library!
+        ClassFactory<T> unsafe = forUnsafe(rawType);
+        if (unsafe != null) {
+            return unsafe;
         }
 
         // Try Dalvik/libcore's ObjectStreamClass mechanism.
@@ -103,4 +81,48 @@ abstract class ClassFactory<T> {
 
         throw new IllegalArgumentException("cannot construct instances of " + rawType.getName());
     }
+
+    /**
+     * Returns a factory that calls the given accessible no-args constructor.
+     */
+    static <T> ClassFactory<T> forConstructor(final Constructor<?> constructor) {
+        return new ClassFactory<T>() {
+            @SuppressWarnings("unchecked") // T is the same raw type as is requested
+            @Override
+            public T newInstance() throws IllegalAccessException, InvocationTargetException,
+                    InstantiationException {
+                Object[] args = null;
+                return (T) constructor.newInstance(args);
+            }
+        };
+    }
+
+    /**
+     * Returns a factory that allocates instances with the JVM's Unsafe mechanism, without calling
+     * a constructor, or null if it isn't available.
+     */
+    static <T> ClassFactory<T> forUnsafe(final Class<?> rawType) {
+        // public class Unsafe {
+        //   public Object allocateInstance(Class<?> type);
+        // }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            final Object unsafe = f.get(null);
+            final Method allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+            return new ClassFactory<T>() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public T newInstance() throws InvocationTargetException, IllegalAccessException {
+                    return (T) allocateInstance.invoke(unsafe, rawType);
+                }
+            };
+        } catch (IllegalAccessException e) {
+            throw new AssertionError();
+        } catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException ignored) {
+            // Not the expected version of the Oracle Java library!
+            return null;
+        }
+    }
 }
@@ -22,6 +22,7 @@ import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
@@ -32,11 +33,14 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import me.tatarka.parsnip.annotations.ExpectedSize;
 import me.tatarka.parsnip.annotations.Namespace;
 import me.tatarka.parsnip.annotations.SerializedName;
 import me.tatarka.parsnip.annotations.Text;
 
 final class ClassXmlAdapter<T> extends XmlAdapter<T> {
+    // The number of tag bindings that can reuse their value, which are tracked in a long.
+    private static final int MAX_REUSED_TAGS = 64;
 
     static final Factory FACTORY = new Factory() {
         @Override
@@ -60,145 +64,270 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
             }
 
             ClassFactory<Object> classFactory = ClassFactory.get(rawType);
-            SerializedName serializedName = rawType.getAnnotation(SerializedName.class);
-            String name = serializedName != null ? serializedName.value() : rawType.getSimpleName();
-            Namespace namespace = rawType.getAnnotation(Namespace.class);
-            TagInfo tagInfo = new TagInfo(name, namespace);
-            ArrayList<AttributeFieldBinding> attributes = new ArrayList<>();
-            ArrayList<TagFieldBinding> tags = new ArrayList<>();
+            // Prefer a previously computed plan so we can skip most of the reflection.
+            ClassPlan plan = adapters.bindingPlan(type);
+            if (plan == null) {
+                plan = ClassPlan.create(type);
+            }
+            ArrayList<AttributeFieldBinding<?>> attributes = new ArrayList<>();
+            ArrayList<TagFieldBinding<?>> tags = new ArrayList<>();
             // Only a single text, but this makes it easier to check for duplicates
-            ArrayList<TextFieldBinding> text = new ArrayList<>(1);
-            for (Type t = type; t != Object.class; t = Types.getGenericSuperclass(t)) {
-                createFieldBindings(adapters, t, attributes, tags, text);
+            ArrayList<TextFieldBinding<?>> text = new ArrayList<>(1);
+            for (int i = 0, size = plan.fields.size(); i < size; i++) {
+                createFieldBinding(adapters, plan.fields.get(i), attributes, tags, text);
             }
-            return new ClassXmlAdapter<>(classFactory, tagInfo, attributes, tags, text.isEmpty() ? null : text.get(0));
+            return new ClassXmlAdapter<>(plan, classFactory, attributes, tags, text.isEmpty() ? null : text.get(0), adapters.names());
         }
 
-        /** Creates a field binding for each of declared field of {@code type}. */
-        private void createFieldBindings(XmlAdapters adapters, Type type, ArrayList<AttributeFieldBinding> attributes, ArrayList<TagFieldBinding> tags, ArrayList<TextFieldBinding> text) {
-            Class<?> rawType = Types.getRawType(type);
-            boolean platformType = isPlatformType(rawType);
-            for (Field field : rawType.getDeclaredFields()) {
-                if (!includeField(platformType, field.getModifiers())) continue;
+        /** Creates a field binding for the planned field. */
+        private void createFieldBinding(XmlAdapters adapters, FieldPlan fieldPlan, ArrayList<AttributeFieldBinding<?>> attributes, ArrayList<TagFieldBinding<?>> tags, ArrayList<TextFieldBinding<?>> text) {
+            Field field = fieldPlan.field;
+            Type fieldType = fieldPlan.type;
+            Set<? extends Annotation> annotations = fieldPlan.annotations;
+            TagInfo tagInfo = new TagInfo(fieldPlan.name, fieldPlan.namespace, fieldPlan.alias);
 
-                field.setAccessible(true);
-                // Look up a type adapter for this type.
-                Type fieldType = Types.resolve(type, rawType, field.getGenericType());
-                Set<? extends Annotation> annotations = Util.xmlAnnotations(field);
-
-                // Create the binding between field and Xml.
-                Class<?> rawFieldType = Types.getRawType(fieldType);
-                if (rawFieldType == List.class || rawFieldType == Collection.class || rawFieldType == Set.class) {
-                    // Collections are weird in xml. A collection is multiple tags of the same name.
-                    // However, they may be interspersed with other items. To handle this, we will
-                    // just use the collection element type's adapter, and append it to the field's
-                    // collection each time one is found.
-                    Type elementType = Types.collectionElementType(fieldType, Collection.class);
-                    Class<?> rawElementType = Types.getRawType(elementType);
-                    CollectionFactory collectionFactory = rawFieldType == List.class || rawFieldType == Collection.class
-                            ? ARRAY_LIST_COLLECTION_FACTORY : LINKED_HASH_SET_COLLECTION_FACTORY;
-                    String name = getFieldName(field);
-                    Namespace namespace = getNamespace(field);
-                    XmlAdapter<?> adapter = adapters.adapter(rawElementType, annotations);
-                    tags.add(new CollectionFieldBinding<>(field, name, namespace, adapter, collectionFactory));
+            // Create the binding between field and Xml.
+            Class<?> rawFieldType = Types.getRawType(fieldType);
+            if (rawFieldType == List.class || rawFieldType == Collection.class || rawFieldType == Set.class) {
+                // Collections are weird in xml. A collection is multiple tags of the same name.
+                // However, they may be interspersed with other items. To handle this, we will
+                // just use the collection element type's adapter, and append it to the field's
+                // collection each time one is found.
+                Type elementType = Types.collectionElementType(fieldType, Collection.class);
+                Class<?> rawElementType = Types.getRawType(elementType);
+                if (fieldPlan.expectedSize < -1) {
+                    throw new IllegalArgumentException("@ExpectedSize on '" + field.getName() + "' in "
+                            + field.getDeclaringClass().getName() + " must be zero or more, or -1 for the default capacity, but is "
+                            + fieldPlan.expectedSize);
+                }
+                CollectionSizer sizer = adapters.collectionSizer(fieldPlan.expectedSize);
+                XmlAdapter<?> adapter = adapters.adapter(rawElementType, annotations);
+                tags.add(new CollectionFieldBinding<>(field, tagInfo, adapter, sizer, rawFieldType == Set.class));
+            } else {
+                if (fieldPlan.text) {
+                    TypeConverter<?> converter = adapters.converter(fieldType, annotations);
+                    if (converter == null) {
+                        throw new IllegalArgumentException("No TypeConverter for type " + fieldType + " and annotations " + annotations);
+                    }
+                    PrimitiveValue primitive = PrimitiveValue.get(fieldType, converter);
+                    TextFieldBinding<?> fieldBinding = primitive != null
+                            ? new PrimitiveTextFieldBinding<>(field, converter, primitive)
+                            : new TextFieldBinding<>(field, converter);
+                    if (!text.isEmpty()) {
+                        FieldBinding<?> replaced = text.get(0);
+                        throw new IllegalArgumentException("Text annotation collision: @Text is on both '"
+                                + field.getName() + "' and '" + replaced.field.getName() + "'.");
+                    }
+                    text.add(fieldBinding);
                 } else {
-                    if (field.isAnnotationPresent(Text.class)) {
+                    XmlAdapter<?> adapter = adapters.adapter(fieldType, annotations);
+                    if (adapter != null) {
+                        // Skip the adapter for primitive tags, so the value isn't boxed.
+                        PrimitiveValue primitive = adapter.getClass() == TagXmlAdapter.class
+                                ? PrimitiveValue.get(fieldType, ((TagXmlAdapter<?>) adapter).converter()) : null;
+                        TagFieldBinding<?> fieldBinding = primitive != null
+                                ? new PrimitiveTagFieldBinding<>(field, tagInfo, adapter, primitive)
+                                : new TagFieldBinding<>(field, tagInfo, adapter);
+                        FieldBinding<?> replaced = getFieldBindingTags(tags, tagInfo.name(), tagInfo.namespace());
+                        // Store it using the field's name. If there was already a field with this name, fail!
+                        if (replaced != null) {
+                            throw new IllegalArgumentException("Field name collision: '" + field.getName() + "'"
+                                    + " declared by both " + replaced.field.getDeclaringClass().getName()
+                                    + " and superclass " + fieldBinding.field.getDeclaringClass().getName());
+                        }
+                        tags.add(fieldBinding);
+                    } else {
                         TypeConverter<?> converter = adapters.converter(fieldType, annotations);
                         if (converter == null) {
-                            throw new IllegalArgumentException("No TypeConverter for type " + fieldType + " and annotations " + annotations);
+                            throw new IllegalArgumentException("No XmlAdapter or TypeConverter for type " + fieldType + " and annotations " + annotations);
                         }
-                        TextFieldBinding<?> fieldBinding = new TextFieldBinding<>(field, converter);
-                        if (!text.isEmpty()) {
-                            FieldBinding replaced = tags.get(0);
-                            throw new IllegalArgumentException("Text annotation collision: @Text is on both '"
-                                    + field.getName() + "' and '" + replaced.field.getName() + "'.");
-                        }
-                        text.add(fieldBinding);
-                    } else {
-                        XmlAdapter<?> adapter = adapters.adapter(fieldType, annotations);
-                        String name = getFieldName(field);
-                        Namespace namespace = getNamespace(field);
-                        String ns = namespace == null ? null : namespace.value();
-                        if (adapter != null) {
-                            TagFieldBinding<?> fieldBinding = new TagFieldBinding<>(field, name, namespace, adapter);
-                            FieldBinding replaced = getFieldBindingTags(tags, name, ns);
-                            // Store it using the field's name. If there was already a field with this name, fail!
-                            if (replaced != null) {
-                                throw new IllegalArgumentException("Field name collision: '" + field.getName() + "'"
-                                        + " declared by both " + replaced.field.getDeclaringClass().getName()
-                                        + " and superclass " + fieldBinding.field.getDeclaringClass().getName());
-                            }
-                            tags.add(fieldBinding);
-                        } else {
-                            TypeConverter<?> converter = adapters.converter(fieldType, annotations);
-                            if (converter == null) {
-                                throw new IllegalArgumentException("No XmlAdapter or TypeConverter for type " + fieldType + " and annotations " + annotations);
-                            }
-                            AttributeFieldBinding<?> fieldBinding = new AttributeFieldBinding<>(field, name, namespace, converter);
-                            FieldBinding replaced = getFieldBindingAttributes(attributes, name, ns);
-                            // Store it using the field's name. If there was already a field with this name, fail!
-                            if (replaced != null) {
-                                throw new IllegalArgumentException("Field name collision: '" + field.getName() + "'"
-                                        + " declared by both " + replaced.field.getDeclaringClass().getName()
-                                        + " and superclass " + fieldBinding.field.getDeclaringClass().getName());
-                            }
-                            attributes.add(fieldBinding);
+                        PrimitiveValue primitive = PrimitiveValue.get(fieldType, converter);
+                        AttributeFieldBinding<?> fieldBinding = primitive != null
+                                ? new PrimitiveAttributeFieldBinding<>(field, tagInfo, converter, primitive)
+                                : new AttributeFieldBinding<>(field, tagInfo, converter);
+                        FieldBinding<?> replaced = getFieldBindingAttributes(attributes, tagInfo.name(), tagInfo.namespace());
+                        // Store it using the field's name. If there was already a field with this name, fail!
+                        if (replaced != null) {
+                            throw new IllegalArgumentException("Field name collision: '" + field.getName() + "'"
+                                    + " declared by both " + replaced.field.getDeclaringClass().getName()
+                                    + " and superclass " + fieldBinding.field.getDeclaringClass().getName());
                         }
+                        attributes.add(fieldBinding);
                     }
                 }
             }
         }
+    };
 
-        /**
-         * Returns true if {@code rawType} is built in. We don't reflect on private fields of platform
-         * types because they're unspecified and likely to be different on Java vs. Android.
-         */
-        private boolean isPlatformType(Class<?> rawType) {
-            return rawType.getName().startsWith("java.")
-                    || rawType.getName().startsWith("javax.")
-                    || rawType.getName().startsWith("android.");
+    /**
+     * Returns true if {@code rawType} is built in. We don't reflect on private fields of platform
+     * types because they're unspecified and likely to be different on Java vs. Android.
+     */
+    static boolean isPlatformType(Class<?> rawType) {
+        return rawType.getName().startsWith("java.")
+                || rawType.getName().startsWith("javax.")
+                || rawType.getName().startsWith("android.");
+    }
+
+    /** Returns true if fields with {@code modifiers} are included in the emitted JSON. */
+    static boolean includeField(boolean platformType, int modifiers) {
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) return false;
+        return Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers) || !platformType;
+    }
+
+    /**
+     * Returns the field name, taking into account the @SerializeName annotation.
+     */
+    private static String getFieldName(Field field) {
+        SerializedName serializedName = field.getAnnotation(SerializedName.class);
+        if (serializedName != null) {
+            return serializedName.value();
+        } else {
+            return field.getName();
         }
+    }
 
-        /** Returns true if fields with {@code modifiers} are included in the emitted JSON. */
-        private boolean includeField(boolean platformType, int modifiers) {
-            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) return false;
-            return Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers) || !platformType;
+    /**
+     * What is needed to bind a class, everything that can be found out about it without looking at
+     * other adapters. This can be saved with {@link BindingSnapshot} so that later runs don't have
+     * to reflect on the class to rediscover it.
+     */
+    static final class ClassPlan {
+        final Type type;
+        final TagInfo tagInfo;
+        final List<FieldPlan> fields;
+
+        ClassPlan(Type type, TagInfo tagInfo, List<FieldPlan> fields) {
+            this.type = type;
+            this.tagInfo = tagInfo;
+            this.fields = fields;
         }
 
-        /**
-         * Returns the field name, taking into account the @SerializeName annotation.
-         */
-        private String getFieldName(Field field) {
-            SerializedName serializedName = field.getAnnotation(SerializedName.class);
-            if (serializedName != null) {
-                return serializedName.value();
-            } else {
-                return field.getName();
+        static ClassPlan create(Type type) {
+            Class<?> rawType = Types.getRawType(type);
+            SerializedName serializedName = rawType.getAnnotation(SerializedName.class);
+            String name = serializedName != null ? serializedName.value() : rawType.getSimpleName();
+            Namespace namespace = rawType.getAnnotation(Namespace.class);
+            List<FieldPlan> fields = new ArrayList<>();
+            for (Type t = type; t != Object.class; t = Types.getGenericSuperclass(t)) {
+                addFieldPlans(t, fields);
             }
+            return new ClassPlan(type, new TagInfo(name, namespace), fields);
         }
 
-        /**
-         * Returns the field namespace, if it exists.
-         */
-        private Namespace getNamespace(Field field) {
-            return field.getAnnotation(Namespace.class);
+        /** Creates a field plan for each of declared field of {@code type}. */
+        private static void addFieldPlans(Type type, List<FieldPlan> fields) {
+            Class<?> rawType = Types.getRawType(type);
+            boolean platformType = isPlatformType(rawType);
+            for (Field field : rawType.getDeclaredFields()) {
+                if (!includeField(platformType, field.getModifiers())) continue;
+
+                field.setAccessible(true);
+                Type fieldType = Types.resolve(type, rawType, field.getGenericType());
+                Set<? extends Annotation> annotations = Util.xmlAnnotations(field);
+                Namespace namespace = field.getAnnotation(Namespace.class);
+                ExpectedSize expectedSize = field.getAnnotation(ExpectedSize.class);
+                fields.add(new FieldPlan(field, fieldType, annotations, getFieldName(field),
+                        namespace != null ? namespace.value() : null,
+                        namespace != null ? namespace.alias() : null,
+                        field.isAnnotationPresent(Text.class),
+                        expectedSize != null ? expectedSize.value() : -1));
+            }
         }
-    };
+    }
 
+    static final class FieldPlan {
+        final Field field;
+        final Type type;
+        final Set<? extends Annotation> annotations;
+        final String name;
+        final String namespace;
+        final String alias;
+        final boolean text;
+        // The size from @ExpectedSize, or -1.
+        final int expectedSize;
+
+        FieldPlan(Field field, Type type, Set<? extends Annotation> annotations, String name, String namespace, String alias, boolean text, int expectedSize) {
+            this.field = field;
+            this.type = type;
+            this.annotations = annotations;
+            this.name = name;
+            this.namespace = namespace;
+            this.alias = alias;
+            this.text = text;
+            this.expectedSize = expectedSize;
+        }
+    }
+
+    private final ClassPlan plan;
     private final me.tatarka.parsnip.ClassFactory<T> classFactory;
     private final TagInfo tagInfo;
-    private final ArrayList<AttributeFieldBinding> attributes;
-    private final ArrayList<TagFieldBinding> tags;
-    private final TextFieldBinding text;
+    private final ArrayList<AttributeFieldBinding<?>> attributes;
+    private final ArrayList<TagFieldBinding<?>> tags;
+    private final TextFieldBinding<?> text;
+    private final Names names;
+    private final BindingMatcher<AttributeFieldBinding<?>> attributeMatcher;
+    private final BindingMatcher<TagFieldBinding<?>> tagMatcher;
+    // Counted per object read and added once it's done, instead of on every lookup.
+    private final StripedCounter predictedMatchHits = new StripedCounter();
+    private final StripedCounter predictedMatchMisses = new StripedCounter();
+    // If reading can stop once every tag binding has been read, which isn't the case when a
+    // collection or text binding could still match later on.
+    private final boolean canStopWhenComplete;
+    // If a binding reads its primitive value straight from the parser's text, which needs a holder
+    // for the text's bounds.
+    private final boolean readsTextCharacters;
     // Namespaces to declare when writing.
     private LinkedHashSet<TagInfo> declareNamespaces;
 
-    private ClassXmlAdapter(me.tatarka.parsnip.ClassFactory<T> classFactory, TagInfo tagInfo, ArrayList<AttributeFieldBinding> attributes, ArrayList<TagFieldBinding> tags, TextFieldBinding text) {
+    private ClassXmlAdapter(ClassPlan plan, me.tatarka.parsnip.ClassFactory<T> classFactory, ArrayList<AttributeFieldBinding<?>> attributes, ArrayList<TagFieldBinding<?>> tags, TextFieldBinding<?> text, Names names) {
+        this.plan = plan;
         this.classFactory = classFactory;
-        this.tagInfo = tagInfo;
+        this.tagInfo = plan.tagInfo;
         this.attributes = attributes;
         this.tags = tags;
         this.text = text;
+        this.names = names;
+        this.attributeMatcher = matcher(attributes, names);
+        this.tagMatcher = matcher(tags, names);
+        boolean canStopWhenComplete = text == null;
+        boolean readsTextCharacters = text instanceof PrimitiveTextFieldBinding;
+        for (int i = 0, size = tags.size(); i < size; i++) {
+            if (tags.get(i) instanceof CollectionFieldBinding) {
+                canStopWhenComplete = false;
+            }
+            if (tags.get(i) instanceof PrimitiveTagFieldBinding) {
+                readsTextCharacters = true;
+            }
+        }
+        this.canStopWhenComplete = canStopWhenComplete;
+        this.readsTextCharacters = readsTextCharacters;
+    }
+
+    private static <B extends FieldBinding<?>> BindingMatcher<B> matcher(List<B> bindings, Names names) {
+        List<TagInfo> tagInfos = new ArrayList<>(bindings.size());
+        for (int i = 0, size = bindings.size(); i < size; i++) {
+            tagInfos.add(bindings.get(i).tagInfo());
+        }
+        return new BindingMatcher<>(bindings, tagInfos, names);
+    }
+
+    /**
+     * The number of tag and attribute lookups that were answered by predicting the document order.
+     */
+    long predictedMatchHitCount() {
+        return predictedMatchHits.get();
+    }
+
+    /**
+     * The number of tag and attribute lookups that fell back to a full lookup.
+     */
+    long predictedMatchMissCount() {
+        return predictedMatchMisses.get();
+    }
+
+    ClassPlan getPlan() {
+        return plan;
     }
 
     LinkedHashSet<TagInfo> getDeclaredNamespaces() {
@@ -227,66 +356,120 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
 
     @Override
     public T fromXml(XmlPullParser parser, TagInfo tagInfo) throws XmlPullParserException, IOException {
-        T result;
-        try {
-            result = classFactory.newInstance();
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            Throwable targetException = e.getTargetException();
-            if (targetException instanceof RuntimeException)
-                throw (RuntimeException) targetException;
-            if (targetException instanceof Error) throw (Error) targetException;
-            throw new RuntimeException(targetException);
-        } catch (IllegalAccessException e) {
-            throw new AssertionError(e);
-        }
+        return fromXml(parser, tagInfo, false, null);
+    }
+
+    @Override
+    public T fromXml(XmlPullParser parser, TagInfo tagInfo, T reuse) throws XmlPullParserException, IOException {
+        return fromXml(parser, tagInfo, false, reuse);
+    }
+
+    /**
+     * Reads the object into {@code reuse}, or a new instance if it's null, returning as soon as
+     * every tag binding has been read if {@code stopWhenComplete} is true and nothing else could
+     * still match. The parser is then left inside the element.
+     */
+    T fromXml(XmlPullParser parser, TagInfo tagInfo, boolean stopWhenComplete, T reuse) throws XmlPullParserException, IOException {
+        T result = reuse != null ? reuse : newInstance();
 
         try {
-            for (int i = 0, size = tags.size(); i < size; i++) {
-                TagFieldBinding fieldBinding = tags.get(i);
-                if (fieldBinding instanceof CollectionFieldBinding) {
-                    ((CollectionFieldBinding) fieldBinding).init(result);
+            if (reuse != null) {
+                reset(reuse);
+            } else {
+                for (int i = 0, size = tags.size(); i < size; i++) {
+                    TagFieldBinding<?> fieldBinding = tags.get(i);
+                    if (fieldBinding instanceof CollectionFieldBinding) {
+                        ((CollectionFieldBinding<?>) fieldBinding).init(result);
+                    }
                 }
             }
         } catch (IllegalAccessException e) {
             throw new AssertionError(e);
         }
 
+        names.attach(parser);
         if (tagInfo == TagInfo.ROOT) {
             while (parser.next() != XmlPullParser.START_TAG) {
                 // Read to start tag.
             }
         }
 
+        int hits = 0;
+        int misses = 0;
         try {
             if (!attributes.isEmpty()) {
                 for (int i = 0, size = parser.getAttributeCount(); i < size; i++) {
-                    String name = parser.getAttributeName(i);
-                    FieldBinding fieldBinding = getFieldBindingAttributes(attributes, name, parser.getAttributeNamespace(i));
-                    if (fieldBinding != null) {
-                        fieldBinding.read(parser, i, result);
+                    String name = Names.attributeLocalName(parser, i);
+                    if (name == null) continue;
+                    String namespace = parser.getAttributeNamespace(i);
+                    int index = attributeMatcher.predictAt(i, name, namespace);
+                    if (index != -1) {
+                        hits++;
+                    } else {
+                        misses++;
+                        index = attributeMatcher.findAt(i, name, namespace);
                     }
+                    if (index != -1) {
+                        attributeMatcher.get(index).read(parser, i, result);
+                    }
+                }
+            }
+
+            // Which tag bindings have been read, only tracked when we can stop once they all are.
+            boolean[] read = null;
+            int unread = 0;
+            if (stopWhenComplete && canStopWhenComplete) {
+                unread = tags.size();
+                if (unread == 0) {
+                    return result;
                 }
+                read = new boolean[unread];
             }
+            // The reused tag bindings that have been read, the rest are reset once we're done.
+            long reused = 0;
+            // Shared by every primitive value read from text, instead of one per value.
+            int[] holder = readsTextCharacters ? new int[2] : null;
 
+            // The binding of the last tag read, used to predict the next one.
+            int previousTag = -1;
             loop:
-            while (parser.next() != XmlPullParser.END_TAG) {
+            // Without a text binding, text (mostly indentation) is skipped without being read.
+            while ((text != null ? parser.next() : SubtreeSkipper.nextSkippingText(parser)) != XmlPullParser.END_TAG) {
                 switch (parser.getEventType()) {
                     case XmlPullParser.START_TAG: {
-                        String name = parser.getName();
-                        FieldBinding fieldBinding = getFieldBindingTags(tags, name, parser.getNamespace());
-                        if (fieldBinding != null) {
-                            fieldBinding.read(parser, 0, result);
+                        String name = Names.localName(parser);
+                        String namespace = parser.getNamespace();
+                        int index = tagMatcher.predictNext(previousTag, name, namespace);
+                        if (index != -1) {
+                            hits++;
+                        } else {
+                            misses++;
+                            index = tagMatcher.findNext(previousTag, name, namespace);
+                        }
+                        if (index != -1) {
+                            TagFieldBinding<?> fieldBinding = tagMatcher.get(index);
+                            if (reuse != null && index < MAX_REUSED_TAGS && fieldBinding.reusesValue()) {
+                                fieldBinding.readReusing(parser, result);
+                                reused |= 1L << index;
+                            } else {
+                                fieldBinding.read(parser, 0, result, holder);
+                            }
+                            previousTag = index;
+                            if (read != null && !read[index]) {
+                                read[index] = true;
+                                if (--unread == 0) {
+                                    return result;
+                                }
+                            }
                         } else {
                             skip(parser);
                         }
                         break;
                     }
                     case XmlPullParser.TEXT: {
-                        FieldBinding fieldBinding = text;
+                        FieldBinding<?> fieldBinding = text;
                         if (fieldBinding != null) {
-                            fieldBinding.read(parser, 0, result);
+                            fieldBinding.read(parser, 0, result, holder);
                         }
                         break;
                     }
@@ -294,27 +477,76 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
                         break loop;
                 }
             }
+
+            for (int i = 0, size = tags.size(); i < size; i++) {
+                TagFieldBinding<?> fieldBinding = tags.get(i);
+                if (fieldBinding instanceof CollectionFieldBinding) {
+                    ((CollectionFieldBinding<?>) fieldBinding).finish(result);
+                } else if (reuse != null && i < MAX_REUSED_TAGS && (reused & 1L << i) == 0 && fieldBinding.reusesValue()) {
+                    // Wasn't in this document, so it still holds the value from the last one.
+                    fieldBinding.reset(result);
+                }
+            }
         } catch (IllegalAccessException e) {
             throw new AssertionError(e);
+        } finally {
+            if (hits != 0) predictedMatchHits.add(hits);
+            if (misses != 0) predictedMatchMisses.add(misses);
         }
         return result;
     }
 
-    private void skip(XmlPullParser parser) throws IOException, XmlPullParserException {
-        if (parser.getEventType() != XmlPullParser.START_TAG) {
-            throw new IllegalStateException();
+    private T newInstance() {
+        try {
+            return classFactory.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            Throwable targetException = e.getTargetException();
+            if (targetException instanceof RuntimeException)
+                throw (RuntimeException) targetException;
+            if (targetException instanceof Error) throw (Error) targetException;
+            throw new RuntimeException(targetException);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
         }
-        int depth = 1;
-        while (depth != 0) {
-            switch (parser.next()) {
-                case XmlPullParser.END_TAG:
-                    depth--;
-                    break;
-                case XmlPullParser.START_TAG:
-                    depth++;
-                    break;
+    }
+
+    /**
+     * Resets the fields of {@code value} to null, zero or false and clears its collections, except
+     * for the tag bindings that reuse their value as they are read.
+     */
+    private void reset(T value) throws IllegalAccessException {
+        for (int i = 0, size = attributes.size(); i < size; i++) {
+            attributes.get(i).reset(value);
+        }
+        for (int i = 0, size = tags.size(); i < size; i++) {
+            TagFieldBinding<?> fieldBinding = tags.get(i);
+            if (i >= MAX_REUSED_TAGS || !fieldBinding.reusesValue()) {
+                fieldBinding.reset(value);
             }
         }
+        if (text != null) {
+            text.reset(value);
+        }
+    }
+
+    private void skip(XmlPullParser parser) throws IOException, XmlPullParserException {
+        SubtreeSkipper.skip(parser);
+    }
+
+    @Override
+    boolean readsNamespaces(List<XmlAdapter<?>> delegates) {
+        // Names are matched on their local names, so only bindings with a namespace need them.
+        for (int i = 0, size = attributes.size(); i < size; i++) {
+            if (attributes.get(i).tagInfo.namespace() != null) return true;
+        }
+        for (int i = 0, size = tags.size(); i < size; i++) {
+            TagFieldBinding<?> fieldBinding = tags.get(i);
+            if (fieldBinding.tagInfo.namespace() != null) return true;
+            delegates.add(fieldBinding.adapter);
+        }
+        return false;
     }
 
     @Override
@@ -335,11 +567,11 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
 
         try {
             for (int i = 0, size = attributes.size(); i < size; i++) {
-                FieldBinding fieldBinding = attributes.get(i);
+                FieldBinding<?> fieldBinding = attributes.get(i);
                 fieldBinding.write(serializer, value);
             }
             for (int i = 0, size = tags.size(); i < size; i++) {
-                FieldBinding fieldBinding = tags.get(i);
+                FieldBinding<?> fieldBinding = tags.get(i);
                 fieldBinding.write(serializer, value);
             }
             if (text != null) {
@@ -356,9 +588,9 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
         }
     }
 
-    private static FieldBinding getFieldBindingTags(ArrayList<? extends TagFieldBinding> fields, String name, String namespace) {
+    private static FieldBinding<?> getFieldBindingTags(ArrayList<? extends TagFieldBinding<?>> fields, String name, String namespace) {
         for (int i = 0, size = fields.size(); i < size; i++) {
-            TagFieldBinding fieldBinding = fields.get(i);
+            TagFieldBinding<?> fieldBinding = fields.get(i);
             if (fieldBinding.tagInfo.name().equals(name) && nsEquals(fieldBinding.tagInfo.namespace(), namespace)) {
                 return fieldBinding;
             }
@@ -366,9 +598,9 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
         return null;
     }
 
-    private static FieldBinding getFieldBindingAttributes(ArrayList<? extends AttributeFieldBinding> fields, String name, String namespace) {
+    private static FieldBinding<?> getFieldBindingAttributes(ArrayList<? extends AttributeFieldBinding<?>> fields, String name, String namespace) {
         for (int i = 0, size = fields.size(); i < size; i++) {
-            AttributeFieldBinding fieldBinding = fields.get(i);
+            AttributeFieldBinding<?> fieldBinding = fields.get(i);
             if (fieldBinding.tagInfo.name().equals(name) && nsEquals(fieldBinding.tagInfo.namespace(), namespace)) {
                 return fieldBinding;
             }
@@ -383,23 +615,47 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
 
     private static abstract class FieldBinding<T> {
         final Field field;
+        final FieldAccessor accessor;
+        // What the field is reset to in a reused instance: null, zero or false, even if the class
+        // initializes it to something else.
+        final Object defaultValue;
 
         FieldBinding(Field field) {
             this.field = field;
+            this.accessor = FieldAccessor.get(field);
+            Class<?> type = field.getType();
+            this.defaultValue = type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+        }
+
+        void reset(Object value) throws IllegalAccessException {
+            accessor.set(value, defaultValue);
         }
 
         void read(XmlPullParser parser, int index, Object value) throws XmlPullParserException, IOException, IllegalAccessException {
             Object fieldValue = readValue(parser, index);
-            field.set(value, fieldValue);
+            accessor.set(value, fieldValue);
+        }
+
+        /**
+         * Reads like {@link #read(XmlPullParser, int, Object)}, passing {@code holder} to
+         * {@link XmlPullParser#getTextCharacters(int[])} if it reads the text's characters.
+         */
+        void read(XmlPullParser parser, int index, Object value, int[] holder) throws XmlPullParserException, IOException, IllegalAccessException {
+            read(parser, index, value);
         }
 
         @SuppressWarnings("unchecked")
             // We require that field's values are of type T.
         void write(XmlSerializer serializer, Object value) throws IllegalAccessException, IOException {
-            T fieldValue = (T) field.get(value);
+            T fieldValue = (T) accessor.get(value);
             writeValue(serializer, fieldValue);
         }
 
+        /** The name the field is bound to, or null if it's bound to text. */
+        TagInfo tagInfo() {
+            return null;
+        }
+
         abstract T readValue(XmlPullParser parser, int index) throws XmlPullParserException, IOException;
 
         abstract void writeValue(XmlSerializer serializer, T value) throws IOException;
@@ -409,17 +665,37 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
         private TagInfo tagInfo;
         final XmlAdapter<T> adapter;
 
-        TagFieldBinding(Field field, String name, Namespace namespace, XmlAdapter<T> adapter) {
+        TagFieldBinding(Field field, TagInfo tagInfo, XmlAdapter<T> adapter) {
             super(field);
-            this.tagInfo = new TagInfo(name, namespace);
+            this.tagInfo = tagInfo;
             this.adapter = adapter;
         }
 
+        @Override
+        TagInfo tagInfo() {
+            return tagInfo;
+        }
+
         @Override
         T readValue(XmlPullParser parser, int index) throws XmlPullParserException, IOException {
             return adapter.fromXml(parser, tagInfo);
         }
 
+        /**
+         * If the field's current value can be passed to the adapter to be read into. Values
+         * converted from text are never reused.
+         */
+        boolean reusesValue() {
+            return !(adapter instanceof TagXmlAdapter);
+        }
+
+        @SuppressWarnings("unchecked")
+            // We require that field's values are of type T.
+        void readReusing(XmlPullParser parser, Object value) throws XmlPullParserException, IOException, IllegalAccessException {
+            T currentValue = (T) accessor.get(value);
+            accessor.set(value, adapter.fromXml(parser, tagInfo, currentValue));
+        }
+
         @Override
         void writeValue(XmlSerializer serializer, T value) throws IOException {
             adapter.toXml(serializer, tagInfo, value);
@@ -430,12 +706,17 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
         final TagInfo tagInfo;
         final TypeConverter<T> converter;
 
-        AttributeFieldBinding(Field field, String name, Namespace namespace, TypeConverter<T> converter) {
+        AttributeFieldBinding(Field field, TagInfo tagInfo, TypeConverter<T> converter) {
             super(field);
-            this.tagInfo = new TagInfo(name, namespace);
+            this.tagInfo = tagInfo;
             this.converter = converter;
         }
 
+        @Override
+        TagInfo tagInfo() {
+            return tagInfo;
+        }
+
         @Override
         T readValue(XmlPullParser parser, int index) throws IOException {
             return converter.from(parser.getAttributeValue(index));
@@ -460,7 +741,7 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
 
         @Override
         T readValue(XmlPullParser parser, int index) throws IOException, XmlPullParserException {
-            return converter.from(parser.getText());
+            return TextChars.fromText(parser, converter);
         }
 
         @Override
@@ -469,20 +750,260 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
         }
     }
 
+    private static class PrimitiveTagFieldBinding<T> extends TagFieldBinding<T> {
+        final PrimitiveValue primitive;
+
+        PrimitiveTagFieldBinding(Field field, TagInfo tagInfo, XmlAdapter<T> adapter, PrimitiveValue primitive) {
+            super(field, tagInfo, adapter);
+            this.primitive = primitive;
+        }
+
+        @Override
+        void read(XmlPullParser parser, int index, Object value) throws XmlPullParserException, IOException, IllegalAccessException {
+            read(parser, index, value, new int[2]);
+        }
+
+        @Override
+        void read(XmlPullParser parser, int index, Object value, int[] holder) throws XmlPullParserException, IOException, IllegalAccessException {
+            if (TextChars.nextIsText(parser)) {
+                char[] buffer = parser.getTextCharacters(holder);
+                primitive.read(accessor, value, buffer, holder[0], holder[1]);
+                TextChars.requireEndTag(parser);
+            } else {
+                primitive.read(accessor, value, TextChars.empty(), 0, 0);
+            }
+        }
+
+        @Override
+        void write(XmlSerializer serializer, Object value) throws IllegalAccessException, IOException {
+            TagInfo tagInfo = tagInfo();
+            serializer.startTag(tagInfo.namespace(), tagInfo.name());
+            serializer.text(primitive.write(accessor, value));
+            serializer.endTag(tagInfo.namespace(), tagInfo.name());
+        }
+    }
+
+    private static class PrimitiveAttributeFieldBinding<T> extends AttributeFieldBinding<T> {
+        final PrimitiveValue primitive;
+
+        PrimitiveAttributeFieldBinding(Field field, TagInfo tagInfo, TypeConverter<T> converter, PrimitiveValue primitive) {
+            super(field, tagInfo, converter);
+            this.primitive = primitive;
+        }
+
+        @Override
+        void read(XmlPullParser parser, int index, Object value) throws IllegalAccessException {
+            primitive.read(accessor, value, parser.getAttributeValue(index));
+        }
+
+        @Override
+        void write(XmlSerializer serializer, Object value) throws IllegalAccessException, IOException {
+            serializer.attribute(tagInfo.namespace(), tagInfo.name(), primitive.write(accessor, value));
+        }
+    }
+
+    private static class PrimitiveTextFieldBinding<T> extends TextFieldBinding<T> {
+        final PrimitiveValue primitive;
+
+        PrimitiveTextFieldBinding(Field field, TypeConverter<T> converter, PrimitiveValue primitive) {
+            super(field, converter);
+            this.primitive = primitive;
+        }
+
+        @Override
+        void read(XmlPullParser parser, int index, Object value) throws IllegalAccessException {
+            read(parser, index, value, new int[2]);
+        }
+
+        @Override
+        void read(XmlPullParser parser, int index, Object value, int[] holder) throws IllegalAccessException {
+            char[] buffer = parser.getTextCharacters(holder);
+            primitive.read(accessor, value, buffer, holder[0], holder[1]);
+        }
+
+        @Override
+        void write(XmlSerializer serializer, Object value) throws IllegalAccessException, IOException {
+            serializer.text(primitive.write(accessor, value));
+        }
+    }
+
+    /**
+     * Reads and writes a primitive field with a primitive converter, so that its value is never
+     * boxed.
+     */
+    private static abstract class PrimitiveValue {
+        abstract void read(FieldAccessor accessor, Object target, String value) throws IllegalAccessException;
+
+        /**
+         * Reads from the parser's buffer. Only the standard converters can do this without
+         * creating a string.
+         */
+        void read(FieldAccessor accessor, Object target, char[] buffer, int start, int length) throws IllegalAccessException {
+            read(accessor, target, new String(buffer, start, length));
+        }
+
+        abstract String write(FieldAccessor accessor, Object target) throws IllegalAccessException;
+
+        /**
+         * Returns the primitive value for a field of {@code type}, or null if it isn't primitive or
+         * the converter can't convert it without boxing.
+         */
+        static PrimitiveValue get(Type type, TypeConverter<?> converter) {
+            if (type == int.class && converter instanceof IntConverter) {
+                return new IntValue((IntConverter) converter);
+            }
+            if (type == long.class && converter instanceof LongConverter) {
+                return new LongValue((LongConverter) converter);
+            }
+            if (type == double.class && converter instanceof DoubleConverter) {
+                return new DoubleValue((DoubleConverter) converter);
+            }
+            if (type == boolean.class && converter instanceof BooleanConverter) {
+                return new BooleanValue((BooleanConverter) converter);
+            }
+            return null;
+        }
+    }
+
+    private static final class IntValue extends PrimitiveValue {
+        final IntConverter converter;
+
+        IntValue(IntConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, String value) throws IllegalAccessException {
+            accessor.setInt(target, converter.parseInt(value));
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, char[] buffer, int start, int length) throws IllegalAccessException {
+            if (converter instanceof StandardTypeConverters.IntegerTypeConverter) {
+                accessor.setInt(target, StandardTypeConverters.parseInt(buffer, start, length));
+            } else {
+                super.read(accessor, target, buffer, start, length);
+            }
+        }
+
+        @Override
+        String write(FieldAccessor accessor, Object target) throws IllegalAccessException {
+            return converter.formatInt(accessor.getInt(target));
+        }
+    }
+
+    private static final class LongValue extends PrimitiveValue {
+        final LongConverter converter;
+
+        LongValue(LongConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, String value) throws IllegalAccessException {
+            accessor.setLong(target, converter.parseLong(value));
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, char[] buffer, int start, int length) throws IllegalAccessException {
+            if (converter instanceof StandardTypeConverters.LongTypeConverter) {
+                accessor.setLong(target, StandardTypeConverters.parseLong(buffer, start, length));
+            } else {
+                super.read(accessor, target, buffer, start, length);
+            }
+        }
+
+        @Override
+        String write(FieldAccessor accessor, Object target) throws IllegalAccessException {
+            return converter.formatLong(accessor.getLong(target));
+        }
+    }
+
+    private static final class DoubleValue extends PrimitiveValue {
+        final DoubleConverter converter;
+
+        DoubleValue(DoubleConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, String value) throws IllegalAccessException {
+            accessor.setDouble(target, converter.parseDouble(value));
+        }
+
+        @Override
+        String write(FieldAccessor accessor, Object target) throws IllegalAccessException {
+            return converter.formatDouble(accessor.getDouble(target));
+        }
+    }
+
+    private static final class BooleanValue extends PrimitiveValue {
+        final BooleanConverter converter;
+
+        BooleanValue(BooleanConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, String value) throws IllegalAccessException {
+            accessor.setBoolean(target, converter.parseBoolean(value));
+        }
+
+        @Override
+        void read(FieldAccessor accessor, Object target, char[] buffer, int start, int length) throws IllegalAccessException {
+            if (converter instanceof StandardTypeConverters.BooleanTypeConverter) {
+                accessor.setBoolean(target, StandardTypeConverters.parseBoolean(buffer, start, length));
+            } else {
+                super.read(accessor, target, buffer, start, length);
+            }
+        }
+
+        @Override
+        String write(FieldAccessor accessor, Object target) throws IllegalAccessException {
+            return converter.formatBoolean(accessor.getBoolean(target));
+        }
+    }
+
     private static class CollectionFieldBinding<T> extends TagFieldBinding<T> {
-        final CollectionFactory collectionFactory;
+        final CollectionSizer sizer;
+        final boolean set;
 
-        CollectionFieldBinding(Field field, String name, Namespace namespace, XmlAdapter<T> adapter, CollectionFactory collectionFactory) {
-            super(field, name, namespace, adapter);
-            this.collectionFactory = collectionFactory;
+        CollectionFieldBinding(Field field, TagInfo tagInfo, XmlAdapter<T> adapter, CollectionSizer sizer, boolean set) {
+            super(field, tagInfo, adapter);
+            this.sizer = sizer;
+            this.set = set;
         }
 
         @SuppressWarnings("unchecked")
         void init(Object value) throws IllegalAccessException {
             // Ensure field holds a collection.
-            Collection<T> currentValue = (Collection<T>) field.get(value);
+            Collection<T> currentValue = (Collection<T>) accessor.get(value);
             if (currentValue == null) {
-                field.set(value, collectionFactory.newCollection());
+                accessor.set(value, set ? sizer.<T>newSet() : sizer.<T>newList());
+            }
+        }
+
+        @Override
+        boolean reusesValue() {
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void reset(Object value) throws IllegalAccessException {
+            Collection<T> currentValue = (Collection<T>) accessor.get(value);
+            Collection<T> recycled = sizer.recycle(currentValue, set);
+            if (recycled != currentValue) {
+                accessor.set(value, recycled);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void finish(Object value) throws IllegalAccessException {
+            Collection<T> currentValue = (Collection<T>) accessor.get(value);
+            Collection<T> finished = sizer.finish(currentValue);
+            if (finished != currentValue) {
+                accessor.set(value, finished);
             }
         }
 
@@ -491,7 +1012,7 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
             // We require that field's values are of type Collection<T>.
         void read(XmlPullParser parser, int index, Object value) throws IOException, IllegalAccessException, XmlPullParserException {
             T additionalValue = readValue(parser, index);
-            Collection<T> currentValue = (Collection<T>) field.get(value);
+            Collection<T> currentValue = (Collection<T>) accessor.get(value);
             currentValue.add(additionalValue);
         }
 
@@ -499,7 +1020,7 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
         @SuppressWarnings("unchecked")
             // We require that field's values are of type Collection<T>.
         void write(XmlSerializer serializer, Object value) throws IllegalAccessException, IOException {
-            Collection<T> fieldValue = (Collection<T>) field.get(value);
+            Collection<T> fieldValue = (Collection<T>) accessor.get(value);
             if (fieldValue != null) {
                 for (T singleValue : fieldValue) {
                     writeValue(serializer, singleValue);
@@ -507,22 +1028,4 @@ final class ClassXmlAdapter<T> extends XmlAdapter<T> {
             }
         }
     }
-
-    private static abstract class CollectionFactory {
-        abstract <T> Collection<T> newCollection();
-    }
-
-    private static final CollectionFactory ARRAY_LIST_COLLECTION_FACTORY = new CollectionFactory() {
-        @Override
-        <C> ArrayList<C> newCollection() {
-            return new ArrayList<>();
-        }
-    };
-
-    private static final CollectionFactory LINKED_HASH_SET_COLLECTION_FACTORY = new CollectionFactory() {
-        @Override
-        <C> LinkedHashSet<C> newCollection() {
-            return new LinkedHashSet<>();
-        }
-    };
 }
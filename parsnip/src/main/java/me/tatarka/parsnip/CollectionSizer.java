@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates the collections for a single collection field, sized from
+ * {@link me.tatarka.parsnip.annotations.ExpectedSize} or the sizes seen so far, and finishes them
+ * once they are read as configured with the {@link Xml.Builder}. This is used by generated
+ * adapters, you shouldn't need to use it directly.
+ */
+public final class CollectionSizer {
+    static final int ADAPTIVE = 1;
+    static final int TRIM = 1 << 1;
+    static final int UNMODIFIABLE = 1 << 2;
+
+    // Keeps sizes from overflowing the scaled average.
+    private static final int MAX_OBSERVED_SIZE = 1 << 24;
+
+    private final int expectedSize;
+    private final int options;
+    // A moving average of the sizes seen, times 8, or -1 if none have been. Updated without
+    // synchronization since a lost update only makes the guess slightly worse.
+    private int averageSize = -1;
+
+    /**
+     * @param expectedSize the size to create collections with, or -1 for the default.
+     * @param options      a combination of {@link #ADAPTIVE}, {@link #TRIM} and
+     *                     {@link #UNMODIFIABLE}.
+     */
+    CollectionSizer(int expectedSize, int options) {
+        this.expectedSize = expectedSize;
+        this.options = options;
+    }
+
+    public <E> List<E> newList() {
+        int size = size();
+        return size >= 0 ? new ArrayList<E>(size) : new ArrayList<E>();
+    }
+
+    public <E> Set<E> newSet() {
+        int size = size();
+        // Leave room so the set isn't rehashed at its default load factor.
+        return size >= 0 ? new LinkedHashSet<E>(size < 3 ? size + 1 : (int) (size / 0.75f) + 1) : new LinkedHashSet<E>();
+    }
+
+    public <E> List<E> finish(List<E> list) {
+        if (list == null) return null;
+        finishCollection(list);
+        return (options & UNMODIFIABLE) != 0 ? Collections.unmodifiableList(list) : list;
+    }
+
+    public <E> Set<E> finish(Set<E> set) {
+        if (set == null) return null;
+        finishCollection(set);
+        return (options & UNMODIFIABLE) != 0 ? Collections.unmodifiableSet(set) : set;
+    }
+
+    public <E> Collection<E> finish(Collection<E> collection) {
+        if (collection instanceof List) return finish((List<E>) collection);
+        if (collection instanceof Set) return finish((Set<E>) collection);
+        if (collection == null) return null;
+        finishCollection(collection);
+        return (options & UNMODIFIABLE) != 0 ? Collections.unmodifiableCollection(collection) : collection;
+    }
+
+    /**
+     * Returns {@code collection} cleared to be read into again, or a new one if it can't be.
+     */
+    <E> Collection<E> recycle(Collection<E> collection, boolean set) {
+        // An unmodifiable view hides the collection it wraps.
+        if (collection == null || (options & UNMODIFIABLE) != 0) {
+            return set ? this.<E>newSet() : this.<E>newList();
+        }
+        collection.clear();
+        return collection;
+    }
+
+    private void finishCollection(Collection<?> collection) {
+        if ((options & ADAPTIVE) != 0) {
+            int size = Math.min(collection.size(), MAX_OBSERVED_SIZE);
+            int average = averageSize;
+            // Rounded like size(), so that it settles on the size itself rather than up to one above it.
+            averageSize = average < 0 ? size << 3 : average + size - ((average + 4) >> 3);
+        }
+        if ((options & TRIM) != 0 && collection instanceof ArrayList) {
+            ((ArrayList<?>) collection).trimToSize();
+        }
+    }
+
+    /**
+     * The size to create the next collection with, or -1 for the default.
+     */
+    int size() {
+        int average = averageSize;
+        return average >= 0 ? (average + 4) >> 3 : expectedSize;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+/**
+ * A {@link TypeConverter} that can also convert {@code double} values without boxing them. Implement this
+ * on your converter for {@code double} fields and they will be read and written with these methods
+ * instead of {@link #from(String)} and {@link #to(Object)}, which should behave the same.
+ */
+public interface DoubleConverter extends TypeConverter<Double> {
+
+    double parseDouble(String value);
+
+    String formatDouble(double value);
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes a list of factories so that factories registered for a single type are only asked about
+ * that type. Every other factory is still asked about every type, in order.
+ */
+final class FactoryIndex {
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * A factory that can only create something for a single type.
+     */
+    interface TypeFactory {
+        Type type();
+    }
+
+    private final Map<Object, Integer> positions = new HashMap<>();
+    // Positions of factories that may create something for any type.
+    private final int[] openPositions;
+    // Positions of type factories, by canonical type.
+    private final Map<Type, int[]> typePositions = new HashMap<>();
+
+    FactoryIndex(List<?> factories) {
+        List<Integer> open = new ArrayList<>();
+        Map<Type, List<Integer>> byType = new HashMap<>();
+        for (int i = 0, size = factories.size(); i < size; i++) {
+            Object factory = factories.get(i);
+            // Match List.indexOf() if a factory is added more than once.
+            if (!positions.containsKey(factory)) {
+                positions.put(factory, i);
+            }
+            if (factory instanceof TypeFactory) {
+                Type type = Types.canonicalize(((TypeFactory) factory).type());
+                List<Integer> list = byType.get(type);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    byType.put(type, list);
+                }
+                list.add(i);
+            } else {
+                open.add(i);
+            }
+        }
+        openPositions = toArray(open);
+        for (Map.Entry<Type, List<Integer>> entry : byType.entrySet()) {
+            typePositions.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    /**
+     * Returns the position of the given factory, or -1 if it isn't in the list.
+     */
+    int indexOf(Object factory) {
+        Integer position = positions.get(factory);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Returns the positions, in order, of the factories starting at {@code from} that may create
+     * something for {@code type}. The result must not be modified.
+     */
+    int[] candidates(int from, Type type) {
+        int[] typed = typePositions.isEmpty() ? null : typePositions.get(Types.canonicalize(type));
+        if (typed == null) {
+            if (from == 0) return openPositions;
+            typed = EMPTY;
+        }
+        int[] result = new int[openPositions.length + typed.length];
+        int count = 0;
+        int o = 0;
+        int t = 0;
+        while (o < openPositions.length && openPositions[o] < from) o++;
+        while (t < typed.length && typed[t] < from) t++;
+        while (o < openPositions.length || t < typed.length) {
+            if (t == typed.length || (o < openPositions.length && openPositions[o] < typed[t])) {
+                result[count++] = openPositions[o++];
+            } else {
+                result[count++] = typed[t++];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Type;
+import java.util.Set;
+
+/**
+ * Base class for the adapters generated by parsnip-compiler. The adapter for {@code com.example.Foo}
+ * is generated as {@code com.example.Foo_XmlAdapter} and is used in place of the reflective class
+ * adapter whenever it's present.
+ */
+public abstract class GeneratedXmlAdapter<T> extends XmlAdapter<T> {
+    static final String SUFFIX = "_XmlAdapter";
+
+    protected static final Set<Annotation> NO_ANNOTATIONS = Util.NO_ANNOTATIONS;
+
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public XmlAdapter<?> create(Type type, Set<? extends Annotation> annotations, XmlAdapters adapters) {
+            // Adapters are only generated for non-generic classes.
+            if (!(type instanceof Class) || !annotations.isEmpty()) return null;
+            Constructor<?> constructor = generatedConstructor((Class<?>) type);
+            if (constructor == null) return null;
+            try {
+                return (XmlAdapter<?>) constructor.newInstance(adapters);
+            } catch (InvocationTargetException e) {
+                Throwable targetException = e.getTargetException();
+                if (targetException instanceof RuntimeException)
+                    throw (RuntimeException) targetException;
+                if (targetException instanceof Error) throw (Error) targetException;
+                throw new RuntimeException(targetException);
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+    };
+
+    // Not cached here, since a static map would keep every class it saw, and its class loader,
+    // alive. XmlAdapters caches the adapter this creates, so each Xml only looks once per class.
+    private static Constructor<?> generatedConstructor(Class<?> rawType) {
+        ClassLoader classLoader = rawType.getClassLoader();
+        // Platform types, primitives and arrays never have a generated adapter.
+        if (classLoader == null || rawType.isArray() || rawType.isInterface() || rawType.isEnum()) {
+            return null;
+        }
+        try {
+            Class<?> adapterClass = Class.forName(rawType.getName().replace('$', '_') + SUFFIX, true, classLoader);
+            Constructor<?> constructor = adapterClass.getDeclaredConstructor(XmlAdapters.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (ClassNotFoundException | NoSuchMethodException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the {@link me.tatarka.parsnip.annotations.XmlQualifier} annotations on the given
+     * field. This is only called when the adapter is created, and only for fields that have them.
+     */
+    protected static Set<? extends Annotation> fieldAnnotations(Class<?> type, String fieldName) {
+        try {
+            return Util.xmlAnnotations(type.getDeclaredField(fieldName));
+        } catch (NoSuchFieldException e) {
+            throw new AssertionError("Missing field " + fieldName + " in " + type.getName());
+        }
+    }
+
+    /**
+     * Returns the sizer for a collection field, {@code expectedSize} is -1 if it isn't annotated
+     * with {@link me.tatarka.parsnip.annotations.ExpectedSize}.
+     */
+    protected static CollectionSizer collectionSizer(XmlAdapters adapters, int expectedSize) {
+        return adapters.collectionSizer(expectedSize);
+    }
+
+    protected static <C> TypeConverter<C> requireConverter(TypeConverter<C> converter, Type type, Set<? extends Annotation> annotations) {
+        if (converter == null) {
+            throw new IllegalArgumentException("No XmlAdapter or TypeConverter for type " + type + " and annotations " + annotations);
+        }
+        return converter;
+    }
+
+    /**
+     * Converts the text the parser is on, straight from the parser's buffer if the converter
+     * supports it.
+     */
+    protected static <C> C fromText(XmlPullParser parser, TypeConverter<C> converter) {
+        return TextChars.fromText(parser, converter);
+    }
+
+    protected static void readToStartTag(XmlPullParser parser) throws XmlPullParserException, IOException {
+        while (parser.next() != XmlPullParser.START_TAG) {
+            // Read to start tag.
+        }
+    }
+
+    /**
+     * Moves to the next event that isn't text, for adapters that don't read text. The text in
+     * between is skipped without being read.
+     */
+    protected static int nextSkippingText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        return SubtreeSkipper.nextSkippingText(parser);
+    }
+
+    protected static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        SubtreeSkipper.skip(parser);
+    }
+}
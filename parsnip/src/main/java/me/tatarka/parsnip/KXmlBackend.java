@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * The built-in backends: kxml2, optionally with {@link Utf8XmlParser} for byte streams it can read.
+ * <p>
+ * Each thread keeps one of each parser and serializer for reuse, so reading many small documents
+ * doesn't allocate fresh buffers for each one. An instance is taken from the thread while it's in
+ * use, so a nested read on the same thread creates its own. Unless a buffer size is given, byte
+ * parsers are given a buffer sized to the documents the thread has read so far.
+ */
+final class KXmlBackend extends XmlBackend {
+    private static final int MIN_BUFFER_SIZE = 1024;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private final boolean parseBytes;
+    // 0 to adapt it to the documents read.
+    private final int bufferSize;
+    private final String name;
+
+    // Kept per thread, like the instances, since the backends are shared by every thread.
+    private final ThreadLocal<DocumentSize> documentSizes = new ThreadLocal<DocumentSize>() {
+        @Override
+        protected DocumentSize initialValue() {
+            return new DocumentSize();
+        }
+    };
+
+    private final InstanceCache<Utf8XmlParser> utf8Parsers = new InstanceCache<>();
+    private final InstanceCache<KXmlParser> parsers = new InstanceCache<>();
+    private final InstanceCache<KXmlSerializer> serializers = new InstanceCache<>();
+
+    KXmlBackend(boolean parseBytes, int bufferSize, String name) {
+        this.parseBytes = parseBytes;
+        this.bufferSize = bufferSize;
+        this.name = name;
+    }
+
+    @Override
+    public XmlPullParser newParser(InputStream stream, String encoding) throws XmlPullParserException, IOException {
+        return newParser(stream, encoding, true);
+    }
+
+    @Override
+    public XmlPullParser newParser(InputStream stream, String encoding, boolean processNamespaces) throws XmlPullParserException, IOException {
+        if (!parseBytes) {
+            XmlPullParser parser = newKXmlParser(processNamespaces);
+            parser.setInput(stream, encoding);
+            return parser;
+        }
+        Utf8XmlParser utf8Parser = utf8Parsers.take();
+        if (utf8Parser == null) {
+            utf8Parser = new Utf8XmlParser(bufferSize());
+        }
+        utf8Parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, processNamespaces);
+        utf8Parser.setInput(stream, encoding);
+        if (utf8Parser.isEncodingSupported()) {
+            return utf8Parser;
+        }
+        InputStream unread = utf8Parser.unreadInput();
+        recycle(utf8Parser);
+        XmlPullParser parser = newKXmlParser(processNamespaces);
+        parser.setInput(unread, encoding);
+        return parser;
+    }
+
+    @Override
+    public XmlPullParser newParser(Reader reader) throws XmlPullParserException {
+        return newParser(reader, true);
+    }
+
+    @Override
+    public XmlPullParser newParser(Reader reader, boolean processNamespaces) throws XmlPullParserException {
+        XmlPullParser parser = newKXmlParser(processNamespaces);
+        parser.setInput(reader);
+        return parser;
+    }
+
+    private XmlPullParser newKXmlParser(boolean processNamespaces) throws XmlPullParserException {
+        KXmlParser parser = parsers.take();
+        if (parser == null) {
+            parser = new KXmlParser();
+        }
+//        parser.setFeature(XmlPullParser.FEATURE_PROCESS_DOCDECL, true);
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, processNamespaces);
+        return parser;
+    }
+
+    @Override
+    public XmlSerializer newSerializer(OutputStream stream, String encoding) throws IOException {
+        XmlSerializer serializer = newKXmlSerializer();
+        serializer.setOutput(stream, encoding);
+        return serializer;
+    }
+
+    @Override
+    public XmlSerializer newSerializer(Writer writer) throws IOException {
+        XmlSerializer serializer = newKXmlSerializer();
+        serializer.setOutput(writer);
+        return serializer;
+    }
+
+    private XmlSerializer newKXmlSerializer() {
+        KXmlSerializer serializer = serializers.take();
+        return serializer != null ? serializer : new KXmlSerializer();
+    }
+
+    @Override
+    public void recycle(XmlPullParser parser) {
+        try {
+            if (parser instanceof Utf8XmlParser) {
+                Utf8XmlParser utf8Parser = (Utf8XmlParser) parser;
+                DocumentSize documentSize = documentSizes.get();
+                int size = Math.min(utf8Parser.bytesRead(), MAX_BUFFER_SIZE);
+                documentSize.average8 += size - (documentSize.average8 >> 3);
+                utf8Parser.release(bufferSize());
+                utf8Parsers.put(utf8Parser);
+            } else if (parser instanceof KXmlParser) {
+                parser.setInput((Reader) null);
+                parsers.put((KXmlParser) parser);
+            }
+        } catch (XmlPullParserException e) {
+            throw new AssertionError(e); // Clearing the input doesn't read anything.
+        }
+    }
+
+    @Override
+    public void recycle(XmlSerializer serializer) {
+        if (serializer instanceof KXmlSerializer) {
+            try {
+                serializer.setOutput((Writer) null);
+            } catch (IOException e) {
+                throw new AssertionError(e); // Clearing the output doesn't write anything.
+            }
+            serializers.put((KXmlSerializer) serializer);
+        }
+    }
+
+    /**
+     * Returns the buffer size for byte parsers, the next power of two above the average document
+     * size if it isn't fixed.
+     */
+    private int bufferSize() {
+        if (bufferSize != 0) {
+            return bufferSize;
+        }
+        int average = documentSizes.get().average8 >> 3;
+        int size = Integer.highestOneBit(Math.max(average, 1)) << 1;
+        return Math.min(Math.max(size, MIN_BUFFER_SIZE), MAX_BUFFER_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class DocumentSize {
+        // An average of the sizes of documents read with byte parsers, times 8.
+        int average8 = Utf8XmlParser.DEFAULT_BUFFER_SIZE * 8;
+    }
+
+    /**
+     * Holds one instance per thread.
+     */
+    private static final class InstanceCache<T> extends ThreadLocal<T> {
+        /**
+         * Returns this thread's instance, or null if there isn't one or it's in use.
+         */
+        T take() {
+            T instance = get();
+            if (instance != null) {
+                set(null);
+            }
+            return instance;
+        }
+
+        void put(T instance) {
+            set(instance);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.util.List;
+
+/**
+ * An open addressing hash table from a (name, namespace) pair to its position in the lists it was
+ * built from, built once and then only read. A name registered without a namespace matches the
+ * name in any namespace. If more than one position matches, the first one wins.
+ */
+final class NameTable {
+    private final String[] names;
+    // For each slot, the namespaces and positions registered under its name, in order.
+    private final String[][] namespaces;
+    private final int[][] positions;
+    private final int mask;
+
+    NameTable(List<String> names, List<String> namespaces) {
+        int capacity = 2;
+        while (capacity < names.size() * 2) {
+            capacity <<= 1;
+        }
+        this.names = new String[capacity];
+        this.namespaces = new String[capacity][];
+        this.positions = new int[capacity][];
+        this.mask = capacity - 1;
+        for (int i = 0, size = names.size(); i < size; i++) {
+            put(names.get(i), namespaces.get(i), i);
+        }
+    }
+
+    private void put(String name, String namespace, int position) {
+        int slot = name.hashCode() & mask;
+        while (names[slot] != null && !names[slot].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        if (names[slot] == null) {
+            names[slot] = name;
+            namespaces[slot] = new String[]{namespace};
+            positions[slot] = new int[]{position};
+        } else {
+            namespaces[slot] = append(namespaces[slot], namespace);
+            positions[slot] = append(positions[slot], position);
+        }
+    }
+
+    /**
+     * Returns the position of the first entry matching the name and namespace, or -1 if there
+     * isn't one.
+     */
+    int indexOf(String name, String namespace) {
+        int slot = name.hashCode() & mask;
+        String candidate;
+        while ((candidate = names[slot]) != null) {
+            if (candidate == name || candidate.equals(name)) {
+                String[] slotNamespaces = namespaces[slot];
+                for (int i = 0; i < slotNamespaces.length; i++) {
+                    // All namespaces match if none expected.
+                    String expected = slotNamespaces[i];
+                    if (expected == null || expected == namespace || expected.equals(namespace)) {
+                        return positions[slot][i];
+                    }
+                }
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if only a single entry was registered with this name.
+     */
+    boolean isUnique(String name) {
+        int slot = name.hashCode() & mask;
+        String candidate;
+        while ((candidate = names[slot]) != null) {
+            if (candidate.equals(name)) {
+                return positions[slot].length == 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static String[] append(String[] array, String item) {
+        String[] result = new String[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = item;
+        return result;
+    }
+
+    private static int[] append(int[] array, int item) {
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = item;
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The canonical instances of the tag, attribute and namespace names bound by the adapters of an
+ * {@link Xml} instance. Adapters register their names as they are created, and the byte parser
+ * returns these instances for the names it reads, so that matching a name against a binding is
+ * usually a reference comparison. Also reads local names from parsers with or without namespace
+ * processing.
+ */
+final class Names {
+    private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+    // Bumped whenever a name is added, so that a parser can tell that names it already read may
+    // now have a canonical instance. Racing updates can only cause a missed bump, which leaves
+    // some names not canonical, so this isn't synchronized.
+    private volatile int generation;
+
+    /**
+     * Registers the name, returning the instance to use for it from now on.
+     */
+    String intern(String name) {
+        String existing = names.putIfAbsent(name, name);
+        if (existing != null) {
+            return existing;
+        }
+        generation++;
+        return name;
+    }
+
+    /**
+     * Returns the registered instance equal to {@code name}, or {@code name} itself if there isn't
+     * one.
+     */
+    String canonical(String name) {
+        String existing = names.get(name);
+        return existing != null ? existing : name;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * Returns the local name of the start tag the parser is on, whether or not it processes
+     * namespaces.
+     */
+    static String localName(XmlPullParser parser) {
+        if (parser instanceof Utf8XmlParser) {
+            return ((Utf8XmlParser) parser).getLocalName();
+        }
+        return local(parser.getName());
+    }
+
+    /**
+     * Returns the local name of the attribute at index, whether or not the parser processes
+     * namespaces, or null if it's a namespace declaration. Declarations are only reported as
+     * attributes without namespace processing.
+     */
+    static String attributeLocalName(XmlPullParser parser, int index) {
+        if (parser instanceof Utf8XmlParser) {
+            return ((Utf8XmlParser) parser).getAttributeLocalName(index);
+        }
+        String name = parser.getAttributeName(index);
+        if (name.startsWith("xmlns") && (name.length() == 5 || name.charAt(5) == ':')) {
+            return null;
+        }
+        return local(name);
+    }
+
+    private static String local(String name) {
+        // Processed names never have a prefix.
+        int colon = name.indexOf(':');
+        return colon != -1 ? name.substring(colon + 1) : name;
+    }
+
+    /**
+     * Has the parser return these names, if it supports it.
+     */
+    void attach(XmlPullParser parser) {
+        if (parser instanceof Utf8XmlParser) {
+            ((Utf8XmlParser) parser).useNames(this);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import me.tatarka.parsnip.ClassXmlAdapter.ClassPlan;
+import me.tatarka.parsnip.ClassXmlAdapter.FieldPlan;
+
+/**
+ * Writes the reflection metadata GraalVM's native-image needs for the adapters that have been
+ * created, in the format of a {@code reflect-config.json} file.
+ */
+final class NativeImageConfig {
+    private final Map<String, Entry> entries = new TreeMap<>();
+    private boolean needsUnsafe;
+
+    NativeImageConfig(Map<Object, XmlAdapter<?>> adapters) {
+        for (Map.Entry<Object, XmlAdapter<?>> cached : adapters.entrySet()) {
+            XmlAdapter<?> adapter = cached.getValue();
+            if (adapter instanceof ClassXmlAdapter) {
+                addPlan(((ClassXmlAdapter<?>) adapter).getPlan());
+            } else if (adapter instanceof GeneratedXmlAdapter && cached.getKey() instanceof Class) {
+                // Found by name, and reads qualifier annotations off of the model's fields.
+                entry(adapter.getClass()).constructorParameterType = XmlAdapters.class.getName();
+                addClass((Class<?>) cached.getKey());
+            }
+        }
+    }
+
+    private void addPlan(ClassPlan plan) {
+        Class<?> rawType = Types.getRawType(plan.type);
+        addClass(rawType);
+        for (FieldPlan field : plan.fields) {
+            // Fields may be declared by a superclass.
+            entry(field.field.getDeclaringClass()).allDeclaredFields = true;
+            addEnums(field.type);
+        }
+    }
+
+    private void addClass(Class<?> rawType) {
+        Entry entry = entry(rawType);
+        entry.allDeclaredFields = true;
+        try {
+            rawType.getDeclaredConstructor();
+            entry.noArgsConstructor = true;
+        } catch (NoSuchMethodException e) {
+            // Will be allocated without calling a constructor.
+            entry.unsafeAllocated = true;
+            needsUnsafe = true;
+        }
+    }
+
+    /**
+     * Enum converters read {@link me.tatarka.parsnip.annotations.SerializedName} off of the enum
+     * constants.
+     */
+    private void addEnums(Type type) {
+        if (type instanceof Class) {
+            Class<?> rawType = (Class<?>) type;
+            if (rawType.isEnum()) {
+                entry(rawType).allPublicFields = true;
+            } else if (rawType.isArray()) {
+                addEnums(rawType.getComponentType());
+            }
+        } else if (type instanceof ParameterizedType) {
+            for (Type typeArgument : ((ParameterizedType) type).getActualTypeArguments()) {
+                addEnums(typeArgument);
+            }
+        } else if (type instanceof GenericArrayType) {
+            addEnums(((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                addEnums(bound);
+            }
+        }
+    }
+
+    private Entry entry(Class<?> type) {
+        Entry entry = entries.get(type.getName());
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(type.getName(), entry);
+        }
+        return entry;
+    }
+
+    void write(Writer out) throws IOException {
+        List<String> items = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            StringBuilder item = new StringBuilder();
+            item.append("  {\n    \"name\": \"").append(entry.getKey()).append('"');
+            if (value.allDeclaredFields) {
+                item.append(",\n    \"allDeclaredFields\": true");
+            }
+            if (value.allPublicFields) {
+                item.append(",\n    \"allPublicFields\": true");
+            }
+            if (value.noArgsConstructor) {
+                item.append(",\n    \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]");
+            } else if (value.constructorParameterType != null) {
+                item.append(",\n    \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": [\"")
+                        .append(value.constructorParameterType).append("\"]}]");
+            }
+            if (value.unsafeAllocated) {
+                item.append(",\n    \"unsafeAllocated\": true");
+            }
+            items.add(item.append("\n  }").toString());
+        }
+        if (needsUnsafe) {
+            // See ClassFactory.
+            items.add("  {\n    \"name\": \"sun.misc.Unsafe\",\n"
+                    + "    \"fields\": [{\"name\": \"theUnsafe\"}],\n"
+                    + "    \"methods\": [{\"name\": \"allocateInstance\", \"parameterTypes\": [\"java.lang.Class\"]}]\n  }");
+        }
+
+        out.write("[\n");
+        for (int i = 0; i < items.size(); i++) {
+            out.write(items.get(i));
+            out.write(i < items.size() - 1 ? ",\n" : "\n");
+        }
+        out.write("]\n");
+        out.flush();
+    }
+
+    private static final class Entry {
+        boolean allDeclaredFields;
+        boolean allPublicFields;
+        boolean noArgsConstructor;
+        boolean unsafeAllocated;
+        String constructorParameterType;
+    }
+}
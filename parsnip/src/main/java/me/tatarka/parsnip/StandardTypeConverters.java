@@ -60,7 +60,11 @@ final class StandardTypeConverters {
 
     private static int rangeCheckInt(String strValue, String typeMessage, int min, int max)
             throws XmlDataException {
-        int value = Integer.parseInt(strValue);
+        return rangeCheckInt(Integer.parseInt(strValue), typeMessage, min, max);
+    }
+
+    private static int rangeCheckInt(int value, String typeMessage, int min, int max)
+            throws XmlDataException {
         if (value < min || value > max) {
             throw new XmlDataException(
                     String.format(ERROR_FORMAT, typeMessage, value));
@@ -68,31 +72,120 @@ final class StandardTypeConverters {
         return value;
     }
 
-    static final TypeConverter<Boolean> BOOLEAN_TYPE_CONVERTER = new TypeConverter<Boolean>() {
+    /**
+     * Parses an int like {@link Integer#parseInt(String)}, without creating a string unless the
+     * value is too long to be parsed without overflow checks or is malformed.
+     */
+    static int parseInt(char[] buffer, int start, int length) {
+        int i = start;
+        int end = start + length;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        // 9 digits can't overflow.
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(new String(buffer, start, length));
+        }
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                // Let Integer report the error, or handle non-ascii digits.
+                return Integer.parseInt(new String(buffer, start, length));
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a long like {@link Long#parseLong(String)}, without creating a string unless the
+     * value is too long to be parsed without overflow checks or is malformed.
+     */
+    static long parseLong(char[] buffer, int start, int length) {
+        int i = start;
+        int end = start + length;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        // 18 digits can't overflow.
+        if (i == end || end - i > 18) {
+            return Long.parseLong(new String(buffer, start, length));
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                // Let Long report the error, or handle non-ascii digits.
+                return Long.parseLong(new String(buffer, start, length));
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a boolean like {@link Boolean#parseBoolean(String)}.
+     */
+    static boolean parseBoolean(char[] buffer, int start, int length) {
+        return length == 4
+                && Character.toLowerCase(buffer[start]) == 't'
+                && Character.toLowerCase(buffer[start + 1]) == 'r'
+                && Character.toLowerCase(buffer[start + 2]) == 'u'
+                && Character.toLowerCase(buffer[start + 3]) == 'e';
+    }
+
+    static final BooleanTypeConverter BOOLEAN_TYPE_CONVERTER = new BooleanTypeConverter();
+
+    static final class BooleanTypeConverter implements BooleanConverter, CharArrayConverter<Boolean> {
         @Override
         public Boolean from(String value) {
             return Boolean.parseBoolean(value);
         }
 
+        @Override
+        public Boolean from(char[] buffer, int start, int length) {
+            return StandardTypeConverters.parseBoolean(buffer, start, length);
+        }
+
         @Override
         public String to(Boolean value) {
             return value.toString();
         }
-    };
 
-    static final TypeConverter<Byte> BYTE_TYPE_CONVERTER = new TypeConverter<Byte>() {
+        @Override
+        public boolean parseBoolean(String value) {
+            return Boolean.parseBoolean(value);
+        }
+
+        @Override
+        public String formatBoolean(boolean value) {
+            return Boolean.toString(value);
+        }
+    }
+
+    static final CharArrayConverter<Byte> BYTE_TYPE_CONVERTER = new CharArrayConverter<Byte>() {
         @Override
         public Byte from(String value) {
             return (byte) rangeCheckInt(value, "a byte", Byte.MIN_VALUE, 0xFF);
         }
 
+        @Override
+        public Byte from(char[] buffer, int start, int length) {
+            return (byte) rangeCheckInt(parseInt(buffer, start, length), "a byte", Byte.MIN_VALUE, 0xFF);
+        }
+
         @Override
         public String to(Byte value) {
             return value.toString();
         }
     };
 
-    static final TypeConverter<Character> CHARACTER_TYPE_CONVERTER = new TypeConverter<Character>() {
+    static final CharArrayConverter<Character> CHARACTER_TYPE_CONVERTER = new CharArrayConverter<Character>() {
         @Override
         public Character from(String value) {
             if (value.length() > 1) {
@@ -101,13 +194,23 @@ final class StandardTypeConverters {
             return value.charAt(0);
         }
 
+        @Override
+        public Character from(char[] buffer, int start, int length) {
+            if (length != 1) {
+                // Let the string version report the error.
+                return from(new String(buffer, start, length));
+            }
+            return buffer[start];
+        }
+
         @Override
         public String to(Character value) {
             return value.toString();
         }
     };
 
-    static final TypeConverter<Double> DOUBLE_TYPE_CONVERTER = new TypeConverter<Double>() {
+    // There is no cheap way to parse a double without a string, so this only avoids the boxing.
+    static final DoubleConverter DOUBLE_TYPE_CONVERTER = new DoubleConverter() {
         @Override
         public Double from(String value) {
             return Double.parseDouble(value);
@@ -117,6 +220,16 @@ final class StandardTypeConverters {
         public String to(Double value) {
             return value.toString();
         }
+
+        @Override
+        public double parseDouble(String value) {
+            return Double.parseDouble(value);
+        }
+
+        @Override
+        public String formatDouble(double value) {
+            return Double.toString(value);
+        }
     };
 
     static final TypeConverter<Float> FLOAT_TYPE_CONVERTER = new TypeConverter<Float>() {
@@ -131,42 +244,82 @@ final class StandardTypeConverters {
         }
     };
 
-    static final TypeConverter<Integer> INTEGER_TYPE_CONVERTER = new TypeConverter<Integer>() {
+    static final IntegerTypeConverter INTEGER_TYPE_CONVERTER = new IntegerTypeConverter();
+
+    static final class IntegerTypeConverter implements IntConverter, CharArrayConverter<Integer> {
         @Override
         public Integer from(String value) {
             return Integer.parseInt(value);
         }
 
+        @Override
+        public Integer from(char[] buffer, int start, int length) {
+            return StandardTypeConverters.parseInt(buffer, start, length);
+        }
+
         @Override
         public String to(Integer value) {
             return value.toString();
         }
-    };
 
-    static final TypeConverter<Long> LONG_TYPE_CONVERTER = new TypeConverter<Long>() {
+        @Override
+        public int parseInt(String value) {
+            return Integer.parseInt(value);
+        }
+
+        @Override
+        public String formatInt(int value) {
+            return Integer.toString(value);
+        }
+    }
+
+    static final LongTypeConverter LONG_TYPE_CONVERTER = new LongTypeConverter();
+
+    static final class LongTypeConverter implements LongConverter, CharArrayConverter<Long> {
         @Override
         public Long from(String value) {
             return Long.parseLong(value);
         }
 
+        @Override
+        public Long from(char[] buffer, int start, int length) {
+            return StandardTypeConverters.parseLong(buffer, start, length);
+        }
+
         @Override
         public String to(Long value) {
             return value.toString();
         }
-    };
 
-    static final TypeConverter<Short> SHORT_TYPE_CONVERTER = new TypeConverter<Short>() {
+        @Override
+        public long parseLong(String value) {
+            return Long.parseLong(value);
+        }
+
+        @Override
+        public String formatLong(long value) {
+            return Long.toString(value);
+        }
+    }
+
+    static final CharArrayConverter<Short> SHORT_TYPE_CONVERTER = new CharArrayConverter<Short>() {
         @Override
         public Short from(String value) {
             return (short) rangeCheckInt(value, "a short", Short.MIN_VALUE, Short.MAX_VALUE);
         }
 
+        @Override
+        public Short from(char[] buffer, int start, int length) {
+            return (short) rangeCheckInt(parseInt(buffer, start, length), "a short", Short.MIN_VALUE, Short.MAX_VALUE);
+        }
+
         @Override
         public String to(Short value) {
             return value.toString();
         }
     };
 
+    // The only converter that should create a string.
     static final TypeConverter<String> STRING_TYPE_CONVERTER = new TypeConverter<String>() {
         @Override
         public String from(String value) {
@@ -179,21 +332,24 @@ final class StandardTypeConverters {
         }
     };
 
-    static final class EnumTypeConverter<T extends Enum<T>> implements TypeConverter<T> {
+    static final class EnumTypeConverter<T extends Enum<T>> implements CharArrayConverter<T> {
         private final Map<String, T> nameConstantMap;
         private final String[] nameStrings;
+        private final int[] nameHashes;
 
         EnumTypeConverter(Class<T> enumType) {
             try {
                 T[] constants = enumType.getEnumConstants();
                 nameConstantMap = new LinkedHashMap<>();
                 nameStrings = new String[constants.length];
+                nameHashes = new int[constants.length];
                 for (int i = 0; i < constants.length; i++) {
                     T constant = constants[i];
                     SerializedName annotation = enumType.getField(constant.name()).getAnnotation(SerializedName.class);
                     String name = annotation != null ? annotation.value() : constant.name();
                     nameConstantMap.put(name, constant);
                     nameStrings[i] = name;
+                    nameHashes[i] = name.hashCode();
                 }
             } catch (NoSuchFieldException e) {
                 throw new AssertionError("Missing field in " + enumType.getName());
@@ -207,6 +363,31 @@ final class StandardTypeConverters {
             throw new XmlDataException("Expected one of " + nameConstantMap.keySet() + " but was " + value);
         }
 
+        @Override
+        public T from(char[] buffer, int start, int length) {
+            // Same as String.hashCode() so that most names are only compared by hash.
+            int hash = 0;
+            for (int i = start, end = start + length; i < end; i++) {
+                hash = 31 * hash + buffer[i];
+            }
+            for (int i = 0; i < nameStrings.length; i++) {
+                if (nameHashes[i] == hash && regionEquals(nameStrings[i], buffer, start, length)) {
+                    // Through the map, so that duplicate names resolve the same way.
+                    return nameConstantMap.get(nameStrings[i]);
+                }
+            }
+            // Let the string version report the error.
+            return from(new String(buffer, start, length));
+        }
+
+        private static boolean regionEquals(String name, char[] buffer, int start, int length) {
+            if (name.length() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != buffer[start + i]) return false;
+            }
+            return true;
+        }
+
         @Override
         public String to(T value) {
             return nameStrings[value.ordinal()];
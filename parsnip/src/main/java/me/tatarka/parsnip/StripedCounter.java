@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that threads increment without contending on a single value, for counts bumped on
+ * every lookup. Each thread adds to one of several cells picked by its id, and the cells are
+ * spaced a cache line apart so that threads on different cells don't share a line.
+ */
+final class StripedCounter {
+    private static final int STRIPES = stripes();
+    // 8 longs is 64 bytes, a cache line on most hardware.
+    private static final int SPACING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * SPACING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.addAndGet(stripe * SPACING, delta);
+    }
+
+    /**
+     * Returns the sum of the cells. Increments that happen while summing may or may not be counted.
+     */
+    long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * SPACING);
+        }
+        return sum;
+    }
+
+    // A power of two at least the number of processors, so that busy threads rarely share a cell.
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Integer.highestOneBit(processors * 2 - 1);
+    }
+}
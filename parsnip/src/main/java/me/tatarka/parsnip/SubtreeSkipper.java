@@ -0,0 +1,431 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Skips xml that isn't bound to anything. With kxml2's parser this scans the raw characters in the
+ * parser's buffer, so that skipped elements and text are never turned into names, attributes or
+ * strings. The parser then reads the next tag itself, so it is left exactly where
+ * {@link XmlPullParser#next()}-ing over the skipped xml would leave it.
+ * <p>
+ * This reaches into kxml2's private fields, so it's only done with the kxml2 2.3.0 this library is
+ * built against, recognized by its exact set of fields. With any other version (ex: Android, which
+ * bundles its own kxml2 fork), or if the parser isn't in a state the scanner understands, it falls
+ * back to skipping event by event. {@link Utf8XmlParser} has its own scanner, and doesn't build text
+ * it isn't asked for in the first place.
+ * <p>
+ * Skipped elements are only checked for matching start and end tags. Other errors in them, such
+ * as a malformed attribute or an unknown entity, aren't reported.
+ */
+final class SubtreeSkipper {
+    private static final KXmlFields FIELDS = KXmlFields.find();
+
+    private SubtreeSkipper() {
+    }
+
+    static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        skip(parser, FIELDS);
+    }
+
+    /**
+     * Skips like {@link #skip(XmlPullParser)}, with null {@code fields} to skip as if kxml2's
+     * fields couldn't be found.
+     */
+    static void skip(XmlPullParser parser, KXmlFields fields) throws XmlPullParserException, IOException {
+        if (parser.getEventType() != XmlPullParser.START_TAG) {
+            throw new IllegalStateException();
+        }
+        if (parser instanceof Utf8XmlParser) {
+            ((Utf8XmlParser) parser).skipSubtree();
+            return;
+        }
+        if (fields != null && parser instanceof KXmlParser) {
+            try {
+                if (fields.skip(parser)) {
+                    return;
+                }
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+        int depth = 1;
+        while (depth != 0) {
+            switch (parser.next()) {
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Moves to the next event that isn't text, skipping over the text in between without the
+     * parser building it.
+     */
+    static int nextSkippingText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        return nextSkippingText(parser, FIELDS);
+    }
+
+    /**
+     * Moves like {@link #nextSkippingText(XmlPullParser)}, with null {@code fields} to move as if
+     * kxml2's fields couldn't be found.
+     */
+    static int nextSkippingText(XmlPullParser parser, KXmlFields fields) throws XmlPullParserException, IOException {
+        if (fields != null && parser instanceof KXmlParser) {
+            try {
+                fields.skipText(parser);
+            } catch (IllegalAccessException e) {
+                throw new AssertionError(e);
+            }
+        }
+        int type;
+        do {
+            type = parser.next();
+        } while (type == XmlPullParser.TEXT);
+        return type;
+    }
+
+    static final class KXmlFields {
+        // Scanner states.
+        private static final int TEXT = 0;
+        private static final int LT = 1;
+        private static final int START_TAG_NAME = 2;
+        private static final int START_TAG = 3;
+        private static final int QUOTED = 4;
+        private static final int END_TAG_NAME = 5;
+        private static final int END_TAG = 6;
+        private static final int BANG = 7;
+        private static final int COMMENT_START = 8;
+        private static final int COMMENT = 9;
+        private static final int CDATA_START = 10;
+        private static final int CDATA = 11;
+        private static final int PROCESSING_INSTRUCTION = 12;
+        private static final int DECLARATION = 13;
+
+        // Every field of kxml2 2.3.0's KXmlParser. Another version may keep the fields the
+        // scanner uses but change what they mean, so the scanner is only used with this one.
+        private static final String[] KXML_2_3_0_FIELDS = {
+                "java.lang.Object location", "java.lang.String UNEXPECTED_EOF",
+                "java.lang.String ILLEGAL_TYPE", "int LEGACY", "int XML_DECL",
+                "java.lang.String version", "java.lang.Boolean standalone", "boolean processNsp",
+                "boolean relaxed", "java.util.Hashtable entityMap", "int depth",
+                "[Ljava.lang.String; elementStack", "[Ljava.lang.String; nspStack", "[I nspCounts",
+                "java.io.Reader reader", "java.lang.String encoding", "[C srcBuf", "int srcPos",
+                "int srcCount", "int line", "int column", "[C txtBuf", "int txtPos", "int type",
+                "boolean isWhitespace", "java.lang.String namespace", "java.lang.String prefix",
+                "java.lang.String name", "boolean degenerated", "int attributeCount",
+                "[Ljava.lang.String; attributes", "int stackMismatch", "java.lang.String error",
+                "[I peek", "int peekCount", "boolean wasCR", "boolean unresolved", "boolean token",
+        };
+
+        final Field reader;
+        final Field srcBuf;
+        final Field srcPos;
+        final Field srcCount;
+        final Field line;
+        final Field column;
+        final Field peekCount;
+        final Field degenerated;
+
+        private KXmlFields(Class<?> type) throws NoSuchFieldException {
+            reader = field(type, "reader", Reader.class);
+            srcBuf = field(type, "srcBuf", char[].class);
+            srcPos = field(type, "srcPos", int.class);
+            srcCount = field(type, "srcCount", int.class);
+            line = field(type, "line", int.class);
+            column = field(type, "column", int.class);
+            peekCount = field(type, "peekCount", int.class);
+            degenerated = field(type, "degenerated", boolean.class);
+        }
+
+        static KXmlFields find() {
+            try {
+                if (!isKXml230(KXmlParser.class)) {
+                    return null;
+                }
+                return new KXmlFields(KXmlParser.class);
+            } catch (NoSuchFieldException | RuntimeException | LinkageError e) {
+                return null;
+            }
+        }
+
+        static boolean isKXml230(Class<?> type) {
+            Field[] fields = type.getDeclaredFields();
+            if (fields.length != KXML_2_3_0_FIELDS.length) {
+                return false;
+            }
+            Set<String> expected = new HashSet<>(Arrays.asList(KXML_2_3_0_FIELDS));
+            for (Field field : fields) {
+                if (!expected.contains(field.getType().getName() + " " + field.getName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static Field field(Class<?> type, String name, Class<?> fieldType) throws NoSuchFieldException {
+            Field field = type.getDeclaredField(name);
+            if (field.getType() != fieldType) {
+                throw new NoSuchFieldException(name);
+            }
+            field.setAccessible(true);
+            return field;
+        }
+
+        /**
+         * Returns true if the parser's next chars are all in its buffer, after the tag it's on.
+         */
+        private boolean canScan(XmlPullParser parser) throws IllegalAccessException, XmlPullParserException {
+            int type = parser.getEventType();
+            // Chars already peeked at have been taken out of the buffer, and an empty element
+            // tag has no content. A one char buffer isn't used, the parser reads char by char.
+            return (type == XmlPullParser.START_TAG || type == XmlPullParser.END_TAG)
+                    && peekCount.getInt(parser) == 0
+                    && !degenerated.getBoolean(parser)
+                    && ((char[]) srcBuf.get(parser)).length > 1;
+        }
+
+        /**
+         * Moves the parser up to the next '&lt;' if it's just after a tag.
+         */
+        void skipText(XmlPullParser parser) throws IllegalAccessException, XmlPullParserException, IOException {
+            if (!canScan(parser)) {
+                return;
+            }
+            char[] buffer = (char[]) srcBuf.get(parser);
+            int pos = srcPos.getInt(parser);
+            int count = srcCount.getInt(parser);
+            int lineNumber = line.getInt(parser);
+            int columnNumber = column.getInt(parser);
+            while (true) {
+                if (pos >= count) {
+                    int read = ((Reader) reader.get(parser)).read(buffer, 0, buffer.length);
+                    pos = 0;
+                    // Let the parser find the end of the document.
+                    count = Math.max(read, 0);
+                    if (read <= 0) break;
+                }
+                char c = buffer[pos];
+                if (c == '<') break;
+                pos++;
+                if (c == '\n') {
+                    lineNumber++;
+                    columnNumber = 1;
+                } else {
+                    columnNumber++;
+                }
+            }
+            srcPos.setInt(parser, pos);
+            srcCount.setInt(parser, count);
+            line.setInt(parser, lineNumber);
+            column.setInt(parser, columnNumber);
+        }
+
+        /**
+         * Moves the parser to the end tag of the element it's on. Returns false if the parser isn't
+         * in a state that can be scanned, without having changed it.
+         */
+        boolean skip(XmlPullParser parser) throws IllegalAccessException, XmlPullParserException, IOException {
+            if (!canScan(parser)) {
+                return false;
+            }
+            char[] buffer = (char[]) srcBuf.get(parser);
+            int pos = srcPos.getInt(parser);
+            int count = srcCount.getInt(parser);
+            int lineNumber = line.getInt(parser);
+            int columnNumber = column.getInt(parser);
+
+            int state = TEXT;
+            int level = 1;
+            // The names of the elements opened so far, created once there are any.
+            TagNameStack names = null;
+            char quote = 0;
+            boolean slash = false;
+            int run = 0;
+            while (true) {
+                if (pos >= count) {
+                    // Keep a '<' we may need to rewind to.
+                    int keep = state == LT ? 1 : 0;
+                    if (keep == 1) {
+                        buffer[0] = buffer[count - 1];
+                    }
+                    int read = ((Reader) reader.get(parser)).read(buffer, keep, buffer.length - keep);
+                    if (read <= 0) {
+                        srcPos.setInt(parser, 0);
+                        srcCount.setInt(parser, 0);
+                        throw new XmlPullParserException("Unexpected EOF", parser, null);
+                    }
+                    pos = keep;
+                    count = keep + read;
+                }
+                char c = buffer[pos++];
+                if (c == '\n') {
+                    lineNumber++;
+                    columnNumber = 1;
+                } else {
+                    columnNumber++;
+                }
+                switch (state) {
+                    case TEXT:
+                        if (c == '<') state = LT;
+                        break;
+                    case LT:
+                        if (c == '/') {
+                            if (level == 1) {
+                                // Rewind to the '<' so the parser reads this end tag.
+                                srcPos.setInt(parser, pos - 2);
+                                srcCount.setInt(parser, count);
+                                line.setInt(parser, lineNumber);
+                                column.setInt(parser, columnNumber - 2);
+                                parser.next();
+                                return true;
+                            }
+                            level--;
+                            names.push();
+                            state = END_TAG_NAME;
+                        } else if (c == '!') {
+                            state = BANG;
+                        } else if (c == '?') {
+                            state = PROCESSING_INSTRUCTION;
+                            run = 0;
+                        } else {
+                            level++;
+                            if (names == null) names = new TagNameStack();
+                            names.push();
+                            names.append(c);
+                            slash = false;
+                            state = START_TAG_NAME;
+                        }
+                        break;
+                    case START_TAG_NAME:
+                        if (c == '>') {
+                            state = TEXT;
+                        } else if (c == '/') {
+                            slash = true;
+                            state = START_TAG;
+                        } else if (isWhitespace(c)) {
+                            state = START_TAG;
+                        } else {
+                            names.append(c);
+                        }
+                        break;
+                    case START_TAG:
+                        if (c == '"' || c == '\'') {
+                            quote = c;
+                            state = QUOTED;
+                        } else if (c == '>') {
+                            if (slash) {
+                                level--;
+                                names.pop();
+                            }
+                            state = TEXT;
+                        } else {
+                            slash = c == '/';
+                        }
+                        break;
+                    case END_TAG_NAME:
+                        if (c == '>' || isWhitespace(c)) {
+                            String error = names.popEndTag();
+                            if (error != null) {
+                                srcPos.setInt(parser, pos);
+                                srcCount.setInt(parser, count);
+                                line.setInt(parser, lineNumber);
+                                column.setInt(parser, columnNumber);
+                                throw new XmlPullParserException(error, parser, null);
+                            }
+                            state = c == '>' ? TEXT : END_TAG;
+                        } else {
+                            names.append(c);
+                        }
+                        break;
+                    case QUOTED:
+                        if (c == quote) {
+                            slash = false;
+                            state = START_TAG;
+                        }
+                        break;
+                    case END_TAG:
+                    case DECLARATION:
+                        if (c == '>') state = TEXT;
+                        break;
+                    case BANG:
+                        if (c == '-') {
+                            state = COMMENT_START;
+                        } else if (c == '[') {
+                            state = CDATA_START;
+                        } else {
+                            state = c == '>' ? TEXT : DECLARATION;
+                        }
+                        break;
+                    case COMMENT_START:
+                        run = 0;
+                        state = c == '-' ? COMMENT : c == '>' ? TEXT : DECLARATION;
+                        break;
+                    case COMMENT:
+                        // Ends at "-->".
+                        if (c == '>' && run >= 2) {
+                            state = TEXT;
+                        } else {
+                            run = c == '-' ? run + 1 : 0;
+                        }
+                        break;
+                    case CDATA_START:
+                        // Skip over "CDATA[".
+                        if (c == '[') {
+                            run = 0;
+                            state = CDATA;
+                        }
+                        break;
+                    case CDATA:
+                        // Ends at "]]>".
+                        if (c == '>' && run >= 2) {
+                            state = TEXT;
+                        } else {
+                            run = c == ']' ? run + 1 : 0;
+                        }
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        // Ends at "?>".
+                        if (c == '>' && run >= 1) {
+                            state = TEXT;
+                        } else {
+                            run = c == '?' ? 1 : 0;
+                        }
+                        break;
+                }
+            }
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.util.Arrays;
+
+/**
+ * The names of the elements opened while skipping a subtree, so that each end tag can be checked
+ * against its start tag without building strings. Names are kept as the chars or bytes they were
+ * read as.
+ */
+final class TagNameStack {
+    private char[] chars = new char[64];
+    private int length;
+    private int[] starts = new int[8];
+    private int depth;
+
+    /**
+     * Starts a new name, its chars are then added with {@link #append(int)}.
+     */
+    void push() {
+        if (depth == starts.length) {
+            starts = Arrays.copyOf(starts, depth * 2);
+        }
+        starts[depth++] = length;
+    }
+
+    void append(int c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = (char) c;
+    }
+
+    void pop() {
+        length = starts[--depth];
+    }
+
+    /**
+     * Pops the name of an end tag and the name of the start tag below it. Returns null if they
+     * match, or the error to report if they don't.
+     */
+    String popEndTag() {
+        int end = starts[depth - 1];
+        int start = starts[depth - 2];
+        boolean matches = end - start == length - end;
+        for (int i = 0; matches && i < end - start; i++) {
+            matches = chars[start + i] == chars[end + i];
+        }
+        String error = matches ? null : "expected: </" + new String(chars, start, end - start)
+                + "> read: </" + new String(chars, end, length - end) + ">";
+        pop();
+        pop();
+        return error;
+    }
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import me.tatarka.parsnip.annotations.Tag;
@@ -60,9 +61,13 @@ public class TagXmlAdapter<T> extends XmlAdapter<T> {
         this.converter = converter;
     }
 
+    me.tatarka.parsnip.TypeConverter<T> converter() {
+        return converter;
+    }
+
     @Override
     public T fromXml(XmlPullParser parser, TagInfo tagInfo) throws IOException, XmlPullParserException {
-        return converter.from(parser.nextText());
+        return TextChars.fromNextText(parser, converter);
     }
 
     @Override
@@ -71,4 +76,10 @@ public class TagXmlAdapter<T> extends XmlAdapter<T> {
         serializer.text(converter.to(value));
         serializer.endTag(tagInfo.namespace(), tagInfo.name());
     }
+
+    @Override
+    boolean readsNamespaces(List<XmlAdapter<?>> delegates) {
+        // Only reads the text.
+        return false;
+    }
 }
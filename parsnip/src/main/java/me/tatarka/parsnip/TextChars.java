@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * Converts text with a {@link CharArrayConverter} straight from the parser's buffer.
+ */
+final class TextChars {
+    private static final char[] EMPTY = new char[0];
+
+    private TextChars() {
+    }
+
+    /**
+     * Converts the text the parser is on.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T fromText(XmlPullParser parser, TypeConverter<T> converter) {
+        if (!(converter instanceof CharArrayConverter)) {
+            return converter.from(parser.getText());
+        }
+        int[] holder = new int[2];
+        char[] buffer = parser.getTextCharacters(holder);
+        return ((CharArrayConverter<T>) converter).from(buffer, holder[0], holder[1]);
+    }
+
+    /**
+     * Converts the text of the start tag the parser is on, like {@link XmlPullParser#nextText()}.
+     * The parser is left on the end tag.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T fromNextText(XmlPullParser parser, TypeConverter<T> converter) throws XmlPullParserException, IOException {
+        if (!(converter instanceof CharArrayConverter)) {
+            return converter.from(parser.nextText());
+        }
+        CharArrayConverter<T> charConverter = (CharArrayConverter<T>) converter;
+        if (!nextIsText(parser)) {
+            return charConverter.from(EMPTY, 0, 0);
+        }
+        // The buffer is reused for the end tag, so convert before moving on.
+        int[] holder = new int[2];
+        char[] buffer = parser.getTextCharacters(holder);
+        T result = charConverter.from(buffer, holder[0], holder[1]);
+        requireEndTag(parser);
+        return result;
+    }
+
+    /**
+     * Moves from a start tag to its text. Returns false if the tag is empty, in which case the
+     * parser is already on the end tag.
+     */
+    static boolean nextIsText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        if (parser.getEventType() != XmlPullParser.START_TAG) {
+            throw new XmlPullParserException("precondition: START_TAG", parser, null);
+        }
+        int eventType = parser.next();
+        if (eventType == XmlPullParser.TEXT) {
+            return true;
+        }
+        if (eventType == XmlPullParser.END_TAG) {
+            return false;
+        }
+        throw new XmlPullParserException("parser must be on START_TAG or TEXT to read text", parser, null);
+    }
+
+    /**
+     * Moves from the text of a tag to its end tag.
+     */
+    static void requireEndTag(XmlPullParser parser) throws XmlPullParserException, IOException {
+        if (parser.next() != XmlPullParser.END_TAG) {
+            throw new XmlPullParserException("TEXT must be immediately followed by END_TAG and not "
+                    + XmlPullParser.TYPES[parser.getEventType()], parser, null);
+        }
+    }
+
+    static char[] empty() {
+        return EMPTY;
+    }
+}
@@ -0,0 +1,1377 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A pull parser that reads UTF-8, ASCII and Latin-1 documents straight from their bytes, instead
+ * of decoding them to chars first like kxml2 does. Tag and attribute names are looked up by their
+ * bytes in a symbol table, so each distinct name is only decoded once, and attribute values and
+ * text are only decoded when they are asked for.
+ * <p>
+ * It behaves like {@link org.kxml2.io.KXmlParser} does for parsnip: comments and processing
+ * instructions are skipped, CDATA and entities are merged into the surrounding text, whitespace
+ * outside the root element isn't reported and a doctype is skipped without being processed.
+ * Unlike kxml2, {@link #nextToken()} and custom entities aren't supported, which is why it's only
+ * used with {@link XmlBackend#UTF8}. Other encodings are left to kxml2, see
+ * {@link #isEncodingSupported()}.
+ */
+final class Utf8XmlParser implements XmlPullParser {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_START = ascii("<![CDATA[");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final byte[] PROCESSING_INSTRUCTION_END = ascii("?>");
+    private static final byte[] DOCTYPE_START = ascii("<!DOCTYPE");
+    private static final byte[] XML_DECLARATION_START = ascii("<?xml");
+    private static final byte[] TAG_END = ascii(">");
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Limits on what a parser kept for reuse holds on to between documents.
+    private static final int MAX_RETAINED_CHARS = 8192;
+    private static final int MAX_RETAINED_SYMBOLS = 4096;
+
+    private boolean processNamespaces;
+
+    private InputStream in;
+    private String encoding;
+    private boolean encodingSupported;
+    private boolean latin1;
+    private boolean eof;
+    private int bytesRead;
+
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    // The first byte that must be kept when the buffer is refilled.
+    private int pinned;
+    // The names of the elements opened by skipSubtree(), created the first time it needs them.
+    private TagNameStack skippedNames;
+    // The start of a name or value being scanned, kept up to date when the buffer is refilled.
+    private int mark;
+
+    // Lines are counted lazily, up to linePos.
+    private int lineCount;
+    private int linePos;
+    private int lineStart;
+
+    private int type = START_DOCUMENT;
+    private int depth;
+    private boolean degenerated;
+    private String name;
+    private String namespace;
+    private String prefix;
+
+    // Indexed by depth.
+    private Symbol[] elementSymbols = new Symbol[16];
+    private String[] elementNames = new String[16];
+    private String[] elementNamespaces = new String[16];
+    private String[] elementPrefixes = new String[16];
+    // The number of namespaces declared at each depth and above.
+    private int[] namespaceCounts = new int[16];
+    private String[] namespacePrefixes = new String[8];
+    private String[] namespaceUris = new String[8];
+
+    private int attributeCount = -1;
+    private Symbol[] attributeSymbols = new Symbol[8];
+    private String[] attributeNames = new String[8];
+    private String[] attributeNamespaces = new String[8];
+    private String[] attributePrefixes = new String[8];
+    private String[] attributeValues = new String[8];
+    private int[] valueStarts = new int[8];
+    private int[] valueEnds = new int[8];
+    // If the value has no entities or line breaks, so it can be decoded as is.
+    private boolean[] valuePlain = new boolean[8];
+
+    private int textStart;
+    private int textEnd;
+    private boolean textPlain;
+    private boolean whitespace;
+    private String text;
+    private char[] chars = new char[128];
+    // The number of decoded chars of the current text, or -1 if it hasn't been decoded.
+    private int charCount = -1;
+
+    private final SymbolTable symbols = new SymbolTable(true);
+    // Namespace uris are kept apart from names, they aren't split at a colon.
+    private final SymbolTable uris = new SymbolTable(false);
+    // The canonical names the symbols were created with, if any.
+    private Names names;
+    private int namesGeneration;
+
+    Utf8XmlParser() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    Utf8XmlParser(int bufferSize) {
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Returns true if the input's encoding can be read by this parser. If not, the input should be
+     * read from {@link #unreadInput()} instead.
+     */
+    boolean isEncodingSupported() {
+        return encodingSupported;
+    }
+
+    /**
+     * Returns the number of bytes read from the current input so far.
+     */
+    int bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Drops the input and the values read from it so that the parser can be kept for the next
+     * document, with a buffer of {@code bufferSize} bytes. The names read so far are kept, so that
+     * documents with the same names don't decode them again.
+     */
+    void release(int bufferSize) {
+        in = null;
+        Arrays.fill(attributeValues, null);
+        text = null;
+        if (buffer.length != bufferSize) {
+            buffer = new byte[bufferSize];
+        }
+        if (chars.length > MAX_RETAINED_CHARS) {
+            chars = new char[128];
+        }
+    }
+
+    /**
+     * Returns the canonical instances from {@code names} for the names read from now on. Names
+     * already read are forgotten if they may not be canonical.
+     */
+    void useNames(Names names) {
+        int generation = names.generation();
+        if (names != this.names || generation != namesGeneration) {
+            this.names = names;
+            namesGeneration = generation;
+            symbols.clear();
+            uris.clear();
+        }
+    }
+
+    /**
+     * Returns the input from the start, for when its encoding isn't supported.
+     */
+    InputStream unreadInput() {
+        return new SequenceInputStream(new ByteArrayInputStream(Arrays.copyOf(buffer, limit)), in);
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) throws XmlPullParserException {
+        if (FEATURE_PROCESS_NAMESPACES.equals(name)) {
+            if (in != null) {
+                throw new XmlPullParserException("namespace processing can't be changed while parsing");
+            }
+            processNamespaces = state;
+        } else if (state) {
+            throw new XmlPullParserException("unsupported feature: " + name);
+        }
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return FEATURE_PROCESS_NAMESPACES.equals(name) && processNamespaces;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws XmlPullParserException {
+        throw new XmlPullParserException("unsupported property: " + name);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setInput(Reader in) throws XmlPullParserException {
+        throw new XmlPullParserException("only byte input is supported");
+    }
+
+    @Override
+    public void setInput(InputStream inputStream, String inputEncoding) throws XmlPullParserException {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("inputStream == null");
+        }
+        in = inputStream;
+        eof = false;
+        bytesRead = 0;
+        pos = limit = pinned = mark = 0;
+        lineCount = linePos = lineStart = 0;
+        type = START_DOCUMENT;
+        depth = 0;
+        degenerated = false;
+        name = namespace = prefix = null;
+        attributeCount = -1;
+        text = null;
+        charCount = -1;
+        try {
+            encoding = detectEncoding(inputEncoding);
+        } catch (IOException e) {
+            throw new XmlPullParserException(e.toString(), this, e);
+        }
+        String normalized = encoding.toUpperCase(Locale.US).replace('_', '-');
+        boolean wasLatin1 = latin1;
+        latin1 = normalized.equals("ISO-8859-1") || normalized.equals("ISO8859-1") || normalized.equals("LATIN1");
+        if (latin1 != wasLatin1 || symbols.size + uris.size > MAX_RETAINED_SYMBOLS) {
+            // Names from an earlier document were decoded differently, or there are too many.
+            symbols.clear();
+            uris.clear();
+        }
+        encodingSupported = latin1 || normalized.equals("UTF-8") || normalized.equals("UTF8")
+                || normalized.equals("US-ASCII") || normalized.equals("ASCII");
+    }
+
+    /**
+     * Returns the document's encoding from its byte order mark or declaration, skipping over the
+     * byte order mark.
+     */
+    private String detectEncoding(String inputEncoding) throws IOException {
+        request(4);
+        if (limit >= 3 && (buffer[0] & 0xff) == 0xef && (buffer[1] & 0xff) == 0xbb && (buffer[2] & 0xff) == 0xbf) {
+            pos = 3;
+            return inputEncoding != null ? inputEncoding : "UTF-8";
+        }
+        if (inputEncoding != null) {
+            return inputEncoding;
+        }
+        if (limit >= 2 && (buffer[0] == 0 || buffer[1] == 0 || (buffer[0] & 0xfe) == 0xfe)) {
+            // UTF-16 or UTF-32, either way not something we read.
+            return "UTF-16";
+        }
+        if (startsWith(XML_DECLARATION_START)) {
+            int end = pos;
+            while (true) {
+                if (end + 1 >= limit && !fill()) break;
+                if (buffer[end] == '?' && buffer[end + 1] == '>') {
+                    String declaration = new String(buffer, pos, end - pos, ISO_8859_1);
+                    String declared = pseudoAttribute(declaration, "encoding");
+                    return declared != null ? declared : "UTF-8";
+                }
+                end++;
+            }
+        }
+        return "UTF-8";
+    }
+
+    private static String pseudoAttribute(String declaration, String name) {
+        int index = declaration.indexOf(name);
+        if (index == -1) return null;
+        int equals = declaration.indexOf('=', index + name.length());
+        if (equals == -1) return null;
+        int start = equals + 1;
+        while (start < declaration.length() && declaration.charAt(start) <= ' ') start++;
+        if (start >= declaration.length()) return null;
+        char quote = declaration.charAt(start);
+        int end = declaration.indexOf(quote, start + 1);
+        if ((quote != '"' && quote != '\'') || end == -1) return null;
+        return declaration.substring(start + 1, end);
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public void defineEntityReplacementText(String entityName, String replacementText) throws XmlPullParserException {
+        throw new XmlPullParserException("custom entities are not supported");
+    }
+
+    @Override
+    public int getNamespaceCount(int depth) throws XmlPullParserException {
+        if (depth > this.depth) throw new IndexOutOfBoundsException();
+        return namespaceCounts[depth];
+    }
+
+    @Override
+    public String getNamespacePrefix(int pos) throws XmlPullParserException {
+        return namespacePrefixes[pos];
+    }
+
+    @Override
+    public String getNamespaceUri(int pos) throws XmlPullParserException {
+        return namespaceUris[pos];
+    }
+
+    @Override
+    public String getNamespace(String prefix) {
+        if ("xml".equals(prefix)) return XML_NAMESPACE;
+        if ("xmlns".equals(prefix)) return XMLNS_NAMESPACE;
+        for (int i = namespaceCounts[depth] - 1; i >= 0; i--) {
+            String declared = namespacePrefixes[i];
+            if (prefix == null ? declared == null : prefix.equals(declared)) {
+                return namespaceUris[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        StringBuilder description = new StringBuilder(type < TYPES.length ? TYPES[type] : "unknown");
+        if (type == START_TAG || type == END_TAG) {
+            description.append(type == START_TAG ? " <" : " </").append(elementSymbols[depth].qname).append('>');
+        }
+        return description.append(" @").append(getLineNumber()).append(':').append(getColumnNumber()).toString();
+    }
+
+    @Override
+    public int getLineNumber() {
+        countLines(pos);
+        return lineCount + 1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        countLines(pos);
+        return pos - lineStart + 1;
+    }
+
+    private void countLines(int to) {
+        for (int i = linePos; i < to; i++) {
+            if (buffer[i] == '\n') {
+                lineCount++;
+                lineStart = i + 1;
+            }
+        }
+        linePos = Math.max(linePos, to);
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (type != TEXT) {
+            throw new XmlPullParserException("not on text", this, null);
+        }
+        return whitespace;
+    }
+
+    @Override
+    public String getText() {
+        if (type != TEXT) return null;
+        if (text == null) {
+            if (textPlain) {
+                text = new String(buffer, textStart, textEnd - textStart, latin1 ? ISO_8859_1 : UTF_8);
+            } else {
+                decodeText();
+                text = new String(chars, 0, charCount);
+            }
+        }
+        return text;
+    }
+
+    @Override
+    public char[] getTextCharacters(int[] holderForStartAndLength) {
+        if (type != TEXT) {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+        decodeText();
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = charCount;
+        return chars;
+    }
+
+    private void decodeText() {
+        if (charCount == -1) {
+            charCount = decode(textStart, textEnd, false);
+        }
+    }
+
+    @Override
+    public String getNamespace() {
+        return namespace;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        if (type != START_TAG) {
+            throw new XmlPullParserException("not on a start tag", this, null);
+        }
+        return degenerated;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        checkAttribute(index);
+        return attributeNamespaces[index];
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        checkAttribute(index);
+        return attributeNames[index];
+    }
+
+    /**
+     * Returns the local name of the start tag the parser is on, even without namespace processing.
+     */
+    String getLocalName() {
+        return elementSymbols[depth].local;
+    }
+
+    /**
+     * Returns the local name of the attribute at index, even without namespace processing, or null
+     * if it's a namespace declaration.
+     */
+    String getAttributeLocalName(int index) {
+        checkAttribute(index);
+        Symbol attribute = attributeSymbols[index];
+        return attribute.declaration ? null : attribute.local;
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        checkAttribute(index);
+        return attributePrefixes[index];
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        checkAttribute(index);
+        return "CDATA";
+    }
+
+    @Override
+    public boolean isAttributeDefault(int index) {
+        checkAttribute(index);
+        return false;
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        checkAttribute(index);
+        String value = attributeValues[index];
+        if (value == null) {
+            int start = valueStarts[index];
+            int end = valueEnds[index];
+            if (valuePlain[index]) {
+                value = new String(buffer, start, end - start, latin1 ? ISO_8859_1 : UTF_8);
+            } else {
+                value = new String(chars, 0, decode(start, end, true));
+            }
+            attributeValues[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String name) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNames[i].equals(name) && (namespace == null || namespace.equals(attributeNamespaces[i]))) {
+                return getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private void checkAttribute(int index) {
+        if (index < 0 || index >= attributeCount) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+
+    @Override
+    public int getEventType() throws XmlPullParserException {
+        return type;
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (in == null) {
+            throw new XmlPullParserException("no input", this, null);
+        }
+        text = null;
+        charCount = -1;
+        attributeCount = -1;
+        if (degenerated) {
+            degenerated = false;
+            return type = END_TAG;
+        }
+        if (type == END_TAG) {
+            depth--;
+        }
+        if (type == END_DOCUMENT) {
+            return type;
+        }
+        name = namespace = prefix = null;
+        pinned = pos;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                if (depth > 0) {
+                    throw new XmlPullParserException("Unexpected EOF", this, null);
+                }
+                return type = END_DOCUMENT;
+            }
+            if (buffer[pos] == '<') {
+                if (!request(2)) {
+                    throw new XmlPullParserException("Unexpected EOF", this, null);
+                }
+                byte next = buffer[pos + 1];
+                if (next == '/') {
+                    readEndTag();
+                    return type = END_TAG;
+                }
+                if (next != '!' && next != '?') {
+                    readStartTag();
+                    return type = START_TAG;
+                }
+                if (depth == 0 && startsWith(DOCTYPE_START)) {
+                    skipDoctype();
+                    pinned = pos;
+                    continue;
+                }
+            }
+            if (readText() && (depth > 0 || !whitespace)) {
+                return type = TEXT;
+            }
+            pinned = pos;
+        }
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        throw new XmlPullParserException("nextToken() is not supported", this, null);
+    }
+
+    @Override
+    public void require(int type, String namespace, String name) throws XmlPullParserException, IOException {
+        if (type != this.type
+                || (namespace != null && !namespace.equals(getNamespace()))
+                || (name != null && !name.equals(getName()))) {
+            throw new XmlPullParserException("expected " + TYPES[type] + " " + name + " but was " + getPositionDescription(), this, null);
+        }
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        if (type != START_TAG) {
+            throw new XmlPullParserException("precondition: START_TAG", this, null);
+        }
+        next();
+        String result;
+        if (type == TEXT) {
+            result = getText();
+            next();
+        } else {
+            result = "";
+        }
+        if (type != END_TAG) {
+            throw new XmlPullParserException("END_TAG expected", this, null);
+        }
+        return result;
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        next();
+        if (type == TEXT && whitespace) {
+            next();
+        }
+        if (type != END_TAG && type != START_TAG) {
+            throw new XmlPullParserException("unexpected type", this, null);
+        }
+        return type;
+    }
+
+    /**
+     * Skips the element the parser is on, leaving it on the element's end tag. The skipped content
+     * is only scanned for its end, none of it is read.
+     */
+    void skipSubtree() throws XmlPullParserException, IOException {
+        if (type != START_TAG) {
+            throw new IllegalStateException();
+        }
+        if (degenerated) {
+            next();
+            return;
+        }
+        int level = 1;
+        while (true) {
+            pinned = pos;
+            while (pos < limit && buffer[pos] != '<') {
+                pos++;
+            }
+            if (pos >= limit) {
+                if (!fill()) throw new XmlPullParserException("Unexpected EOF", this, null);
+                continue;
+            }
+            if (!request(2)) {
+                throw new XmlPullParserException("Unexpected EOF", this, null);
+            }
+            byte next = buffer[pos + 1];
+            if (next == '/') {
+                if (level == 1) {
+                    next();
+                    return;
+                }
+                level--;
+                pos += 2;
+                skippedNames.push();
+                while (true) {
+                    if (pos >= limit && !fill()) {
+                        throw new XmlPullParserException("Unexpected EOF", this, null);
+                    }
+                    byte b = buffer[pos];
+                    if (!isNameByte(b)) break;
+                    skippedNames.append(b & 0xff);
+                    pos++;
+                }
+                String error = skippedNames.popEndTag();
+                if (error != null) {
+                    throw new XmlPullParserException(error, this, null);
+                }
+                skipPast(TAG_END);
+            } else if (next == '!') {
+                if (startsWith(COMMENT_START)) {
+                    skipPast(COMMENT_END);
+                } else if (startsWith(CDATA_START)) {
+                    skipPast(CDATA_END);
+                } else {
+                    skipPast(TAG_END);
+                }
+            } else if (next == '?') {
+                skipPast(PROCESSING_INSTRUCTION_END);
+            } else {
+                // A start tag, which may be empty. Attribute values may contain '>'.
+                if (skippedNames == null) skippedNames = new TagNameStack();
+                skippedNames.push();
+                pos++;
+                boolean inName = true;
+                byte quote = 0;
+                byte previous = 0;
+                while (true) {
+                    if (pos >= limit && !fill()) {
+                        throw new XmlPullParserException("Unexpected EOF", this, null);
+                    }
+                    byte b = buffer[pos++];
+                    if (inName) {
+                        if (isNameByte(b)) {
+                            skippedNames.append(b & 0xff);
+                            continue;
+                        }
+                        inName = false;
+                    }
+                    if (quote != 0) {
+                        if (b == quote) quote = 0;
+                    } else if (b == '"' || b == '\'') {
+                        quote = b;
+                    } else if (b == '>') {
+                        break;
+                    }
+                    previous = b;
+                }
+                if (previous != '/') {
+                    level++;
+                } else {
+                    skippedNames.pop();
+                }
+            }
+        }
+    }
+
+    private void readStartTag() throws XmlPullParserException, IOException {
+        pinned = pos;
+        pos++;
+        Symbol tag = readName();
+        attributeCount = 0;
+        while (true) {
+            skipWhitespace();
+            byte b = buffer[pos];
+            if (b == '>') {
+                pos++;
+                break;
+            }
+            if (b == '/') {
+                if (!request(2) || buffer[pos + 1] != '>') {
+                    throw new XmlPullParserException("expected '>' after '/'", this, null);
+                }
+                pos += 2;
+                degenerated = true;
+                break;
+            }
+            Symbol attribute = readName();
+            skipWhitespace();
+            if (buffer[pos] != '=') {
+                throw new XmlPullParserException("expected '=' after attribute name " + attribute.qname, this, null);
+            }
+            pos++;
+            skipWhitespace();
+            byte quote = buffer[pos];
+            if (quote != '"' && quote != '\'') {
+                throw new XmlPullParserException("expected a quoted value for attribute " + attribute.qname, this, null);
+            }
+            pos++;
+            int index = attributeCount++;
+            if (index == attributeSymbols.length) {
+                growAttributes();
+            }
+            attributeSymbols[index] = attribute;
+            attributeValues[index] = null;
+            valueStarts[index] = pos;
+            boolean plain = true;
+            while (true) {
+                if (pos >= limit && !fill()) {
+                    throw new XmlPullParserException("Unexpected EOF", this, null);
+                }
+                byte c = buffer[pos];
+                if (c == quote) {
+                    break;
+                }
+                if (c == '&') {
+                    plain = false;
+                    skipEntity();
+                } else if (c == '<') {
+                    throw new XmlPullParserException("'<' in attribute value", this, null);
+                } else {
+                    if (c == '\n' || c == '\r') {
+                        plain = false;
+                    }
+                    pos++;
+                }
+            }
+            valueEnds[index] = pos;
+            valuePlain[index] = plain;
+            pos++;
+        }
+
+        depth++;
+        if (depth == elementSymbols.length) {
+            growElements();
+        }
+        elementSymbols[depth] = tag;
+        if (processNamespaces) {
+            resolveNamespaces(tag);
+        } else {
+            namespaceCounts[depth] = namespaceCounts[depth - 1];
+            name = tag.qname;
+            namespace = "";
+            prefix = null;
+            for (int i = 0; i < attributeCount; i++) {
+                attributeNames[i] = attributeSymbols[i].qname;
+                attributeNamespaces[i] = "";
+                attributePrefixes[i] = null;
+            }
+        }
+        elementNames[depth] = name;
+        elementNamespaces[depth] = namespace;
+        elementPrefixes[depth] = prefix;
+    }
+
+    private void resolveNamespaces(Symbol tag) throws XmlPullParserException {
+        int namespaceCount = namespaceCounts[depth - 1];
+        int kept = 0;
+        for (int i = 0; i < attributeCount; i++) {
+            Symbol attribute = attributeSymbols[i];
+            if (!attribute.declaration) {
+                if (kept != i) {
+                    attributeSymbols[kept] = attribute;
+                    attributeValues[kept] = attributeValues[i];
+                    valueStarts[kept] = valueStarts[i];
+                    valueEnds[kept] = valueEnds[i];
+                    valuePlain[kept] = valuePlain[i];
+                }
+                kept++;
+                continue;
+            }
+            if (namespaceCount == namespacePrefixes.length) {
+                namespacePrefixes = Arrays.copyOf(namespacePrefixes, namespaceCount * 2);
+                namespaceUris = Arrays.copyOf(namespaceUris, namespaceCount * 2);
+            }
+            namespacePrefixes[namespaceCount] = attribute.prefix != null ? attribute.local : null;
+            namespaceUris[namespaceCount] = namespaceUri(i);
+            namespaceCount++;
+        }
+        attributeCount = kept;
+        namespaceCounts[depth] = namespaceCount;
+
+        name = tag.local;
+        prefix = tag.prefix;
+        namespace = getNamespace(prefix);
+        if (namespace == null) {
+            if (prefix != null) {
+                throw new XmlPullParserException("undefined prefix: " + prefix, this, null);
+            }
+            namespace = "";
+        }
+        for (int i = 0; i < attributeCount; i++) {
+            Symbol attribute = attributeSymbols[i];
+            attributeNames[i] = attribute.local;
+            attributePrefixes[i] = attribute.prefix;
+            if (attribute.prefix == null) {
+                attributeNamespaces[i] = "";
+            } else {
+                String attributeNamespace = getNamespace(attribute.prefix);
+                if (attributeNamespace == null) {
+                    throw new XmlPullParserException("undefined prefix: " + attribute.prefix, this, null);
+                }
+                attributeNamespaces[i] = attributeNamespace;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the namespace declaration at index, without decoding it again if the
+     * same uri was declared before.
+     */
+    private String namespaceUri(int index) {
+        if (!valuePlain[index]) {
+            return canonical(getAttributeValue(index));
+        }
+        int start = valueStarts[index];
+        int end = valueEnds[index];
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return uris.get(start, end, hash).qname;
+    }
+
+    private String canonical(String name) {
+        return names != null ? names.canonical(name) : name;
+    }
+
+    private void readEndTag() throws XmlPullParserException, IOException {
+        if (depth == 0) {
+            throw new XmlPullParserException("end tag without a start tag", this, null);
+        }
+        pinned = pos;
+        pos += 2;
+        // Compare the bytes, there's no need to look the name up.
+        byte[] expected = elementSymbols[depth].bytes;
+        if (!request(expected.length + 1) || !matches(expected, pos) || isNameByte(buffer[pos + expected.length])) {
+            String actual = readName().qname;
+            throw new XmlPullParserException("expected: </" + elementSymbols[depth].qname + "> read: </" + actual + ">", this, null);
+        }
+        pos += expected.length;
+        skipWhitespace();
+        if (buffer[pos] != '>') {
+            throw new XmlPullParserException("expected '>' to end </" + elementSymbols[depth].qname, this, null);
+        }
+        pos++;
+        name = elementNames[depth];
+        namespace = elementNamespaces[depth];
+        prefix = elementPrefixes[depth];
+    }
+
+    /**
+     * Scans text, including any CDATA sections, entities, comments and processing instructions in
+     * it, up to the next tag. Returns true if there's any text.
+     */
+    private boolean readText() throws XmlPullParserException, IOException {
+        textStart = pos;
+        textPlain = true;
+        whitespace = true;
+        boolean content = false;
+        while (true) {
+            int start = pos;
+            byte b = 0;
+            while (pos < limit) {
+                b = buffer[pos];
+                if (b == '<' || b == '&' || b == '\r') break;
+                if (b > ' ' || b < 0) whitespace = false;
+                pos++;
+            }
+            content |= pos != start;
+            if (pos >= limit) {
+                if (!fill()) break;
+                continue;
+            }
+            if (b == '\r') {
+                textPlain = false;
+                content = true;
+                pos++;
+            } else if (b == '&') {
+                textPlain = false;
+                whitespace = false;
+                content = true;
+                skipEntity();
+            } else {
+                if (!request(2)) break;
+                byte next = buffer[pos + 1];
+                if (next == '!' && startsWith(COMMENT_START)) {
+                    textPlain = false;
+                    skipPast(COMMENT_END);
+                } else if (next == '!' && startsWith(CDATA_START)) {
+                    textPlain = false;
+                    content = true;
+                    pos += CDATA_START.length;
+                    int contentStart = pos;
+                    skipPast(CDATA_END);
+                    for (int i = contentStart; i < pos - CDATA_END.length; i++) {
+                        byte c = buffer[i];
+                        if (c > ' ' || c < 0) {
+                            whitespace = false;
+                            break;
+                        }
+                    }
+                } else if (next == '?') {
+                    textPlain = false;
+                    skipPast(PROCESSING_INSTRUCTION_END);
+                } else if (next == '!' && !(depth == 0 && startsWith(DOCTYPE_START))) {
+                    // Anything else would be left where it is, and next() would never move on.
+                    throw new XmlPullParserException("unexpected markup: <!", this, null);
+                } else {
+                    break;
+                }
+            }
+        }
+        textEnd = pos;
+        return content;
+    }
+
+    /**
+     * Skips the entity reference at pos, checking that it's one we can decode.
+     */
+    private void skipEntity() throws XmlPullParserException, IOException {
+        int length = 1;
+        while (true) {
+            if (pos + length >= limit && !fill()) {
+                throw new XmlPullParserException("Unexpected EOF", this, null);
+            }
+            byte b = buffer[pos + length];
+            if (b == ';') break;
+            if (length > 10 || !isNameByte(b) && b != '#') {
+                throw new XmlPullParserException("unterminated entity ref", this, null);
+            }
+            length++;
+        }
+        if (decodeEntity(pos + 1, pos + length) == -1) {
+            throw new XmlPullParserException("unresolved: " + new String(buffer, pos, length + 1, ISO_8859_1), this, null);
+        }
+        pos += length + 1;
+    }
+
+    /**
+     * Returns the code point of the entity named by the bytes, or -1 if it isn't known.
+     */
+    private int decodeEntity(int start, int end) {
+        int length = end - start;
+        if (length >= 2 && buffer[start] == '#') {
+            int radix = 10;
+            int i = start + 1;
+            if (buffer[i] == 'x') {
+                radix = 16;
+                i++;
+            }
+            if (i == end) return -1;
+            int value = 0;
+            for (; i < end; i++) {
+                int digit = Character.digit(buffer[i], radix);
+                if (digit == -1 || value > 0x10ffff) return -1;
+                value = value * radix + digit;
+            }
+            return value <= 0x10ffff ? value : -1;
+        }
+        if (length == 2 && buffer[start + 1] == 't') {
+            if (buffer[start] == 'l') return '<';
+            if (buffer[start] == 'g') return '>';
+        } else if (length == 3 && buffer[start] == 'a' && buffer[start + 1] == 'm' && buffer[start + 2] == 'p') {
+            return '&';
+        } else if (length == 4) {
+            if (buffer[start] == 'a' && buffer[start + 1] == 'p' && buffer[start + 2] == 'o' && buffer[start + 3] == 's') return '\'';
+            if (buffer[start] == 'q' && buffer[start + 1] == 'u' && buffer[start + 2] == 'o' && buffer[start + 3] == 't') return '"';
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the bytes between start and end into {@link #chars}, returning the number of chars.
+     * Attribute values have their line breaks replaced with spaces, text has its comments,
+     * processing instructions and CDATA markers removed.
+     */
+    private int decode(int start, int end, boolean attribute) {
+        char[] out = chars;
+        if (out.length < end - start) {
+            // Never more chars than bytes.
+            out = chars = new char[Math.max(end - start, out.length * 2)];
+        }
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            int b = buffer[i];
+            if (b >= 0) {
+                if (b == '&') {
+                    int semicolon = i + 1;
+                    while (buffer[semicolon] != ';') semicolon++;
+                    int codePoint = decodeEntity(i + 1, semicolon);
+                    count += Character.toChars(codePoint, out, count);
+                    i = semicolon + 1;
+                } else if (b == '\r') {
+                    out[count++] = attribute ? ' ' : '\n';
+                    i++;
+                    if (i < end && buffer[i] == '\n') i++;
+                } else if (b == '\n' && attribute) {
+                    out[count++] = ' ';
+                    i++;
+                } else if (b == '<' && !attribute) {
+                    if (matches(CDATA_START, i)) {
+                        i += CDATA_START.length;
+                        while (!matches(CDATA_END, i)) {
+                            int c = buffer[i];
+                            if (c == '\r') {
+                                out[count++] = '\n';
+                                i++;
+                                if (buffer[i] == '\n') i++;
+                            } else if (c >= 0) {
+                                out[count++] = (char) c;
+                                i++;
+                            } else {
+                                i = decodeMultiByte(i, end, out, count);
+                                count += decodedLength;
+                            }
+                        }
+                        i += CDATA_END.length;
+                    } else {
+                        // A comment or processing instruction.
+                        byte[] terminator = buffer[i + 1] == '!' ? COMMENT_END : PROCESSING_INSTRUCTION_END;
+                        i += 2;
+                        while (!matches(terminator, i)) i++;
+                        i += terminator.length;
+                    }
+                } else {
+                    out[count++] = (char) b;
+                    i++;
+                }
+            } else if (latin1) {
+                out[count++] = (char) (b & 0xff);
+                i++;
+            } else {
+                i = decodeMultiByte(i, end, out, count);
+                count += decodedLength;
+            }
+        }
+        return count;
+    }
+
+    // The number of chars written by the last decodeMultiByte().
+    private int decodedLength;
+
+    /**
+     * Decodes the UTF-8 sequence at i into out, returning the index after it. Malformed input is
+     * replaced with U+FFFD, like a decoding reader would.
+     */
+    private int decodeMultiByte(int i, int end, char[] out, int count) {
+        int b = buffer[i] & 0xff;
+        int length;
+        int codePoint;
+        if ((b & 0xe0) == 0xc0) {
+            length = 2;
+            codePoint = b & 0x1f;
+        } else if ((b & 0xf0) == 0xe0) {
+            length = 3;
+            codePoint = b & 0x0f;
+        } else if ((b & 0xf8) == 0xf0) {
+            length = 4;
+            codePoint = b & 0x07;
+        } else {
+            out[count] = '\ufffd';
+            decodedLength = 1;
+            return i + 1;
+        }
+        if (i + length > end) {
+            out[count] = '\ufffd';
+            decodedLength = 1;
+            return end;
+        }
+        for (int j = 1; j < length; j++) {
+            int next = buffer[i + j];
+            if ((next & 0xc0) != 0x80) {
+                out[count] = '\ufffd';
+                decodedLength = 1;
+                return i + j;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3f);
+        }
+        decodedLength = Character.toChars(codePoint, out, count);
+        return i + length;
+    }
+
+    private void skipDoctype() throws XmlPullParserException, IOException {
+        // Skips to the closing '>', which may come after an internal subset in brackets.
+        int brackets = 0;
+        byte quote = 0;
+        pos += DOCTYPE_START.length;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new XmlPullParserException("Unexpected EOF", this, null);
+            }
+            byte b = buffer[pos++];
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '[') {
+                brackets++;
+            } else if (b == ']') {
+                brackets--;
+            } else if (b == '>' && brackets == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a tag or attribute name at pos.
+     */
+    private Symbol readName() throws XmlPullParserException, IOException {
+        mark = pos;
+        int hash = 0;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new XmlPullParserException("Unexpected EOF", this, null);
+            }
+            byte b = buffer[pos];
+            if (!isNameByte(b)) break;
+            hash = 31 * hash + b;
+            pos++;
+        }
+        if (pos == mark) {
+            throw new XmlPullParserException("name expected", this, null);
+        }
+        return symbols.get(mark, pos, hash);
+    }
+
+    private static boolean isNameByte(byte b) {
+        return b < 0 || (b > ' ' && b != '/' && b != '>' && b != '=' && b != '<' && b != '"' && b != '\'');
+    }
+
+    private void skipWhitespace() throws XmlPullParserException, IOException {
+        while (true) {
+            if (pos >= limit && !fill()) {
+                throw new XmlPullParserException("Unexpected EOF", this, null);
+            }
+            byte b = buffer[pos];
+            if (b > ' ' || b < 0) return;
+            pos++;
+        }
+    }
+
+    private void skipPast(byte[] end) throws XmlPullParserException, IOException {
+        while (true) {
+            if (!request(end.length)) {
+                throw new XmlPullParserException("Unexpected EOF", this, null);
+            }
+            if (matches(end, pos)) {
+                pos += end.length;
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean startsWith(byte[] bytes) throws IOException {
+        return request(bytes.length) && matches(bytes, pos);
+    }
+
+    private boolean matches(byte[] bytes, int at) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[at + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure there are at least count bytes after pos, returns false if there aren't that many
+     * left.
+     */
+    private boolean request(int count) throws IOException {
+        while (limit - pos < count) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads more bytes, dropping those before {@link #pinned} to make room. Returns false if there
+     * are none left. Positions into the buffer that are held in fields are moved with it.
+     */
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (pinned > 0) {
+            int shift = pinned;
+            countLines(shift);
+            System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+            limit -= shift;
+            pos -= shift;
+            mark -= shift;
+            linePos -= shift;
+            lineStart -= shift;
+            textStart -= shift;
+            textEnd -= shift;
+            for (int i = 0; i < attributeCount; i++) {
+                valueStarts[i] -= shift;
+                valueEnds[i] -= shift;
+            }
+            pinned = 0;
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read;
+        do {
+            read = in.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read == -1) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        bytesRead += read;
+        return true;
+    }
+
+    private void growAttributes() {
+        int size = attributeSymbols.length * 2;
+        attributeSymbols = Arrays.copyOf(attributeSymbols, size);
+        attributeNames = Arrays.copyOf(attributeNames, size);
+        attributeNamespaces = Arrays.copyOf(attributeNamespaces, size);
+        attributePrefixes = Arrays.copyOf(attributePrefixes, size);
+        attributeValues = Arrays.copyOf(attributeValues, size);
+        valueStarts = Arrays.copyOf(valueStarts, size);
+        valueEnds = Arrays.copyOf(valueEnds, size);
+        valuePlain = Arrays.copyOf(valuePlain, size);
+    }
+
+    private void growElements() {
+        int size = elementSymbols.length * 2;
+        elementSymbols = Arrays.copyOf(elementSymbols, size);
+        elementNames = Arrays.copyOf(elementNames, size);
+        elementNamespaces = Arrays.copyOf(elementNamespaces, size);
+        elementPrefixes = Arrays.copyOf(elementPrefixes, size);
+        namespaceCounts = Arrays.copyOf(namespaceCounts, size);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(ISO_8859_1);
+    }
+
+    /**
+     * A name, with its bytes so that it can be found again without decoding it.
+     */
+    private static final class Symbol {
+        final byte[] bytes;
+        final int hash;
+        final String qname;
+        final String prefix;
+        final String local;
+        // If this is xmlns or an xmlns: prefixed name.
+        final boolean declaration;
+        Symbol next;
+
+        Symbol(byte[] bytes, int hash, String qname, String prefix, String local) {
+            this.bytes = bytes;
+            this.hash = hash;
+            this.qname = qname;
+            this.prefix = prefix;
+            this.local = local;
+            this.declaration = prefix != null ? prefix.equals("xmlns") : local.equals("xmlns");
+        }
+    }
+
+    private final class SymbolTable {
+        // If symbols are split into a prefix and local name.
+        private final boolean qualified;
+        private Symbol[] table = new Symbol[64];
+        private int size;
+
+        SymbolTable(boolean qualified) {
+            this.qualified = qualified;
+        }
+
+        void clear() {
+            Arrays.fill(table, null);
+            size = 0;
+        }
+
+        Symbol get(int start, int end, int hash) {
+            int index = (hash ^ (hash >>> 16)) & (table.length - 1);
+            for (Symbol symbol = table[index]; symbol != null; symbol = symbol.next) {
+                if (symbol.hash == hash && symbol.bytes.length == end - start && matches(symbol.bytes, start)) {
+                    return symbol;
+                }
+            }
+            String qname = canonical(latin1
+                    ? new String(buffer, start, end - start, ISO_8859_1)
+                    : new String(buffer, start, end - start, UTF_8));
+            int colon = qualified ? qname.indexOf(':') : -1;
+            String prefix = colon != -1 ? qname.substring(0, colon) : null;
+            String local = colon != -1 ? canonical(qname.substring(colon + 1)) : qname;
+            Symbol symbol = new Symbol(Arrays.copyOfRange(buffer, start, end), hash, qname, prefix, local);
+            symbol.next = table[index];
+            table[index] = symbol;
+            if (++size > table.length * 3 / 4) {
+                rehash();
+            }
+            return symbol;
+        }
+
+        private void rehash() {
+            Symbol[] old = table;
+            table = new Symbol[old.length * 2];
+            for (Symbol head : old) {
+                for (Symbol symbol = head; symbol != null; ) {
+                    Symbol next = symbol.next;
+                    int index = (symbol.hash ^ (symbol.hash >>> 16)) & (table.length - 1);
+                    symbol.next = table[index];
+                    table[index] = symbol;
+                    symbol = next;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of warming up a single root type with {@link Xml#warmUp(Type...)}.
+ */
+public final class WarmUpResult {
+    private final Type type;
+    private final int adapterCount;
+    private final long durationNanos;
+
+    WarmUpResult(Type type, int adapterCount, long durationNanos) {
+        this.type = type;
+        this.adapterCount = adapterCount;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * The root type that was warmed up.
+     */
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * The number of adapters that were created for this type, including the adapters of the types
+     * it references. This is 0 if they had all already been created. If other threads are creating
+     * adapters at the same time, theirs may be counted as well.
+     */
+    public int adapterCount() {
+        return adapterCount;
+    }
+
+    /**
+     * How long it took to create the adapters for this type.
+     */
+    public long duration(TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return Types.typeToString(type) + ": " + adapterCount + " adapters in "
+                + TimeUnit.NANOSECONDS.toMicros(durationNanos) + "us";
+    }
+}
@@ -16,27 +16,41 @@
 
 package me.tatarka.parsnip;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import me.tatarka.parsnip.annotations.XmlQualifier;
 
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
 public class Xml {
     private static final String ERROR_FORMAT = "No %s for %s annotated %s";
 
-    static final List<XmlAdapter.Factory> BUILT_IN_ADAPTER_FACTORIES = new ArrayList<>(2);
+    static final List<XmlAdapter.Factory> BUILT_IN_ADAPTER_FACTORIES = new ArrayList<>(3);
     static final List<TypeConverter.Factory> BUILT_IN_CONVERTER_FACTORIES = new ArrayList<>(1);
 
     static {
         BUILT_IN_ADAPTER_FACTORIES.add(TagXmlAdapter.FACTORY);
+        BUILT_IN_ADAPTER_FACTORIES.add(GeneratedXmlAdapter.FACTORY);
         BUILT_IN_ADAPTER_FACTORIES.add(ClassXmlAdapter.FACTORY);
         BUILT_IN_CONVERTER_FACTORIES.add(StandardTypeConverters.FACTORY);
     }
 
     private final XmlAdapters adapters;
+    private final XmlBackend backend;
+    // The adapters handed out by adapter(), when they have to carry a backend other than the default.
+    private final Map<XmlAdapter<?>, XmlAdapter<?>> backendAdapters = new ConcurrentHashMap<>();
 
     private Xml(Builder builder) {
         List<XmlAdapter.Factory> adapterFactories = new ArrayList<>(builder.adapterFactories.size() + BUILT_IN_ADAPTER_FACTORIES.size());
@@ -45,7 +59,8 @@ public class Xml {
         List<TypeConverter.Factory> converterFactories = new ArrayList<>(builder.typeConverterFactories.size() + BUILT_IN_CONVERTER_FACTORIES.size());
         converterFactories.addAll(builder.typeConverterFactories);
         converterFactories.addAll(BUILT_IN_CONVERTER_FACTORIES);
-        adapters = new XmlAdapters(adapterFactories, converterFactories);
+        adapters = new XmlAdapters(adapterFactories, converterFactories, builder.bindingSnapshot, builder.collectionOptions);
+        backend = builder.backend;
     }
 
     public <T> XmlAdapter<T> adapter(Class<T> type) {
@@ -61,23 +76,92 @@ public class Xml {
         if (adapter == null) {
             throw new IllegalArgumentException(String.format(ERROR_FORMAT, "XmlAdapter", type, Util.NO_ANNOTATIONS));
         }
-        return adapter;
+        if (backend == XmlBackend.DEFAULT) {
+            return adapter;
+        }
+        @SuppressWarnings("unchecked") // Keyed by the adapter it wraps.
+        XmlAdapter<T> backendAdapter = (XmlAdapter<T>) backendAdapters.get(adapter);
+        if (backendAdapter == null) {
+            backendAdapter = new BackendXmlAdapter<>(adapter, backend);
+            backendAdapters.put(adapter, backendAdapter);
+        }
+        return backendAdapter;
+    }
+
+    /**
+     * Eagerly creates the adapters for the given root types, and every adapter they depend on, so
+     * that the first read or write of them doesn't pay for it. Adapters are created one at a time,
+     * so you may want to call this from a background thread on startup.
+     *
+     * @return the result for each type, in the given order.
+     * @throws IllegalArgumentException if an adapter can't be created for one of the types.
+     */
+    public List<WarmUpResult> warmUp(Type... types) {
+        List<WarmUpResult> results = new ArrayList<>(types.length);
+        for (Type type : types) {
+            int startCount = adapters.adapterCount();
+            long start = System.nanoTime();
+            adapter(type);
+            long duration = System.nanoTime() - start;
+            results.add(new WarmUpResult(type, adapters.adapterCount() - startCount, duration));
+        }
+        return results;
+    }
+
+    /**
+     * Writes out how each of the given root types, and every class they reference, are bound to
+     * xml. Loading this with {@link Builder#bindings(InputStream)} lets a later run create the same
+     * adapters with much less reflection. The snapshot should be written again when these classes
+     * change. Each class's fields are checked against the snapshot when it's first used, and a class
+     * whose fields have changed is reflected on as if it wasn't in the snapshot. Annotations aren't
+     * checked, so a snapshot written before an annotation changed will still use the old names.
+     */
+    public void writeBindings(OutputStream out, Type... rootTypes) throws IOException {
+        for (Type type : rootTypes) {
+            adapter(type);
+        }
+        BindingSnapshot.write(out, adapters.bindingPlans());
     }
 
+    /**
+     * Returns statistics on how adapters and converters have been created and looked up.
+     */
+    public AdapterStats stats() {
+        return adapters.stats();
+    }
+
+    /**
+     * Writes the reflection configuration needed to use the given root types, and every class they
+     * reference, in a GraalVM native image. The output is a {@code reflect-config.json} that can be
+     * placed in {@code META-INF/native-image/} or passed with {@code -H:ReflectionConfigurationFiles}.
+     */
+    public void writeNativeImageConfig(Writer out, Type... rootTypes) throws IOException {
+        for (Type type : rootTypes) {
+            adapter(type);
+        }
+        new NativeImageConfig(adapters.cachedAdapters()).write(out);
+    }
+
+    /**
+     * Builds an {@link Xml}.
+     * <p>
+     * Elements that aren't bound to anything are skipped without being parsed. They're still
+     * checked for matching start and end tags, but other errors in them, such as a malformed
+     * attribute or an undefined entity, aren't reported. Bind the element, or read it with your own
+     * adapter, if it must be checked.
+     */
     public static final class Builder {
         private final List<me.tatarka.parsnip.XmlAdapter.Factory> adapterFactories = new ArrayList<>();
         private final List<me.tatarka.parsnip.TypeConverter.Factory> typeConverterFactories = new ArrayList<>();
+        private BindingSnapshot bindingSnapshot;
+        private int collectionOptions;
+        private XmlBackend backend = XmlBackend.DEFAULT;
 
         public <T> Builder add(final Type type, final XmlAdapter<T> xmlAdapter) {
             if (type == null) throw new IllegalArgumentException("type == null");
             if (xmlAdapter == null) throw new IllegalArgumentException("xmlAdapter == null");
 
-            return add(new me.tatarka.parsnip.XmlAdapter.Factory() {
-                @Override
-                public me.tatarka.parsnip.XmlAdapter<?> create(Type targetType, Set<? extends Annotation> annotations, XmlAdapters adapters) {
-                    return annotations.isEmpty() && Util.typesMatch(type, targetType) ? xmlAdapter : null;
-                }
-            });
+            return add(new TypeXmlAdapterFactory(type, null, xmlAdapter));
         }
 
         public <T> Builder add(final Type type, final Class<? extends Annotation> annotation, final XmlAdapter<T> xmlAdapter) {
@@ -88,16 +172,7 @@ public class Xml {
                 throw new IllegalArgumentException(annotation + " does not have @XmlQualifier");
             }
 
-            return add(new me.tatarka.parsnip.XmlAdapter.Factory() {
-                @Override
-                public me.tatarka.parsnip.XmlAdapter<?> create(Type targetType, Set<? extends Annotation> annotations, XmlAdapters adapters) {
-                    if (!Util.typesMatch(type, targetType)) return null;
-                    // TODO: check for an annotations exact match.
-                    if (!Util.isAnnotationPresent(annotations, annotation))
-                        return null;
-                    return xmlAdapter;
-                }
-            });
+            return add(new TypeXmlAdapterFactory(type, annotation, xmlAdapter));
         }
 
         public Builder add(me.tatarka.parsnip.XmlAdapter.Factory xmlAdapter) {
@@ -110,12 +185,7 @@ public class Xml {
             if (type == null) throw new IllegalArgumentException("type == null");
             if (typeConverter == null) throw new IllegalArgumentException("typeConverter == null");
 
-            return add(new me.tatarka.parsnip.TypeConverter.Factory() {
-                @Override
-                public me.tatarka.parsnip.TypeConverter<?> create(Type targetType, Set<? extends Annotation> annotations) {
-                    return annotations.isEmpty() && Util.typesMatch(type, targetType) ? typeConverter : null;
-                }
-            });
+            return add(new TypeConverterFactory(type, null, typeConverter));
         }
 
         public <T> Builder add(final Type type, final Class<? extends Annotation> annotation, final me.tatarka.parsnip.TypeConverter<T> typeConverter) {
@@ -126,16 +196,7 @@ public class Xml {
                 throw new IllegalArgumentException(annotation + " does not have @XmlQualifier");
             }
 
-            return add(new me.tatarka.parsnip.TypeConverter.Factory() {
-                @Override
-                public me.tatarka.parsnip.TypeConverter<?> create(Type targetType, Set<? extends Annotation> annotations) {
-                    if (!Util.typesMatch(type, targetType)) return null;
-                    // TODO: check for an annotations exact match.
-                    if (!Util.isAnnotationPresent(annotations, annotation))
-                        return null;
-                    return typeConverter;
-                }
-            });
+            return add(new TypeConverterFactory(type, annotation, typeConverter));
         }
 
         public Builder add(final me.tatarka.parsnip.TypeConverter.Factory typeConverter) {
@@ -147,9 +208,174 @@ public class Xml {
             return add(AdapterMethodsFactory.get(adapter));
         }
 
+        /**
+         * Uses the bindings written by {@link Xml#writeBindings(OutputStream, Type...)} when
+         * creating adapters. The stream is read fully but not closed.
+         */
+        public Builder bindings(InputStream in) throws IOException {
+            if (in == null) throw new IllegalArgumentException("in == null");
+            bindingSnapshot = BindingSnapshot.read(in);
+            return this;
+        }
+
+        /**
+         * Creates each collection with room for the average number of elements read into that field
+         * so far, instead of the default capacity or its
+         * {@link me.tatarka.parsnip.annotations.ExpectedSize}.
+         */
+        public Builder adaptiveCollectionSizes(boolean enabled) {
+            return collectionOption(CollectionSizer.ADAPTIVE, enabled);
+        }
+
+        /**
+         * Trims lists to their size once they have been read, so that long-lived objects don't hold
+         * on to unused capacity.
+         */
+        public Builder trimCollections(boolean enabled) {
+            return collectionOption(CollectionSizer.TRIM, enabled);
+        }
+
+        /**
+         * Wraps collections with an unmodifiable view once they have been read.
+         */
+        public Builder unmodifiableCollections(boolean enabled) {
+            return collectionOption(CollectionSizer.UNMODIFIABLE, enabled);
+        }
+
+        /**
+         * Sets the parser and serializer implementation used by the adapters from this
+         * {@link Xml} to read from and write to streams, readers and strings. The default is
+         * {@link XmlBackend#DEFAULT}.
+         */
+        public Builder backend(XmlBackend backend) {
+            if (backend == null) throw new IllegalArgumentException("backend == null");
+            this.backend = backend;
+            return this;
+        }
+
+        private Builder collectionOption(int option, boolean enabled) {
+            if (enabled) {
+                collectionOptions |= option;
+            } else {
+                collectionOptions &= ~option;
+            }
+            return this;
+        }
+
         public Xml build() {
             return new Xml(this);
         }
     }
 
+    /**
+     * Reads and writes with {@code delegate}, using {@code backend} to create the parsers and
+     * serializers for it.
+     */
+    private static final class BackendXmlAdapter<T> extends XmlAdapter<T> {
+        private final XmlAdapter<T> delegate;
+        private final XmlBackend backend;
+
+        BackendXmlAdapter(XmlAdapter<T> delegate, XmlBackend backend) {
+            this.delegate = delegate;
+            this.backend = backend;
+        }
+
+        @Override
+        public T fromXml(XmlPullParser parser, TagInfo tagInfo) throws XmlPullParserException, IOException {
+            return delegate.fromXml(parser, tagInfo);
+        }
+
+        @Override
+        public T fromXml(XmlPullParser parser, TagInfo tagInfo, T reuse) throws XmlPullParserException, IOException {
+            return delegate.fromXml(parser, tagInfo, reuse);
+        }
+
+        @Override
+        public void toXml(XmlSerializer serializer, TagInfo tagInfo, T value) throws IOException {
+            delegate.toXml(serializer, tagInfo, value);
+        }
+
+        @Override
+        XmlBackend backend() {
+            return backend;
+        }
+
+        @Override
+        XmlAdapter<T> unwrap() {
+            return delegate.unwrap();
+        }
+
+        @Override
+        boolean readsNamespaces(List<XmlAdapter<?>> delegates) {
+            delegates.add(delegate);
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    /**
+     * Returns {@code adapter} for exactly {@code type}, qualified with {@code annotation} if it's not
+     * null. These are indexed by type instead of being asked about every type.
+     */
+    private static final class TypeXmlAdapterFactory implements XmlAdapter.Factory, FactoryIndex.TypeFactory {
+        private final Type type;
+        private final Class<? extends Annotation> annotation;
+        private final XmlAdapter<?> adapter;
+
+        TypeXmlAdapterFactory(Type type, Class<? extends Annotation> annotation, XmlAdapter<?> adapter) {
+            this.type = type;
+            this.annotation = annotation;
+            this.adapter = adapter;
+        }
+
+        @Override
+        public Type type() {
+            return type;
+        }
+
+        @Override
+        public XmlAdapter<?> create(Type targetType, Set<? extends Annotation> annotations, XmlAdapters adapters) {
+            if (!Util.typesMatch(type, targetType)) return null;
+            if (annotation == null) {
+                return annotations.isEmpty() ? adapter : null;
+            }
+            // TODO: check for an annotations exact match.
+            return Util.isAnnotationPresent(annotations, annotation) ? adapter : null;
+        }
+    }
+
+    /**
+     * Returns {@code converter} for exactly {@code type}, qualified with {@code annotation} if it's
+     * not null. These are indexed by type instead of being asked about every type.
+     */
+    private static final class TypeConverterFactory implements TypeConverter.Factory, FactoryIndex.TypeFactory {
+        private final Type type;
+        private final Class<? extends Annotation> annotation;
+        private final TypeConverter<?> converter;
+
+        TypeConverterFactory(Type type, Class<? extends Annotation> annotation, TypeConverter<?> converter) {
+            this.type = type;
+            this.annotation = annotation;
+            this.converter = converter;
+        }
+
+        @Override
+        public Type type() {
+            return type;
+        }
+
+        @Override
+        public TypeConverter<?> create(Type targetType, Set<? extends Annotation> annotations) {
+            if (!Util.typesMatch(type, targetType)) return null;
+            if (annotation == null) {
+                return annotations.isEmpty() ? converter : null;
+            }
+            // TODO: check for an annotations exact match.
+            return Util.isAnnotationPresent(annotations, annotation) ? converter : null;
+        }
+    }
 }
@@ -16,10 +16,8 @@
 
 package me.tatarka.parsnip;
 
-import org.kxml2.io.KXmlParser;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
@@ -31,9 +29,21 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public abstract class XmlAdapter<T> {
+    private static final int NAMESPACES_UNKNOWN = 0;
+    private static final int NAMESPACES_NEEDED = 1;
+    private static final int NAMESPACES_NOT_NEEDED = 2;
+
+    // If reading with this adapter needs namespace processing, see needsNamespaces(). Racing
+    // threads can only compute the same value, so this isn't synchronized.
+    private int namespaces = NAMESPACES_UNKNOWN;
+
     public abstract T fromXml(XmlPullParser parser, TagInfo tagInfo) throws XmlPullParserException, IOException;
 
     public final T fromXml(InputStream stream) throws IOException {
@@ -41,29 +51,70 @@ public abstract class XmlAdapter<T> {
     }
 
     public final T fromXml(InputStream stream, String encoding) throws IOException {
-        XmlPullParser parser = newPullParser();
+        return fromXml(stream, encoding, null);
+    }
+
+    /**
+     * Reads a value from the stream into {@code reuse}, see
+     * {@link #fromXml(XmlPullParser, TagInfo, Object)}.
+     */
+    public final T fromXml(InputStream stream, String encoding, T reuse) throws IOException {
+        XmlBackend backend = backend();
         try {
-            parser.setInput(stream, encoding);
-            return fromXml(parser, TagInfo.ROOT);
+            return read(backend, backend.newParser(stream, encoding, needsNamespaces()), reuse);
         } catch (XmlPullParserException e) {
             throw new IOException(e);
         }
     }
 
     public final T fromXml(Reader reader) throws IOException {
-        XmlPullParser parser = newPullParser();
+        return fromXml(reader, null);
+    }
+
+    /**
+     * Reads a value from the reader into {@code reuse}, see
+     * {@link #fromXml(XmlPullParser, TagInfo, Object)}.
+     */
+    public final T fromXml(Reader reader, T reuse) throws IOException {
+        XmlBackend backend = backend();
         try {
-            parser.setInput(reader);
-            return fromXml(parser, TagInfo.ROOT);
+            return read(backend, backend.newParser(reader, needsNamespaces()), reuse);
         } catch (XmlPullParserException e) {
             throw new IOException(e);
         }
     }
 
+    private T read(XmlBackend backend, XmlPullParser parser, T reuse) throws XmlPullParserException, IOException {
+        try {
+            return fromXml(parser, TagInfo.ROOT, reuse);
+        } finally {
+            backend.recycle(parser);
+        }
+    }
+
     public final T fromXml(String string) throws IOException {
         return fromXml(new StringReader(string));
     }
 
+    /**
+     * Reads a value from the string into {@code reuse}, see
+     * {@link #fromXml(XmlPullParser, TagInfo, Object)}.
+     */
+    public final T fromXml(String string, T reuse) throws IOException {
+        return fromXml(new StringReader(string), reuse);
+    }
+
+    /**
+     * Reads a value, filling in {@code reuse} instead of creating a new instance if it's not null
+     * and this adapter supports it. Reused objects are reset first: fields that the document doesn't
+     * set are reset to null, zero or false, not to the values a constructor or field initializer
+     * would give them in a new instance. Collections are cleared and refilled, and nested objects
+     * are reused too. The default implementation ignores {@code reuse}.
+     */
+    public T fromXml(XmlPullParser parser, TagInfo tagInfo, T reuse) throws XmlPullParserException, IOException {
+        return fromXml(parser, tagInfo);
+    }
+
     public abstract void toXml(XmlSerializer serializer, TagInfo tagInfo, T value) throws IOException;
 
     public final void toXml(OutputStream stream, T value) throws IOException {
@@ -71,15 +122,22 @@ public abstract class XmlAdapter<T> {
     }
 
     public final void toXml(OutputStream stream, String encoding, T value) throws IOException {
-        XmlSerializer serializer = newSerializer();
-        serializer.setOutput(stream, encoding);
-        toXml(serializer, TagInfo.ROOT, value);
+        XmlBackend backend = backend();
+        write(backend, backend.newSerializer(stream, encoding), value);
     }
 
     public final void toXml(Writer writer, T value) throws IOException {
-        XmlSerializer serializer = newSerializer();
-        serializer.setOutput(writer);
-        toXml(serializer, TagInfo.ROOT, value);
+        XmlBackend backend = backend();
+        write(backend, backend.newSerializer(writer), value);
+    }
+
+    private void write(XmlBackend backend, XmlSerializer serializer, T value) throws IOException {
+        try {
+            toXml(serializer, TagInfo.ROOT, value);
+            serializer.flush();
+        } finally {
+            backend.recycle(serializer);
+        }
     }
 
     public final String toXml(T value) throws IOException {
@@ -92,51 +150,117 @@ public abstract class XmlAdapter<T> {
         return writer.toString();
     }
 
-    public interface Factory {
-        XmlAdapter<?> create(Type type, Set<? extends Annotation> annotations, XmlAdapters adapters);
+    /**
+     * Returns an adapter that stops reading as soon as every single-valued tag of the root object
+     * has been read, instead of reading to the end of the document. This makes reading a header
+     * from the start of a large document independent of the document's size.
+     * <p>
+     * Reading only stops early if the root type has no collection or {@code @Text} fields, since
+     * those could still match anything after. The rest of the input is left unread, but closing it
+     * is still up to the caller, and a tag repeated after that point is not read. Only adapters
+     * created by reflection stop early, others read the whole document as usual.
+     */
+    public final XmlAdapter<T> stopWhenComplete() {
+        final XmlAdapter<T> delegate = unwrap();
+        return new XmlAdapter<T>() {
+            @Override
+            public T fromXml(XmlPullParser parser, TagInfo tagInfo) throws XmlPullParserException, IOException {
+                if (delegate instanceof ClassXmlAdapter) {
+                    return ((ClassXmlAdapter<T>) delegate).fromXml(parser, tagInfo, true, null);
+                }
+                return delegate.fromXml(parser, tagInfo);
+            }
+
+            @Override
+            public T fromXml(XmlPullParser parser, TagInfo tagInfo, T reuse) throws XmlPullParserException, IOException {
+                if (delegate instanceof ClassXmlAdapter) {
+                    return ((ClassXmlAdapter<T>) delegate).fromXml(parser, tagInfo, true, reuse);
+                }
+                return delegate.fromXml(parser, tagInfo, reuse);
+            }
+
+            @Override
+            public void toXml(XmlSerializer serializer, TagInfo tagInfo, T value) throws IOException {
+                delegate.toXml(serializer, tagInfo, value);
+            }
+
+            @Override
+            XmlBackend backend() {
+                return XmlAdapter.this.backend();
+            }
+
+            @Override
+            boolean readsNamespaces(List<XmlAdapter<?>> delegates) {
+                delegates.add(delegate);
+                return false;
+            }
+
+            @Override
+            public String toString() {
+                return XmlAdapter.this + ".stopWhenComplete()";
+            }
+        };
     }
 
-    // Taken from android's Xml util class.
+    /**
+     * The backend the convenience methods read and write with, the one set on the {@link Xml} this
+     * adapter came from.
+     */
+    XmlBackend backend() {
+        return XmlBackend.DEFAULT;
+    }
 
     /**
-     * Returns a new pull parser with namespace support.
+     * Returns true if this adapter, or any adapter it reads with, needs the parser to process
+     * namespaces. If none do, documents are parsed without it, which is faster.
      */
-    private static XmlPullParser newPullParser() {
-        try {
-            KXmlParser parser = new KXmlParser();
-//            parser.setFeature(XmlPullParser.FEATURE_PROCESS_DOCDECL, true);
-            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-            return parser;
-        } catch (XmlPullParserException e) {
-            throw new AssertionError(e);
+    final boolean needsNamespaces() {
+        int namespaces = this.namespaces;
+        if (namespaces == NAMESPACES_UNKNOWN) {
+            namespaces = findNamespaces() ? NAMESPACES_NEEDED : NAMESPACES_NOT_NEEDED;
+            this.namespaces = namespaces;
         }
+        return namespaces == NAMESPACES_NEEDED;
+    }
+
+    private boolean findNamespaces() {
+        // Adapters may refer to each other, so visit each one once.
+        Map<XmlAdapter<?>, Boolean> visited = new IdentityHashMap<>();
+        List<XmlAdapter<?>> pending = new ArrayList<>();
+        pending.add(this);
+        while (!pending.isEmpty()) {
+            XmlAdapter<?> adapter = pending.remove(pending.size() - 1);
+            if (visited.put(adapter, Boolean.TRUE) != null) continue;
+            if (adapter.readsNamespaces(pending)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Creates a new xml serializer.
+     * Returns true if this adapter itself reads namespaces, and adds the adapters it reads with to
+     * {@code delegates}. Adapters that never look at names, or only match them on their local
+     * names, with {@link Names#localName(XmlPullParser)}, return false. Other adapters might look at
+     * the namespace, so this returns true by default.
      */
-    private static XmlSerializer newSerializer() {
-        try {
-            return XmlSerializerFactory.instance.newSerializer();
-        } catch (XmlPullParserException e) {
-            throw new AssertionError(e);
-        }
+    boolean readsNamespaces(List<XmlAdapter<?>> delegates) {
+        return true;
     }
 
     /**
-     * Factory for xml serializers. Initialized on demand.
+     * Returns the adapter that does the actual reading, for adapters that only wrap another one.
      */
-    private static class XmlSerializerFactory {
-        static final String TYPE
-                = "org.kxml2.io.KXmlParser,org.kxml2.io.KXmlSerializer";
-        static final XmlPullParserFactory instance;
-
-        static {
-            try {
-                instance = XmlPullParserFactory.newInstance(TYPE, null);
-            } catch (XmlPullParserException e) {
-                throw new AssertionError(e);
-            }
-        }
+    XmlAdapter<T> unwrap() {
+        return this;
+    }
+
+    public interface Factory {
+        /**
+         * Returns an adapter for the type, or null if this factory doesn't handle it. This is called
+         * while holding the lock described in {@link XmlAdapters#adapter(Type, Set)}, so it must not
+         * wait on another thread that looks up adapters from the same {@link Xml}.
+         */
+        XmlAdapter<?> create(Type type, Set<? extends Annotation> annotations, XmlAdapters adapters);
     }
 }
@@ -24,103 +24,323 @@ import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class XmlAdapters {
+    private static final Object NO_CONVERTER = new Object();
+
     private final List<XmlAdapter.Factory> factories;
     private final List<TypeConverter.Factory> typeConverterFactories;
-    private final ThreadLocal<List<DeferredAdapter<?>>> reentrantCalls = new ThreadLocal<>();
-    private final Map<Object, XmlAdapter<?>> adapterCache = new LinkedHashMap<>();
+    private final FactoryIndex factoryIndex;
+    private final FactoryIndex typeConverterFactoryIndex;
+    private final BindingSnapshot bindingSnapshot;
+    private final int collectionOptions;
+    private final CacheKeys cacheKeys = new CacheKeys();
+    private final Names names = new Names();
+    private final Map<Object, XmlAdapter<?>> adapterCache = new ConcurrentHashMap<>();
+    // Holds NO_CONVERTER for types without a converter so that we don't keep asking the factories.
+    private final Map<Object, Object> converterCache = new ConcurrentHashMap<>();
+    // Hits are counted on the lock-free path by every thread, so they're striped; the rest are only
+    // counted while creating something.
+    private final StripedCounter converterHitCount = new StripedCounter();
+    private final AtomicLong converterMissCount = new AtomicLong();
+    private final StripedCounter adapterHitCount = new StripedCounter();
+    private final AtomicLong adapterMissCount = new AtomicLong();
+    private final AtomicLong deferredAdapterCount = new AtomicLong();
+    private final ConcurrentHashMap<Type, AtomicLong> adapterProbeCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, AtomicLong> converterProbeCounts = new ConcurrentHashMap<>();
+    // Indexed the same as the factories.
+    private final AtomicLongArray adapterFactoryNanos;
+    private final AtomicLongArray converterFactoryNanos;
+    // Adapters are only ever built while holding this lock, so each cache key is built exactly once.
+    // It's a single lock rather than one per key because a build follows the type graph wherever it
+    // goes; two threads building types that refer to each other would deadlock on per-key locks.
+    private final Object buildLock = new Object();
+    // Guarded by buildLock.
+    private final List<DeferredAdapter<?>> deferredAdapters = new ArrayList<>();
+    // Guarded by buildLock. Adapters created by the current build but not yet published.
+    private final Map<Object, XmlAdapter<?>> pendingAdapters = new LinkedHashMap<>();
 
-    XmlAdapters(List<XmlAdapter.Factory> factories, List<TypeConverter.Factory> typeConverterFactories) {
+    XmlAdapters(List<XmlAdapter.Factory> factories, List<TypeConverter.Factory> typeConverterFactories, BindingSnapshot bindingSnapshot, int collectionOptions) {
         this.factories = Collections.unmodifiableList(factories);
         this.typeConverterFactories = Collections.unmodifiableList(typeConverterFactories);
+        this.factoryIndex = new FactoryIndex(factories);
+        this.typeConverterFactoryIndex = new FactoryIndex(typeConverterFactories);
+        this.bindingSnapshot = bindingSnapshot;
+        this.collectionOptions = collectionOptions;
+        this.adapterFactoryNanos = new AtomicLongArray(factories.size());
+        this.converterFactoryNanos = new AtomicLongArray(typeConverterFactories.size());
     }
 
+    /**
+     * Returns the adapter for the given type and annotations, creating it if it isn't cached.
+     * <p>
+     * Cached adapters are returned without locking. Otherwise the adapter is created while holding
+     * a lock shared by every lookup on this {@link Xml}, and that lock is held for the whole time
+     * the factories spend in {@link XmlAdapter.Factory#create}. A slow factory therefore delays
+     * other threads looking up adapters that aren't cached yet, even for unrelated types. In return
+     * each adapter is created exactly once, and other threads only see it once everything it
+     * depends on, including itself for recursive types, is ready.
+     */
     @SuppressWarnings("unchecked") // Factories are required to return only matching JsonAdapters.
     public <T> XmlAdapter<T> adapter(Type type, Set<? extends Annotation> annotations) {
         // If there's an equivalent adapter in the cache, we're done!
         Object cacheKey = cacheKey(type, annotations);
-        synchronized (adapterCache) {
-            XmlAdapter<?> result = adapterCache.get(cacheKey);
-            if (result != null) return (XmlAdapter<T>) result;
+        XmlAdapter<?> result = adapterCache.get(cacheKey);
+        if (result != null) {
+            adapterHitCount.increment();
+            return (XmlAdapter<T>) result;
+        }
+
+        synchronized (buildLock) {
+            return createAdapter(cacheKey, type, annotations);
         }
+    }
+
+    @SuppressWarnings("unchecked") // Factories are required to return only matching JsonAdapters.
+    private <T> XmlAdapter<T> createAdapter(Object cacheKey, Type type, Set<? extends Annotation> annotations) {
+        // Another thread may have built it while we were waiting on the lock, or an earlier part
+        // of this build may have already created it.
+        XmlAdapter<?> result = adapterCache.get(cacheKey);
+        if (result == null) result = pendingAdapters.get(cacheKey);
+        if (result != null) {
+            adapterHitCount.increment();
+            return (XmlAdapter<T>) result;
+        }
+        adapterMissCount.incrementAndGet();
 
         // Short-circuit if this is a reentrant call.
-        List<DeferredAdapter<?>> deferredAdapters = reentrantCalls.get();
-        if (deferredAdapters != null) {
-            for (int i = 0, size = deferredAdapters.size(); i < size; i++) {
-                DeferredAdapter<?> deferredAdapter = deferredAdapters.get(i);
-                if (deferredAdapter.cacheKey.equals(cacheKey)) {
-                    return (XmlAdapter<T>) deferredAdapter;
-                }
+        for (int i = 0, size = deferredAdapters.size(); i < size; i++) {
+            DeferredAdapter<?> deferredAdapter = deferredAdapters.get(i);
+            if (deferredAdapter.cacheKey.equals(cacheKey)) {
+                return (XmlAdapter<T>) deferredAdapter;
             }
-        } else {
-            deferredAdapters = new ArrayList<>();
-            reentrantCalls.set(deferredAdapters);
         }
 
         // Prepare for re-entrant calls, then ask each factory to create a type adapter.
         DeferredAdapter<T> deferredAdapter = new DeferredAdapter<>(cacheKey);
         deferredAdapters.add(deferredAdapter);
+        deferredAdapterCount.incrementAndGet();
+        boolean completed = false;
         try {
-            for (int i = 0, size = factories.size(); i < size; i++) {
-                XmlAdapter<T> result = (XmlAdapter<T>) factories.get(i).create(type, annotations, this);
-                if (result != null) {
-                    deferredAdapter.ready(result);
-                    synchronized (adapterCache) {
-                        adapterCache.put(cacheKey, result);
-                    }
-                    return result;
+            int[] candidates = factoryIndex.candidates(0, type);
+            for (int i = 0; i < candidates.length; i++) {
+                XmlAdapter<T> created = (XmlAdapter<T>) createWithFactory(candidates[i], type, annotations);
+                if (created != null) {
+                    deferredAdapter.ready(created);
+                    pendingAdapters.put(cacheKey, created);
+                    completed = true;
+                    return created;
                 }
             }
+            completed = true;
+            return null;
         } finally {
             deferredAdapters.remove(deferredAdapters.size() - 1);
             if (deferredAdapters.isEmpty()) {
-                reentrantCalls.remove();
+                // Only publish once the outermost adapter is done, so that other threads never see
+                // an adapter that delegates to a deferred adapter that isn't ready yet.
+                if (completed) {
+                    adapterCache.putAll(pendingAdapters);
+                }
+                pendingAdapters.clear();
             }
         }
-        return null;
     }
 
     @SuppressWarnings("unchecked") // Factories are required to return only matching JsonAdapters.
     public <T> XmlAdapter<T> nextAdapter(XmlAdapter.Factory skipPast, Type type, Set<? extends Annotation> annotations) {
-        int skipPastIndex = factories.indexOf(skipPast);
+        int skipPastIndex = factoryIndex.indexOf(skipPast);
         if (skipPastIndex == -1) {
             throw new IllegalArgumentException("Unable to skip past unknown factory " + skipPast);
         }
-        for (int i = skipPastIndex + 1, size = factories.size(); i < size; i++) {
-            XmlAdapter<T> result = (XmlAdapter<T>) factories.get(i).create(type, annotations, this);
+        int[] candidates = factoryIndex.candidates(skipPastIndex + 1, type);
+        for (int i = 0; i < candidates.length; i++) {
+            XmlAdapter<T> result = (XmlAdapter<T>) createWithFactory(candidates[i], type, annotations);
             if (result != null) return result;
         }
         return null;
     }
 
+    private XmlAdapter<?> createWithFactory(int index, Type type, Set<? extends Annotation> annotations) {
+        countProbe(adapterProbeCounts, type);
+        long start = System.nanoTime();
+        try {
+            return factories.get(index).create(type, annotations, this);
+        } finally {
+            adapterFactoryNanos.addAndGet(index, System.nanoTime() - start);
+        }
+    }
+
+    private static void countProbe(ConcurrentHashMap<Type, AtomicLong> probeCounts, Type type) {
+        type = Types.canonicalize(type);
+        AtomicLong count = probeCounts.get(type);
+        if (count == null) {
+            count = new AtomicLong();
+            AtomicLong existing = probeCounts.putIfAbsent(type, count);
+            if (existing != null) count = existing;
+        }
+        count.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked") // Factories are required to return only matching TypeConverters.
     public <T> TypeConverter<T> converter(Type type, Set<? extends Annotation> annotations) {
-        return createConverter(0, type, annotations);
+        Object cacheKey = cacheKey(type, annotations);
+        Object result = converterCache.get(cacheKey);
+        if (result == null) {
+            synchronized (converterCache) {
+                // Another thread may have created it while we were waiting on the lock.
+                result = converterCache.get(cacheKey);
+                if (result == null) {
+                    converterMissCount.incrementAndGet();
+                    result = createConverter(0, type, annotations);
+                    if (result == null) result = NO_CONVERTER;
+                    converterCache.put(cacheKey, result);
+                    return result != NO_CONVERTER ? (TypeConverter<T>) result : null;
+                }
+            }
+        }
+        converterHitCount.increment();
+        return result != NO_CONVERTER ? (TypeConverter<T>) result : null;
     }
 
     public <T> TypeConverter<T> nextConverter(TypeConverter.Factory skipPast, Type type, Set<? extends Annotation> annotations) {
-        return createConverter(typeConverterFactories.indexOf(skipPast) + 1, type, annotations);
+        return createConverter(typeConverterFactoryIndex.indexOf(skipPast) + 1, type, annotations);
+    }
+
+    /**
+     * Returns the previously computed plan for binding {@code type}, or null if there isn't one.
+     */
+    ClassXmlAdapter.ClassPlan bindingPlan(Type type) {
+        return bindingSnapshot != null ? bindingSnapshot.plan(type) : null;
+    }
+
+    /**
+     * Returns a sizer for the collections of a single field, with the configured options.
+     *
+     * @param expectedSize the field's expected size, or -1 if it doesn't have one.
+     */
+    CollectionSizer collectionSizer(int expectedSize) {
+        return new CollectionSizer(expectedSize, collectionOptions);
+    }
+
+    /**
+     * Returns the canonical names shared by the adapters, and the parsers reading for them.
+     */
+    Names names() {
+        return names;
+    }
+
+    /**
+     * Returns all the adapters that have been created, by cache key.
+     */
+    Map<Object, XmlAdapter<?>> cachedAdapters() {
+        return Collections.unmodifiableMap(adapterCache);
+    }
+
+    /**
+     * Returns the plans of all the reflective class adapters that have been created.
+     */
+    List<ClassXmlAdapter.ClassPlan> bindingPlans() {
+        List<ClassXmlAdapter.ClassPlan> plans = new ArrayList<>();
+        for (XmlAdapter<?> adapter : adapterCache.values()) {
+            if (adapter instanceof ClassXmlAdapter) {
+                plans.add(((ClassXmlAdapter<?>) adapter).getPlan());
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * Returns the number of adapters that have been created and cached.
+     */
+    int adapterCount() {
+        return adapterCache.size();
+    }
+
+    /**
+     * Returns a snapshot of the adapter and converter statistics. Counts are updated independently,
+     * so a snapshot taken while other threads are creating adapters may be slightly inconsistent.
+     */
+    public AdapterStats stats() {
+        long predictedMatchHitCount = 0;
+        long predictedMatchMissCount = 0;
+        for (XmlAdapter<?> adapter : adapterCache.values()) {
+            if (adapter instanceof ClassXmlAdapter) {
+                predictedMatchHitCount += ((ClassXmlAdapter<?>) adapter).predictedMatchHitCount();
+                predictedMatchMissCount += ((ClassXmlAdapter<?>) adapter).predictedMatchMissCount();
+            }
+        }
+        int converterCount = 0;
+        for (Object converter : converterCache.values()) {
+            if (converter != NO_CONVERTER) converterCount++;
+        }
+        return new AdapterStats(adapterHitCount.get(), adapterMissCount.get(),
+                converterHitCount.get(), converterMissCount.get(), deferredAdapterCount.get(),
+                adapterCache.size(), converterCount,
+                toMap(adapterProbeCounts), toMap(converterProbeCounts),
+                predictedMatchHitCount, predictedMatchMissCount,
+                factories, toArray(adapterFactoryNanos),
+                typeConverterFactories, toArray(converterFactoryNanos));
+    }
+
+    private static Map<Type, Long> toMap(Map<Type, AtomicLong> counts) {
+        Map<Type, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<Type, AtomicLong> entry : counts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] result = new long[array.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = array.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of times {@link #converter(Type, Set)} was answered from the cache.
+     */
+    public long converterCacheHitCount() {
+        return converterHitCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #converter(Type, Set)} had to ask the converter factories.
+     */
+    public long converterCacheMissCount() {
+        return converterMissCount.get();
     }
 
     /**
      * Returns an opaque object that's equal if the type and annotations are equal.
      */
     private Object cacheKey(Type type, Set<? extends Annotation> annotations) {
-        if (annotations.isEmpty()) return type;
-        return Arrays.asList(type, annotations);
+        return cacheKeys.get(type, annotations);
     }
 
     @SuppressWarnings("unchecked") // Factories are required to return only matching TypeConverters.
     private <T> TypeConverter<T> createConverter(int firstIndex, Type type, Set<? extends Annotation> annotations) {
-        for (int i = firstIndex, size = typeConverterFactories.size(); i < size; i++) {
-            TypeConverter<T> result = (TypeConverter<T>) typeConverterFactories.get(i).create(type, annotations);
+        int[] candidates = typeConverterFactoryIndex.candidates(firstIndex, type);
+        for (int c = 0; c < candidates.length; c++) {
+            int i = candidates[c];
+            countProbe(converterProbeCounts, type);
+            long start = System.nanoTime();
+            TypeConverter<T> result;
+            try {
+                result = (TypeConverter<T>) typeConverterFactories.get(i).create(type, annotations);
+            } finally {
+                converterFactoryNanos.addAndGet(i, System.nanoTime() - start);
+            }
             if (result != null) {
                 return result;
             }
@@ -155,10 +375,23 @@ public class XmlAdapters {
             return delegate.fromXml(parser, tagInfo);
         }
 
+        @Override
+        public T fromXml(XmlPullParser parser, TagInfo tagInfo, T reuse) throws IOException, XmlPullParserException {
+            if (delegate == null) throw new IllegalStateException("Type adapter isn't ready");
+            return delegate.fromXml(parser, tagInfo, reuse);
+        }
+
         @Override
         public void toXml(XmlSerializer serializer, TagInfo tagInfo, T value) throws IOException {
             if (delegate == null) throw new IllegalStateException("Type adapter isn't ready");
             delegate.toXml(serializer, tagInfo, value);
         }
+
+        @Override
+        boolean readsNamespaces(List<XmlAdapter<?>> delegates) {
+            if (delegate == null) return true;
+            delegates.add(delegate);
+            return false;
+        }
     }
 }
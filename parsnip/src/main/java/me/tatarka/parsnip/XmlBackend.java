@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Creates the parsers and serializers used by the {@link XmlAdapter} methods that read from and
+ * write to streams, readers and strings. Set one with {@link Xml.Builder#backend(XmlBackend)} to
+ * use a different xml implementation than kxml2, ex: a faster one on a server with
+ * {@code StaxXmlBackend} from parsnip-stax. Reading and writing with an {@link XmlPullParser} or
+ * {@link XmlSerializer} you created yourself doesn't go through the backend.
+ */
+public abstract class XmlBackend {
+    /**
+     * kxml2 for everything. This is the default.
+     * <p>
+     * Parsers and serializers are reused for the next document read or written on the same thread.
+     */
+    public static final XmlBackend DEFAULT = new KXmlBackend(false, 0, "XmlBackend.DEFAULT");
+
+    /**
+     * kxml2, except that UTF-8, ASCII and Latin-1 byte streams are parsed by parsnip straight from
+     * their bytes instead of being decoded to chars first, which is faster. Parsers and serializers
+     * are reused like with {@link #DEFAULT}, and the buffer for parsing bytes is sized to fit the
+     * documents read so far, up to 64KB.
+     * <p>
+     * The byte parser doesn't support {@link XmlPullParser#nextToken()} or
+     * {@link XmlPullParser#defineEntityReplacementText(String, String)}, both throw an
+     * {@link XmlPullParserException}. Keep to {@link #DEFAULT} if an {@link XmlAdapter} of yours
+     * calls them, ex: to read comments.
+     */
+    public static final XmlBackend UTF8 = new KXmlBackend(true, 0, "XmlBackend.UTF8");
+
+    /**
+     * Returns a backend like {@link #UTF8}, except that byte streams are always parsed with a
+     * buffer of {@code bufferSize} bytes. The buffer still grows for a single name, value or text
+     * that doesn't fit.
+     */
+    public static XmlBackend withBufferSize(int bufferSize) {
+        if (bufferSize < 16) throw new IllegalArgumentException("bufferSize < 16: " + bufferSize);
+        return new KXmlBackend(true, bufferSize, "XmlBackend.withBufferSize(" + bufferSize + ")");
+    }
+
+    /**
+     * Returns a backend that creates its parsers and serializers with {@code factory}, for any
+     * xmlpull implementation. The parsers must support turning namespace processing on and off.
+     */
+    public static XmlBackend pullParserFactory(final XmlPullParserFactory factory) {
+        if (factory == null) throw new IllegalArgumentException("factory == null");
+        return new XmlBackend() {
+            @Override
+            public XmlPullParser newParser(InputStream stream, String encoding) throws XmlPullParserException {
+                return newParser(stream, encoding, true);
+            }
+
+            @Override
+            public XmlPullParser newParser(InputStream stream, String encoding, boolean processNamespaces) throws XmlPullParserException {
+                XmlPullParser parser = newPullParser(processNamespaces);
+                parser.setInput(stream, encoding);
+                return parser;
+            }
+
+            @Override
+            public XmlPullParser newParser(Reader reader) throws XmlPullParserException {
+                return newParser(reader, true);
+            }
+
+            @Override
+            public XmlPullParser newParser(Reader reader, boolean processNamespaces) throws XmlPullParserException {
+                XmlPullParser parser = newPullParser(processNamespaces);
+                parser.setInput(reader);
+                return parser;
+            }
+
+            @Override
+            public XmlSerializer newSerializer(OutputStream stream, String encoding) throws IOException {
+                XmlSerializer serializer = newXmlSerializer();
+                serializer.setOutput(stream, encoding);
+                return serializer;
+            }
+
+            @Override
+            public XmlSerializer newSerializer(Writer writer) throws IOException {
+                XmlSerializer serializer = newXmlSerializer();
+                serializer.setOutput(writer);
+                return serializer;
+            }
+
+            private XmlPullParser newPullParser(boolean processNamespaces) throws XmlPullParserException {
+                XmlPullParser parser = factory.newPullParser();
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, processNamespaces);
+                return parser;
+            }
+
+            private XmlSerializer newXmlSerializer() throws IOException {
+                try {
+                    return factory.newSerializer();
+                } catch (XmlPullParserException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "XmlBackend.pullParserFactory(" + factory + ")";
+            }
+        };
+    }
+
+    /**
+     * Returns a parser with namespace processing on, reading from {@code stream}. The encoding may
+     * be null to detect it from the document.
+     */
+    public abstract XmlPullParser newParser(InputStream stream, String encoding) throws XmlPullParserException, IOException;
+
+    /**
+     * Returns a parser with namespace processing on, reading from {@code reader}.
+     */
+    public abstract XmlPullParser newParser(Reader reader) throws XmlPullParserException, IOException;
+
+    /**
+     * Returns a parser reading from {@code stream}, with namespace processing only if
+     * {@code processNamespaces} is true. Parsnip turns it off when none of the bindings being read
+     * have a namespace, since parsing is faster without it. The default implementation returns
+     * {@link #newParser(InputStream, String)}, with namespace processing on.
+     */
+    public XmlPullParser newParser(InputStream stream, String encoding, boolean processNamespaces) throws XmlPullParserException, IOException {
+        return newParser(stream, encoding);
+    }
+
+    /**
+     * Returns a parser reading from {@code reader}, with namespace processing only if
+     * {@code processNamespaces} is true. The default implementation returns
+     * {@link #newParser(Reader)}, with namespace processing on.
+     */
+    public XmlPullParser newParser(Reader reader, boolean processNamespaces) throws XmlPullParserException, IOException {
+        return newParser(reader);
+    }
+
+    /**
+     * Returns a serializer writing to {@code stream}. The encoding may be null for the
+     * implementation's default.
+     */
+    public abstract XmlSerializer newSerializer(OutputStream stream, String encoding) throws IOException;
+
+    /**
+     * Returns a serializer writing to {@code writer}.
+     */
+    public abstract XmlSerializer newSerializer(Writer writer) throws IOException;
+
+    /**
+     * Called with a parser from this backend once its document has been read, or reading it
+     * failed, so that it can be reused. The default implementation does nothing.
+     */
+    public void recycle(XmlPullParser parser) {
+    }
+
+    /**
+     * Called with a serializer from this backend once its document has been written, or writing it
+     * failed, so that it can be reused. The default implementation does nothing.
+     */
+    public void recycle(XmlSerializer serializer) {
+    }
+}
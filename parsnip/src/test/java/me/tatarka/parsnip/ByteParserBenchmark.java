@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import me.tatarka.parsnip.annotations.SerializedName;
+import me.tatarka.parsnip.annotations.Tag;
+import me.tatarka.parsnip.annotations.Text;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the twitter-atom.xml test resource from bytes with {@link Utf8XmlParser}
+ * against decoding it first and reading it with kxml2, both for the bare parsers and for reading it
+ * into objects, and with and without namespace processing. This isn't run as part of the tests, run
+ * its main method directly, optionally with the path to the document.
+ */
+public final class ByteParserBenchmark {
+    private static final int WARM_UP_ITERATIONS = 2000;
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 2000;
+
+    @SerializedName("feed")
+    static final class Feed {
+        List<Entry> entry;
+    }
+
+    static final class Entry {
+        @Tag
+        String title;
+        @Tag
+        String published;
+        Content content;
+        @Tag
+        String lang;
+        Author author;
+    }
+
+    static final class Content {
+        String type;
+        @Text
+        String value;
+    }
+
+    static final class Author {
+        @Tag
+        String name;
+        @Tag
+        String uri;
+    }
+
+    private interface Task {
+        Object run(byte[] document) throws Exception;
+    }
+
+    // Keeps the results alive so the work can't be optimized away.
+    private static Object sink;
+
+    public static void main(String[] args) throws Exception {
+        final byte[] document = args.length > 0 ? Files.readAllBytes(new File(args[0]).toPath()) : readResource("/samples/atom/twitter-atom.xml");
+        final XmlAdapter<Feed> adapter = new Xml.Builder().build().adapter(Feed.class);
+
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        for (final boolean namespaces : new boolean[]{true, false}) {
+            String suffix = namespaces ? "" : ", no namespaces";
+            tasks.put("parser, kxml" + suffix, new Task() {
+                @Override
+                public Object run(byte[] document) throws Exception {
+                    KXmlParser parser = new KXmlParser();
+                    parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaces);
+                    parser.setInput(new InputStreamReader(new ByteArrayInputStream(document), "UTF-8"));
+                    return readAll(parser);
+                }
+            });
+            tasks.put("parser, bytes" + suffix, new Task() {
+                @Override
+                public Object run(byte[] document) throws Exception {
+                    Utf8XmlParser parser = new Utf8XmlParser();
+                    parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaces);
+                    parser.setInput(new ByteArrayInputStream(document), null);
+                    return readAll(parser);
+                }
+            });
+        }
+        tasks.put("adapter, kxml", new Task() {
+            @Override
+            public Object run(byte[] document) throws Exception {
+                return adapter.fromXml(new InputStreamReader(new ByteArrayInputStream(document), "UTF-8"));
+            }
+        });
+        tasks.put("adapter, bytes, namespaces", new Task() {
+            @Override
+            public Object run(byte[] document) throws Exception {
+                XmlPullParser parser = XmlBackend.UTF8.newParser(new ByteArrayInputStream(document), null, true);
+                try {
+                    return adapter.fromXml(parser, TagInfo.ROOT);
+                } finally {
+                    XmlBackend.UTF8.recycle(parser);
+                }
+            }
+        });
+        // None of the bindings have a namespace, so the adapter reads without namespace processing.
+        tasks.put("adapter, bytes", new Task() {
+            @Override
+            public Object run(byte[] document) throws Exception {
+                return adapter.fromXml(new ByteArrayInputStream(document));
+            }
+        });
+        run(document, tasks);
+    }
+
+    /**
+     * Reads every event, with its name and text, like an adapter binding everything would.
+     */
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = ByteParserBenchmark.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static Object readAll(XmlPullParser parser) throws Exception {
+        int count = 0;
+        for (int type = parser.next(); type != XmlPullParser.END_DOCUMENT; type = parser.next()) {
+            if (type == XmlPullParser.START_TAG) {
+                count += parser.getName().length() + parser.getAttributeCount();
+            } else if (type == XmlPullParser.TEXT) {
+                count += parser.getText().length();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Warms up all the tasks before timing them in turns, so that the order they are run in
+     * doesn't favor any of them, and prints the fastest round of each.
+     */
+    private static void run(byte[] document, Map<String, Task> tasks) throws Exception {
+        for (Task task : tasks.values()) {
+            for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                sink = task.run(document);
+            }
+        }
+        Map<String, Long> best = new LinkedHashMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Map.Entry<String, Task> entry : tasks.entrySet()) {
+                Task task = entry.getValue();
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    sink = task.run(document);
+                }
+                long duration = System.nanoTime() - start;
+                Long previous = best.get(entry.getKey());
+                if (previous == null || duration < previous) {
+                    best.put(entry.getKey(), duration);
+                }
+            }
+        }
+        for (Map.Entry<String, Long> entry : best.entrySet()) {
+            long duration = entry.getValue();
+            double seconds = duration / 1e9;
+            System.out.printf("%-34s %8.1f us/op %8.1f MB/s (%d ms)%n", entry.getKey() + ":", duration / 1e3 / ITERATIONS,
+                    (double) document.length * ITERATIONS / seconds / (1 << 20), TimeUnit.NANOSECONDS.toMillis(duration));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective {@link ClassFactory} strategies against calling the same constructor or
+ * {@code Unsafe.allocateInstance()} through a method handle, for classes with and without a no-args
+ * constructor. ClassFactory can't use method handles, as it must load on Android versions without
+ * them, so the method handle variants only exist here. This isn't run as part of the tests, run its
+ * main method directly.
+ */
+public final class ClassFactoryBenchmark {
+    private static final MethodType NEW_INSTANCE_TYPE = MethodType.methodType(Object.class);
+    private static final int WARM_UP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    static final class WithConstructor {
+        String id;
+        int count;
+
+        WithConstructor() {
+        }
+    }
+
+    static final class WithoutConstructor {
+        String id;
+        int count;
+
+        WithoutConstructor(String id) {
+            this.id = id;
+        }
+    }
+
+    // Keeps the results alive so the allocations can't be optimized away.
+    private static Object sink;
+
+    private ClassFactoryBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Constructor<?> constructor = WithConstructor.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        run(new Strategy("constructor, reflection", ClassFactory.forConstructor(constructor)) {
+            @Override
+            void loop(int iterations) throws Exception {
+                for (int i = 0; i < iterations; i++) {
+                    sink = factory.newInstance();
+                }
+            }
+        });
+        run(new Strategy("constructor, method handle", new MethodHandleClassFactory(MethodHandles.lookup().unreflectConstructor(constructor))) {
+            @Override
+            void loop(int iterations) throws Exception {
+                for (int i = 0; i < iterations; i++) {
+                    sink = factory.newInstance();
+                }
+            }
+        });
+        run(new Strategy("unsafe, reflection", ClassFactory.forUnsafe(WithoutConstructor.class)) {
+            @Override
+            void loop(int iterations) throws Exception {
+                for (int i = 0; i < iterations; i++) {
+                    sink = factory.newInstance();
+                }
+            }
+        });
+        run(new Strategy("unsafe, method handle", unsafeMethodHandle(WithoutConstructor.class)) {
+            @Override
+            void loop(int iterations) throws Exception {
+                for (int i = 0; i < iterations; i++) {
+                    sink = factory.newInstance();
+                }
+            }
+        });
+        ClassFactory<Object> direct = new ClassFactory<Object>() {
+            @Override
+            Object newInstance() {
+                return new WithConstructor();
+            }
+        };
+        run(new Strategy("new WithConstructor()", direct) {
+            @Override
+            void loop(int iterations) throws Exception {
+                for (int i = 0; i < iterations; i++) {
+                    sink = factory.newInstance();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a factory calling {@code Unsafe.allocateInstance()} through a method handle with both
+     * the receiver and the class bound, so that each call is just {@code invokeExact()}.
+     */
+    private static ClassFactory<Object> unsafeMethodHandle(Class<?> rawType) throws Exception {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field f = unsafeClass.getDeclaredField("theUnsafe");
+        f.setAccessible(true);
+        Method allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+        return new MethodHandleClassFactory(MethodHandles.insertArguments(
+                MethodHandles.lookup().unreflect(allocateInstance), 0, f.get(null), rawType));
+    }
+
+    private static void run(Strategy strategy) throws Exception {
+        strategy.loop(WARM_UP_ITERATIONS);
+        long start = System.nanoTime();
+        strategy.loop(ITERATIONS);
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-28s %6.2f ns/op (%d ms)%n", strategy.name + ":", (double) duration / ITERATIONS,
+                TimeUnit.NANOSECONDS.toMillis(duration));
+    }
+
+    /**
+     * Each strategy has its own copy of the loop, so that the {@code newInstance()} call in it only
+     * ever sees that strategy's factory. With one shared loop the call would see every factory
+     * class, and the later strategies would be measured through a megamorphic call instead of the
+     * monomorphic one the adapters make.
+     */
+    private abstract static class Strategy {
+        final String name;
+        final ClassFactory<?> factory;
+
+        Strategy(String name, ClassFactory<?> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        abstract void loop(int iterations) throws Exception;
+    }
+
+    private static final class MethodHandleClassFactory extends ClassFactory<Object> {
+        // Of type ()Object.
+        private final MethodHandle handle;
+
+        MethodHandleClassFactory(MethodHandle handle) {
+            this.handle = handle.asType(NEW_INSTANCE_TYPE);
+        }
+
+        @Override
+        Object newInstance() throws InvocationTargetException {
+            try {
+                return (Object) handle.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+}
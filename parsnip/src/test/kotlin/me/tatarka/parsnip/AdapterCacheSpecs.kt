@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.annotations.SerializedName
+import me.tatarka.parsnip.classes.NestedObject
+import me.tatarka.parsnip.classes.RecursiveObject
+import me.tatarka.parsnip.classes.StringObject
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlSerializer
+import java.lang.reflect.Proxy
+import java.lang.reflect.Type
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+@RunWith(JUnitPlatform::class)
+class AdapterCacheSpecs : Spek({
+    describe("an Xml with a factory for annotated strings") {
+        fun newXml() = Xml.Builder().add(object : XmlAdapter.Factory {
+            override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? =
+                    if (type == String::class.java && !annotations.isEmpty()) NamedAdapter() else null
+        }).build()
+
+        context("many different annotation sets looked up twice each") {
+            it("should return the same adapter for equal sets") {
+                val xml = newXml()
+                for (i in 0 until 40) {
+                    val first = xml.adapter<String>(String::class.java, setOf(serializedName("name$i")))
+                    val second = xml.adapter<String>(String::class.java, setOf(serializedName("name$i")))
+                    assertTrue(first === second)
+                }
+            }
+
+            it("should only create each adapter once") {
+                val xml = newXml()
+                for (i in 0 until 40) {
+                    xml.adapter<String>(String::class.java, setOf(serializedName("name$i")))
+                    xml.adapter<String>(String::class.java, setOf(serializedName("name$i")))
+                }
+                assertEquals(40L, xml.stats().adapterCacheMissCount())
+            }
+        }
+
+        context("a parameterized type from reflection and an equal one built by Types") {
+            val xml = Xml.Builder().add(object : XmlAdapter.Factory {
+                override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? =
+                        if (Types.getRawType(type) == List::class.java && !annotations.isEmpty()) NamedAdapter() else null
+            }).build()
+            val reflected = ListHolder::class.java.getDeclaredField("list").genericType
+            val built = Types.newParameterizedType(List::class.java, String::class.java)
+
+            it("should return the same adapter for both") {
+                val first = xml.adapter<Any>(reflected, setOf(serializedName("name")))
+                val second = xml.adapter<Any>(built, setOf(serializedName("name")))
+                val third = xml.adapter<Any>(reflected, setOf(serializedName("name")))
+                assertTrue(first === second)
+                assertTrue(first === third)
+                assertEquals(1L, xml.stats().adapterCacheMissCount())
+            }
+        }
+
+        context("an equal annotation set built for every lookup") {
+            it("should keep hitting the cache") {
+                val xml = newXml()
+                for (i in 0 until 100) {
+                    xml.adapter<String>(String::class.java, setOf(serializedName("name")))
+                }
+                assertEquals(1L, xml.stats().adapterCacheMissCount())
+                assertEquals(99L, xml.stats().adapterCacheHitCount())
+            }
+        }
+    }
+
+    describe("the stats of an Xml") {
+        context("after creating an adapter for a class with attributes") {
+            val xml = Xml.Builder().build()
+            xml.adapter(StringObject::class.java)
+            val stats = xml.stats()
+
+            it("should count the adapter probes for the class") {
+                assertTrue(stats.adapterFactoryProbeCounts()[StringObject::class.java]!! > 0)
+                assertEquals(null, stats.converterFactoryProbeCounts()[StringObject::class.java])
+            }
+
+            it("should count the converter probes for the attributes separately") {
+                assertTrue(stats.converterFactoryProbeCounts()[String::class.java]!! > 0)
+            }
+        }
+
+        context("after reading documents with attributes in the same order") {
+            val xml = Xml.Builder().build()
+            val adapter = xml.adapter(StringObject::class.java)
+            for (i in 0 until 2) {
+                adapter.fromXml("<StringObject string1=\"a\" string2=\"b\"/>")
+            }
+            val stats = xml.stats()
+
+            it("should count the predicted matches") {
+                assertEquals(2L, stats.predictedMatchHitCount())
+                assertEquals(2L, stats.predictedMatchMissCount())
+                assertEquals(0.5, stats.predictedMatchHitRate())
+            }
+        }
+
+        context("after reading documents with attributes in a different order") {
+            val xml = Xml.Builder().build()
+            val adapter = xml.adapter(StringObject::class.java)
+            adapter.fromXml("<StringObject string1=\"a\" string2=\"b\"/>")
+            val stringObject = adapter.fromXml("<StringObject string2=\"b\" string1=\"a\"/>")
+            val stats = xml.stats()
+
+            it("should still read the attributes") {
+                assertEquals(StringObject("a", "b"), stringObject)
+            }
+
+            it("should count the fallbacks as misses") {
+                assertEquals(0L, stats.predictedMatchHitCount())
+                assertEquals(4L, stats.predictedMatchMissCount())
+                assertEquals(0.0, stats.predictedMatchHitRate())
+            }
+        }
+
+        context("before reading anything") {
+            it("should have a predicted match rate of 0") {
+                assertEquals(0.0, Xml.Builder().build().stats().predictedMatchHitRate())
+            }
+        }
+
+        context("after many threads hit the cache") {
+            val threads = 8
+            val lookups = 1000
+            val xml = Xml.Builder().build()
+            xml.adapter(StringObject::class.java)
+            val before = xml.stats().adapterCacheHitCount()
+            val executor = Executors.newFixedThreadPool(threads)
+            val results = (0 until threads).map {
+                executor.submit {
+                    for (i in 0 until lookups) {
+                        xml.adapter(StringObject::class.java)
+                    }
+                }
+            }
+            results.forEach { it.get(10, TimeUnit.SECONDS) }
+            executor.shutdown()
+
+            it("should count every hit") {
+                assertEquals(before + threads * lookups, xml.stats().adapterCacheHitCount())
+            }
+        }
+
+        context("after many threads read documents") {
+            val threads = 8
+            val reads = 1000
+            val xml = Xml.Builder().build()
+            val adapter = xml.adapter(StringObject::class.java)
+            val executor = Executors.newFixedThreadPool(threads)
+            val results = (0 until threads).map {
+                executor.submit {
+                    for (i in 0 until reads) {
+                        adapter.fromXml("<StringObject string1=\"a\" string2=\"b\"/>")
+                    }
+                }
+            }
+            results.forEach { it.get(10, TimeUnit.SECONDS) }
+            executor.shutdown()
+            val stats = xml.stats()
+
+            it("should count every attribute lookup") {
+                assertEquals(2L * threads * reads, stats.predictedMatchHitCount() + stats.predictedMatchMissCount())
+            }
+        }
+    }
+
+    describe("an Xml warmed up") {
+        context("for types that share an adapter") {
+            val xml = Xml.Builder().build()
+            val results = xml.warmUp(NestedObject::class.java, StringObject::class.java)
+
+            it("should return a result for each type in order") {
+                assertEquals(listOf<Type>(NestedObject::class.java, StringObject::class.java), results.map { it.type() })
+            }
+
+            it("should count the adapters each type created") {
+                assertTrue(results[0].adapterCount() >= 2)
+                assertEquals(0, results[1].adapterCount())
+            }
+
+            it("should not create any adapters a second time") {
+                assertEquals(listOf(0), xml.warmUp(NestedObject::class.java).map { it.adapterCount() })
+            }
+
+            it("should cache the adapters it created") {
+                val before = xml.stats().adapterCacheMissCount()
+                xml.adapter(NestedObject::class.java)
+                assertEquals(before, xml.stats().adapterCacheMissCount())
+            }
+        }
+
+        context("for a type without an adapter") {
+            val xml = Xml.Builder().build()
+
+            it("should fail naming the type") {
+                val e = assertFailsWith<IllegalArgumentException> { xml.warmUp(StringObject::class.java, Runnable::class.java) }
+                assertTrue(e.message!!.contains(Runnable::class.java.name))
+            }
+        }
+    }
+
+    describe("an Xml looked up from many threads at once") {
+        val threads = 8
+        val creations = ConcurrentHashMap<Type, AtomicInteger>()
+        val xml = Xml.Builder().add(object : XmlAdapter.Factory {
+            override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? {
+                creations.getOrPut(type) { AtomicInteger() }.incrementAndGet()
+                // Slow enough that the other threads arrive while it's still building.
+                Thread.sleep(50)
+                return adapters.nextAdapter<Any>(this, type, annotations)
+            }
+        }).build()
+        val start = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(threads)
+        val results = (0 until threads).map {
+            executor.submit(Callable {
+                start.await()
+                val adapter = xml.adapter(RecursiveObject::class.java)
+                adapter to adapter.fromXml("<RecursiveObject name=\"a\"><child name=\"b\"><child name=\"c\"/></child></RecursiveObject>")
+            })
+        }
+        start.countDown()
+        val values = results.map { it.get(10, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        it("should create each adapter once") {
+            assertEquals(1, creations[RecursiveObject::class.java]!!.get())
+            assertTrue(creations.values.all { it.get() == 1 })
+        }
+
+        it("should return the same adapter to every thread") {
+            assertTrue(values.all { it.first === values[0].first })
+        }
+
+        it("should read the recursive type from every thread") {
+            val expected = RecursiveObject("a", listOf(RecursiveObject("b", listOf(RecursiveObject("c", emptyList())))))
+            for ((_, value) in values) {
+                assertEquals(expected, value)
+            }
+        }
+    }
+})
+
+private class ListHolder(@JvmField val list: List<String>)
+
+private class NamedAdapter : XmlAdapter<String>() {
+    override fun fromXml(parser: XmlPullParser, tagInfo: TagInfo): String = parser.nextText()
+
+    override fun toXml(serializer: XmlSerializer, tagInfo: TagInfo, value: String) {
+        serializer.text(value)
+    }
+}
+
+private fun serializedName(name: String): SerializedName =
+        Proxy.newProxyInstance(SerializedName::class.java.classLoader, arrayOf(SerializedName::class.java)) { _, method, args ->
+            when (method.name) {
+                "value" -> name
+                "annotationType" -> SerializedName::class.java
+                "equals" -> (args[0] as? SerializedName)?.value == name
+                "hashCode" -> (127 * "value".hashCode()) xor name.hashCode()
+                "toString" -> "@SerializedName($name)"
+                else -> throw UnsupportedOperationException(method.name)
+            }
+        } as SerializedName
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import kotlin.test.assertEquals
+
+@RunWith(JUnitPlatform::class)
+class BindingMatcherSpecs : Spek({
+    describe("a BindingMatcher") {
+        fun matcher(vararg tags: Pair<String, String?>): CountingMatcher {
+            val tagInfos = tags.map { TagInfo(it.first, it.second, null) }
+            return CountingMatcher(BindingMatcher(tags.map { it.first }, tagInfos, Names()))
+        }
+
+        // Matches each tag following the one before it, returning the binding indexes.
+        fun CountingMatcher.readTags(vararg names: String): List<Int> {
+            var previous = -1
+            return names.map { name ->
+                val index = next(previous, name, null)
+                if (index != -1) previous = index
+                index
+            }
+        }
+
+        fun CountingMatcher.readAttributes(vararg names: String): List<Int> =
+                names.mapIndexed { position, name -> at(position, name, null) }
+
+        context("tags read in the same order twice") {
+            val matcher = matcher("a" to null, "b" to null, "c" to null)
+            val first = matcher.readTags("a", "b", "c")
+            val second = matcher.readTags("a", "b", "c")
+
+            it("should match each tag") {
+                assertEquals(listOf(0, 1, 2), first)
+                assertEquals(listOf(0, 1, 2), second)
+            }
+
+            it("should miss the first time and predict the second") {
+                assertEquals(3L, matcher.hitCount())
+                assertEquals(3L, matcher.missCount())
+            }
+        }
+
+        context("tags read in a different order") {
+            val matcher = matcher("a" to null, "b" to null, "c" to null)
+            matcher.readTags("a", "b", "c")
+            val reordered = matcher.readTags("c", "a", "b")
+
+            it("should still match each tag") {
+                assertEquals(listOf(2, 0, 1), reordered)
+            }
+
+            it("should only predict the tag that follows the same one as before") {
+                assertEquals(1L, matcher.hitCount())
+                assertEquals(5L, matcher.missCount())
+            }
+
+            it("should predict the new order the next time") {
+                val hits = matcher.hitCount()
+                matcher.readTags("c", "a", "b")
+                assertEquals(hits + 3, matcher.hitCount())
+            }
+        }
+
+        context("a tag that's repeated") {
+            val matcher = matcher("a" to null, "b" to null)
+            matcher.readTags("a", "b")
+            val repeated = matcher.readTags("a", "a", "b")
+
+            it("should match each tag") {
+                assertEquals(listOf(0, 0, 1), repeated)
+            }
+
+            it("should fall back to looking up the tags that weren't predicted") {
+                assertEquals(1L, matcher.hitCount())
+                assertEquals(4L, matcher.missCount())
+            }
+        }
+
+        context("a tag without a binding") {
+            val matcher = matcher("a" to null, "b" to null)
+            matcher.readTags("a", "b")
+            val unknown = matcher.readTags("a", "unknown", "b")
+
+            it("should not match it") {
+                assertEquals(listOf(0, -1, 1), unknown)
+            }
+
+            it("should still predict the tags around it") {
+                assertEquals(2L, matcher.hitCount())
+                assertEquals(3L, matcher.missCount())
+            }
+        }
+
+        context("bindings with the same name in different namespaces") {
+            val matcher = matcher("x" to "urn:a", "x" to null, "y" to null)
+            val indexes = (0 until 3).map {
+                listOf(matcher.next(-1, "x", "urn:a"), matcher.next(0, "x", "urn:b"), matcher.next(1, "y", null))
+            }
+
+            it("should match each by namespace") {
+                for (index in indexes) {
+                    assertEquals(listOf(0, 1, 2), index)
+                }
+            }
+
+            it("should never predict them") {
+                // Only y, the one with a unique name, is predicted after the first read.
+                assertEquals(2L, matcher.hitCount())
+                assertEquals(7L, matcher.missCount())
+            }
+        }
+
+        context("attributes read in the same order twice") {
+            val matcher = matcher("a" to null, "b" to null)
+            val first = matcher.readAttributes("a", "b")
+            val second = matcher.readAttributes("a", "b")
+
+            it("should match each attribute") {
+                assertEquals(listOf(0, 1), first)
+                assertEquals(listOf(0, 1), second)
+            }
+
+            it("should predict them by position the second time") {
+                assertEquals(2L, matcher.hitCount())
+                assertEquals(2L, matcher.missCount())
+            }
+        }
+
+        context("attributes read in a different order") {
+            val matcher = matcher("a" to null, "b" to null)
+            matcher.readAttributes("a", "b")
+            val swapped = matcher.readAttributes("b", "a")
+
+            it("should still match each attribute") {
+                assertEquals(listOf(1, 0), swapped)
+            }
+
+            it("should fall back to looking them up") {
+                assertEquals(0L, matcher.hitCount())
+                assertEquals(4L, matcher.missCount())
+            }
+        }
+    }
+})
+
+/**
+ * Checks the prediction first and falls back to finding the binding, the way the adapter does,
+ * counting how often the prediction was right.
+ */
+private class CountingMatcher(private val matcher: BindingMatcher<String>) {
+    private var hitCount = 0L
+    private var missCount = 0L
+
+    fun next(previous: Int, name: String, namespace: String?): Int =
+            count(matcher.predictNext(previous, name, namespace)) { matcher.findNext(previous, name, namespace) }
+
+    fun at(position: Int, name: String, namespace: String?): Int =
+            count(matcher.predictAt(position, name, namespace)) { matcher.findAt(position, name, namespace) }
+
+    fun hitCount() = hitCount
+
+    fun missCount() = missCount
+
+    private inline fun count(predicted: Int, find: () -> Int): Int {
+        if (predicted != -1) {
+            hitCount++
+            return predicted
+        }
+        missCount++
+        return find()
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.classes.SnapshotObjectV1
+import me.tatarka.parsnip.classes.SnapshotObjectV2
+import me.tatarka.parsnip.classes.SnapshotObjectV3
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import kotlin.test.assertEquals
+
+@RunWith(JUnitPlatform::class)
+class BindingSnapshotSpecs : Spek({
+    describe("a binding snapshot") {
+        val snapshot = ByteArrayOutputStream()
+        Xml.Builder().build().writeBindings(snapshot, SnapshotObjectV1::class.java)
+
+        context("read back") {
+            val xml = Xml.Builder().bindings(ByteArrayInputStream(snapshot.toByteArray())).build()
+            val adapter = xml.adapter(SnapshotObjectV1::class.java)
+
+            it("should read an object") {
+                assertEquals(SnapshotObjectV1("a", "b"), adapter.fromXml("<SnapshotObjectV1 string1=\"a\" string2=\"b\"/>"))
+            }
+
+            it("should write an object") {
+                assertEquals("<SnapshotObjectV1 string1=\"a\" string2=\"b\" />", adapter.toXml(SnapshotObjectV1("a", "b")))
+            }
+        }
+
+        context("read for a class that changed after it was written") {
+            val changed = String(snapshot.toByteArray(), Charsets.ISO_8859_1)
+                    .replace(SnapshotObjectV1::class.java.name, SnapshotObjectV2::class.java.name)
+            val xml = Xml.Builder().bindings(ByteArrayInputStream(changed.toByteArray(Charsets.ISO_8859_1))).build()
+            val adapter = xml.adapter(SnapshotObjectV2::class.java)
+
+            it("should read the object as the class is now") {
+                assertEquals(SnapshotObjectV2("a", "b"), adapter.fromXml("<SnapshotObjectV2 string3=\"a\" string2=\"b\"/>"))
+            }
+
+            it("should write the object as the class is now") {
+                assertEquals("<SnapshotObjectV2 string3=\"a\" string2=\"b\" />", adapter.toXml(SnapshotObjectV2("a", "b")))
+            }
+        }
+
+        context("read for a class whose annotations changed after it was written") {
+            val changed = String(snapshot.toByteArray(), Charsets.ISO_8859_1)
+                    .replace(SnapshotObjectV1::class.java.name, SnapshotObjectV3::class.java.name)
+            val xml = Xml.Builder().bindings(ByteArrayInputStream(changed.toByteArray(Charsets.ISO_8859_1))).build()
+            val adapter = xml.adapter(SnapshotObjectV3::class.java)
+
+            it("should use the names in the snapshot without reading the annotations") {
+                assertEquals(SnapshotObjectV3("a", "b"), adapter.fromXml("<SnapshotObjectV3 string1=\"a\" string2=\"b\"/>"))
+            }
+        }
+    }
+})
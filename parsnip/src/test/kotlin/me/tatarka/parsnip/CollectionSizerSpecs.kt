@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.classes.StringObject
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import java.lang.reflect.Type
+import java.util.ConcurrentModificationException
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+@RunWith(JUnitPlatform::class)
+class CollectionSizerSpecs : Spek({
+    describe("a CollectionSizer") {
+        context("without options") {
+            it("should use the expected size") {
+                assertEquals(4, CollectionSizer(4, 0).size())
+            }
+
+            it("should use the default size without an expected size") {
+                assertEquals(-1, CollectionSizer(-1, 0).size())
+            }
+
+            it("should keep using the expected size after reading collections") {
+                val sizer = CollectionSizer(4, 0)
+                sizer.finish(sizer.newList<Int>().apply { addAll(1..10) })
+                assertEquals(4, sizer.size())
+            }
+
+            it("should not trim lists") {
+                val sizer = CollectionSizer(10, 0)
+                val list = sizer.newList<Int>().apply { add(1) }
+                val iterator = list.iterator()
+                sizer.finish(list)
+                assertEquals(1, iterator.next())
+            }
+
+            it("should recycle a collection by clearing it") {
+                val sizer = CollectionSizer(-1, 0)
+                val list = sizer.finish(sizer.newList<Int>().apply { add(1) })
+                val recycled = sizer.recycle(list, false)
+                assertTrue(recycled === list)
+                assertTrue(recycled.isEmpty())
+            }
+        }
+
+        context("with adaptive sizes") {
+            it("should use the expected size until a collection is read") {
+                assertEquals(4, CollectionSizer(4, CollectionSizer.ADAPTIVE).size())
+            }
+
+            it("should use the size of the collections read") {
+                val sizer = CollectionSizer(4, CollectionSizer.ADAPTIVE)
+                for (i in 0 until 3) {
+                    sizer.finish(sizer.newList<Int>().apply { addAll(1..10) })
+                }
+                assertEquals(10, sizer.size())
+            }
+
+            it("should move towards the size of newer collections") {
+                val sizer = CollectionSizer(-1, CollectionSizer.ADAPTIVE)
+                sizer.finish(sizer.newList<Int>().apply { addAll(1..10) })
+                for (i in 0 until 50) {
+                    sizer.finish(sizer.newList<Int>().apply { addAll(1..2) })
+                }
+                assertEquals(2, sizer.size())
+            }
+        }
+
+        context("with trimmed collections") {
+            it("should trim lists with spare room") {
+                val sizer = CollectionSizer(10, CollectionSizer.TRIM)
+                val list = sizer.newList<Int>().apply { add(1) }
+                val iterator = list.iterator()
+                sizer.finish(list)
+                // Trimming counts as a modification.
+                assertFailsWith<ConcurrentModificationException> { iterator.next() }
+            }
+
+            it("should keep the list") {
+                val sizer = CollectionSizer(10, CollectionSizer.TRIM)
+                val list = sizer.newList<Int>().apply { add(1) }
+                assertTrue(sizer.finish(list) === list)
+            }
+        }
+
+        context("with unmodifiable collections") {
+            val sizer = CollectionSizer(-1, CollectionSizer.UNMODIFIABLE)
+
+            it("should wrap lists") {
+                val list = sizer.finish(sizer.newList<Int>().apply { add(1) })
+                assertFailsWith<UnsupportedOperationException> { (list as MutableList<Int>).add(2) }
+            }
+
+            it("should wrap sets") {
+                val set = sizer.finish(sizer.newSet<Int>().apply { add(1) })
+                assertFailsWith<UnsupportedOperationException> { (set as MutableSet<Int>).add(2) }
+            }
+
+            it("should recycle a list into a new modifiable one") {
+                val list = sizer.finish(sizer.newList<Int>().apply { add(1) })
+                val recycled = sizer.recycle(list, false)
+                assertFalse(recycled === list)
+                assertTrue(recycled is MutableList<*>)
+                recycled.add(2)
+                assertEquals(listOf(1), list)
+            }
+
+            it("should recycle a set into a new set") {
+                val set = sizer.finish(sizer.newSet<Int>().apply { add(1) })
+                val recycled = sizer.recycle(set, true)
+                assertTrue(recycled is Set<*>)
+                assertTrue(recycled.isEmpty())
+            }
+        }
+
+        context("from an Xml.Builder") {
+            fun sizerOf(builder: Xml.Builder): CollectionSizer {
+                var sizer: CollectionSizer? = null
+                builder.add(object : XmlAdapter.Factory {
+                    override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? {
+                        if (sizer == null) sizer = adapters.collectionSizer(4)
+                        return null
+                    }
+                }).build().adapter<Any>(StringObject::class.java)
+                return sizer!!
+            }
+
+            it("should adapt sizes with adaptiveCollectionSizes()") {
+                val sizer = sizerOf(Xml.Builder().adaptiveCollectionSizes(true))
+                sizer.finish(sizer.newList<Int>().apply { addAll(1..10) })
+                assertEquals(10, sizer.size())
+            }
+
+            it("should trim with trimCollections()") {
+                val sizer = sizerOf(Xml.Builder().trimCollections(true))
+                val list = sizer.newList<Int>().apply { add(1) }
+                val iterator = list.iterator()
+                sizer.finish(list)
+                assertFailsWith<ConcurrentModificationException> { iterator.next() }
+            }
+
+            it("should wrap with unmodifiableCollections()") {
+                val sizer = sizerOf(Xml.Builder().unmodifiableCollections(true))
+                val list = sizer.finish(sizer.newList<Int>())
+                assertFailsWith<UnsupportedOperationException> { (list as MutableList<Int>).add(1) }
+            }
+
+            it("should turn an option off again") {
+                val sizer = sizerOf(Xml.Builder().unmodifiableCollections(true).unmodifiableCollections(false))
+                val list = sizer.finish(sizer.newList<Int>())
+                (list as MutableList<Int>).add(1)
+                assertEquals(listOf(1), list)
+            }
+        }
+    }
+})
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.classes.StringObject
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlSerializer
+import java.lang.reflect.Type
+import kotlin.test.assertEquals
+
+@RunWith(JUnitPlatform::class)
+class FactoryIndexSpecs : Spek({
+    describe("a factory index") {
+        val open1 = Any()
+        val string1 = TypeFactory(String::class.java)
+        val open2 = Any()
+        val int = TypeFactory(Int::class.javaObjectType)
+        val string2 = TypeFactory(String::class.java)
+        val index = FactoryIndex(listOf(open1, string1, open2, int, string2))
+
+        it("should return the open and matching type factories in order") {
+            assertEquals(listOf(0, 1, 2, 4), index.candidates(0, String::class.java).toList())
+            assertEquals(listOf(0, 2, 3), index.candidates(0, Int::class.javaObjectType).toList())
+        }
+
+        it("should return only the open factories for an unregistered type") {
+            assertEquals(listOf(0, 2), index.candidates(0, Long::class.javaObjectType).toList())
+        }
+
+        it("should skip the factories before the given position") {
+            assertEquals(listOf(2, 4), index.candidates(2, String::class.java).toList())
+            assertEquals(listOf(4), index.candidates(3, String::class.java).toList())
+            assertEquals(emptyList(), index.candidates(3, Long::class.javaObjectType).toList())
+        }
+
+        it("should return the position of a factory") {
+            assertEquals(0, index.indexOf(open1))
+            assertEquals(4, index.indexOf(string2))
+        }
+
+        it("should return the first position of a factory added more than once") {
+            assertEquals(0, FactoryIndex(listOf(open1, open2, open1)).indexOf(open1))
+        }
+
+        it("should return -1 for an unknown factory") {
+            assertEquals(-1, index.indexOf(Any()))
+        }
+
+        it("should match equal types created in different ways") {
+            val listIndex = FactoryIndex(listOf(TypeFactory(Types.newParameterizedType(List::class.java, String::class.java))))
+            val reflected = StringListHolder::class.java.getField("list").genericType
+            assertEquals(listOf(0), listIndex.candidates(0, reflected).toList())
+        }
+    }
+
+    describe("an Xml with type adapters and adapter factories") {
+        context("a type adapter added before a factory for the same type") {
+            val xml = Xml.Builder()
+                    .add(StringObject::class.java, ConstantAdapter(StringObject("typed")))
+                    .add(ConstantFactory(StringObject::class.java, StringObject("factory")))
+                    .build()
+
+            it("should use the type adapter") {
+                assertEquals(StringObject("typed"), xml.adapter(StringObject::class.java).fromXml("<StringObject/>"))
+            }
+        }
+
+        context("a factory added before a type adapter for the same type") {
+            val xml = Xml.Builder()
+                    .add(ConstantFactory(StringObject::class.java, StringObject("factory")))
+                    .add(StringObject::class.java, ConstantAdapter(StringObject("typed")))
+                    .build()
+
+            it("should use the factory") {
+                assertEquals(StringObject("factory"), xml.adapter(StringObject::class.java).fromXml("<StringObject/>"))
+            }
+        }
+
+        context("a factory that delegates to the next adapter") {
+            val xml = Xml.Builder()
+                    .add(object : XmlAdapter.Factory {
+                        override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? {
+                            if (type != StringObject::class.java) return null
+                            val next = adapters.nextAdapter<StringObject>(this, type, annotations)
+                            return ConstantAdapter(next.fromXml("<StringObject/>").copy(string2 = "delegated"))
+                        }
+                    })
+                    .add(StringObject::class.java, ConstantAdapter(StringObject("after")))
+                    .add(ConstantFactory(StringObject::class.java, StringObject("open")))
+                    .build()
+
+            it("should get the type adapter after it") {
+                assertEquals(StringObject("after", "delegated"), xml.adapter(StringObject::class.java).fromXml("<StringObject/>"))
+            }
+        }
+
+        context("a type adapter for another type") {
+            val xml = Xml.Builder()
+                    .add(Int::class.javaObjectType, ConstantAdapter(1))
+                    .build()
+
+            it("should fall through to the built-in adapters") {
+                assertEquals(StringObject("a"), xml.adapter(StringObject::class.java).fromXml("<StringObject string1=\"a\"/>"))
+            }
+        }
+    }
+
+    describe("an Xml with type converters and converter factories") {
+        context("a type converter added before a factory for the same type") {
+            val xml = Xml.Builder()
+                    .add(String::class.java, ConstantConverter("typed"))
+                    .add(ConstantConverterFactory(String::class.java, "factory"))
+                    .build()
+
+            it("should use the type converter") {
+                assertEquals(StringObject("typed"), xml.adapter(StringObject::class.java).fromXml("<StringObject string1=\"a\"/>"))
+            }
+        }
+
+        context("a factory added before a type converter for the same type") {
+            val xml = Xml.Builder()
+                    .add(ConstantConverterFactory(String::class.java, "factory"))
+                    .add(String::class.java, ConstantConverter("typed"))
+                    .build()
+
+            it("should use the factory") {
+                assertEquals(StringObject("factory"), xml.adapter(StringObject::class.java).fromXml("<StringObject string1=\"a\"/>"))
+            }
+        }
+
+        context("a factory that delegates to the next converter") {
+            var captured: XmlAdapters? = null
+            val xml = Xml.Builder()
+                    .add(object : XmlAdapter.Factory {
+                        override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? {
+                            captured = adapters
+                            return null
+                        }
+                    })
+                    .add(object : TypeConverter.Factory {
+                        override fun create(type: Type, annotations: Set<out Annotation>): TypeConverter<*>? {
+                            if (type != String::class.java) return null
+                            val next = captured!!.nextConverter<String>(this, type, annotations)
+                            return ConstantConverter(next.from("a") + " delegated")
+                        }
+                    })
+                    .add(String::class.java, ConstantConverter("after"))
+                    .add(ConstantConverterFactory(String::class.java, "open"))
+                    .build()
+
+            it("should get the type converter after it") {
+                assertEquals(StringObject("after delegated"), xml.adapter(StringObject::class.java).fromXml("<StringObject string1=\"a\"/>"))
+            }
+        }
+    }
+})
+
+private class TypeFactory(private val type: Type) : FactoryIndex.TypeFactory {
+    override fun type(): Type = type
+}
+
+private class StringListHolder(@JvmField val list: List<String>)
+
+private class ConstantAdapter<T>(private val value: T) : XmlAdapter<T>() {
+    override fun fromXml(parser: XmlPullParser, tagInfo: TagInfo): T = value
+
+    override fun toXml(serializer: XmlSerializer, tagInfo: TagInfo, value: T) {
+        throw UnsupportedOperationException()
+    }
+}
+
+private class ConstantFactory<T>(private val type: Type, private val value: T) : XmlAdapter.Factory {
+    override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? =
+            if (type == this.type) ConstantAdapter(value) else null
+}
+
+private class ConstantConverter(private val value: String) : TypeConverter<String> {
+    override fun from(value: String): String = this.value
+
+    override fun to(value: String): String = value
+}
+
+private class ConstantConverterFactory(private val type: Type, private val value: String) : TypeConverter.Factory {
+    override fun create(type: Type, annotations: Set<out Annotation>): TypeConverter<*>? =
+            if (type == this.type) ConstantConverter(value) else null
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.classes.StringObject
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlSerializer
+import java.lang.reflect.Type
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+@RunWith(JUnitPlatform::class)
+class NamesSpecs : Spek({
+    describe("a Names") {
+        val names = Names()
+        val first = copy("name")
+        val registered = names.intern(first)
+
+        it("should register the first instance of a name") {
+            assertSame(first, registered)
+            assertSame(first, names.intern(copy("name")))
+        }
+
+        it("should return the registered instance for an equal name") {
+            assertSame(first, names.canonical(copy("name")))
+        }
+
+        it("should return an unregistered name itself") {
+            val other = copy("other")
+            assertSame(other, names.canonical(other))
+        }
+
+        it("should only change generation when a name is added") {
+            val generation = names.generation()
+            names.intern(copy("name"))
+            assertEquals(generation, names.generation())
+            names.intern(copy("added"))
+            assertEquals(generation + 1, names.generation())
+        }
+    }
+
+    describe("the names of an Xml") {
+        fun newXml(captured: MutableList<XmlAdapters>) = Xml.Builder()
+                .add(object : XmlAdapter.Factory {
+                    override fun create(type: Type, annotations: Set<out Annotation>, adapters: XmlAdapters): XmlAdapter<*>? {
+                        captured.add(adapters)
+                        return null
+                    }
+                })
+                .add(Captured::class.java, CapturedAdapter())
+                .backend(XmlBackend.UTF8)
+                .build()
+
+        context("adapters created by the same Xml") {
+            val captured = mutableListOf<XmlAdapters>()
+            val xml = newXml(captured)
+            xml.adapter(StringObject::class.java)
+            xml.adapter(CapturedHolder::class.java)
+            val names = captured[0].names()
+
+            it("should share one table") {
+                assertTrue(captured.all { it.names() === names })
+            }
+
+            it("should register the names bound by each adapter") {
+                val string1 = names.canonical(copy("string1"))
+                assertEquals("string1", string1)
+                assertSame(string1, names.intern(copy("string1")))
+                assertSame(names.canonical("captured"), names.intern(copy("captured")))
+            }
+
+            it("should have the byte parser return the registered names") {
+                val holder = xml.adapter(CapturedHolder::class.java)
+                        .fromXml("<CapturedHolder><captured string1=\"a\"/></CapturedHolder>".byteInputStream())
+                assertSame(names.canonical("captured"), holder.captured.name)
+                assertSame(names.canonical("string1"), holder.captured.attribute)
+            }
+        }
+
+        context("adapters created by different Xml instances") {
+            val captured = mutableListOf<XmlAdapters>()
+            newXml(captured).adapter(StringObject::class.java)
+            newXml(captured).adapter(StringObject::class.java)
+
+            it("should have their own tables") {
+                assertNotSame(captured.first().names(), captured.last().names())
+            }
+        }
+    }
+
+    describe("a Utf8XmlParser") {
+        val document = "<root name=\"a\"><child/></root>".toByteArray()
+
+        fun Utf8XmlParser.readNames(): List<String> {
+            val result = mutableListOf<String>()
+            while (next() != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    result.add(name)
+                    for (i in 0 until attributeCount) result.add(getAttributeName(i))
+                }
+            }
+            return result
+        }
+
+        context("without names") {
+            val names = Names()
+            val root = names.intern(copy("root"))
+
+            it("should return names of its own") {
+                val parser = Utf8XmlParser()
+                parser.setInput(document.inputStream(), "UTF-8")
+                val read = parser.readNames()
+                assertEquals(root, read[0])
+                assertNotSame(root, read[0])
+            }
+        }
+
+        context("with names") {
+            val names = Names()
+            val root = names.intern(copy("root"))
+            val name = names.intern(copy("name"))
+
+            it("should return the registered instances") {
+                val parser = Utf8XmlParser()
+                parser.setInput(document.inputStream(), "UTF-8")
+                parser.useNames(names)
+                val read = parser.readNames()
+                assertSame(root, read[0])
+                assertSame(name, read[1])
+            }
+
+            it("should return names registered after it read them") {
+                val parser = Utf8XmlParser()
+                parser.setInput(document.inputStream(), "UTF-8")
+                parser.useNames(names)
+                parser.readNames()
+                val child = names.intern(copy("child"))
+                parser.setInput(document.inputStream(), "UTF-8")
+                parser.useNames(names)
+                assertSame(child, parser.readNames()[2])
+            }
+        }
+
+        context("with the names of another Xml") {
+            val names = Names()
+            val other = Names()
+            val root = other.intern(copy("root"))
+
+            it("should forget the names of the first") {
+                val parser = Utf8XmlParser()
+                parser.setInput(document.inputStream(), "UTF-8")
+                parser.useNames(names.also { it.intern(copy("root")) })
+                parser.readNames()
+                parser.setInput(document.inputStream(), "UTF-8")
+                parser.useNames(other)
+                assertSame(root, parser.readNames()[0])
+            }
+        }
+    }
+})
+
+/**
+ * Returns an equal string that isn't the same instance as any other.
+ */
+private fun copy(name: String) = String(name.toCharArray())
+
+private class Captured(val name: String, val attribute: String)
+
+private data class CapturedHolder(val captured: Captured)
+
+/**
+ * Keeps the instances of the tag and attribute names the parser returns.
+ */
+private class CapturedAdapter : XmlAdapter<Captured>() {
+    override fun fromXml(parser: XmlPullParser, tagInfo: TagInfo): Captured {
+        val captured = Captured(parser.name, parser.getAttributeName(0))
+        parser.next()
+        return captured
+    }
+
+    override fun toXml(serializer: XmlSerializer, tagInfo: TagInfo, value: Captured) {
+        throw UnsupportedOperationException()
+    }
+}
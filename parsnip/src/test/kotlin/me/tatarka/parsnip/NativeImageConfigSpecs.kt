@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import me.tatarka.parsnip.classes.*
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import java.io.StringWriter
+import java.lang.reflect.Type
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+@RunWith(JUnitPlatform::class)
+class NativeImageConfigSpecs : Spek({
+    describe("the native image config of an Xml") {
+        context("for a class with a no-arg constructor") {
+            val config = nativeImageConfig(InitializedObject::class.java)
+
+            it("should register its fields and constructor") {
+                assertEquals("""
+                    [
+                      {
+                        "name": "me.tatarka.parsnip.classes.InitializedObject",
+                        "allDeclaredFields": true,
+                        "methods": [{"name": "<init>", "parameterTypes": []}]
+                      }
+                    ]
+                    """.trimIndent() + "\n", config)
+            }
+        }
+
+        context("for a class without a no-arg constructor") {
+            val config = nativeImageConfig(TextObject::class.java)
+
+            it("should register it for unsafe allocation") {
+                val entry = entry(config, "me.tatarka.parsnip.classes.TextObject")
+                assertNotNull(entry)
+                assertTrue(entry!!.contains("\"unsafeAllocated\": true"))
+                assertFalse(entry.contains("<init>"))
+            }
+
+            it("should register Unsafe") {
+                val entry = entry(config, "sun.misc.Unsafe")
+                assertNotNull(entry)
+                assertTrue(entry!!.contains("\"fields\": [{\"name\": \"theUnsafe\"}]"))
+                assertTrue(entry.contains("\"name\": \"allocateInstance\", \"parameterTypes\": [\"java.lang.Class\"]"))
+            }
+        }
+
+        context("for a class with only no-arg constructors") {
+            val config = nativeImageConfig(InitializedObject::class.java)
+
+            it("should not register Unsafe") {
+                assertNull(entry(config, "sun.misc.Unsafe"))
+            }
+        }
+
+        context("for a class with enum fields") {
+            val config = nativeImageConfig(EnumObject::class.java)
+
+            it("should register the enum's constants") {
+                val entry = entry(config, "me.tatarka.parsnip.classes.TestEnum")
+                assertNotNull(entry)
+                assertTrue(entry!!.contains("\"allPublicFields\": true"))
+            }
+        }
+
+        context("for a class with a nested class") {
+            val config = nativeImageConfig(NestedObject::class.java)
+
+            it("should register the nested class too") {
+                assertNotNull(entry(config, "me.tatarka.parsnip.classes.NestedObject"))
+                assertNotNull(entry(config, "me.tatarka.parsnip.classes.StringObject"))
+            }
+        }
+
+        context("for a class with a collection of classes") {
+            val config = nativeImageConfig(CollectionObject::class.java)
+
+            it("should register the element class") {
+                assertNotNull(entry(config, "me.tatarka.parsnip.classes.StringObject"))
+            }
+        }
+
+        context("for a subclass") {
+            val config = nativeImageConfig(DerivedObject::class.java)
+
+            it("should register the fields of its superclass") {
+                val entry = entry(config, "me.tatarka.parsnip.classes.BaseObject")
+                assertNotNull(entry)
+                assertTrue(entry!!.contains("\"allDeclaredFields\": true"))
+            }
+        }
+
+        context("for several root types") {
+            val config = nativeImageConfig(TextObject::class.java, EnumObject::class.java)
+
+            it("should list each class once, sorted by name") {
+                val names = Regex("\"name\": \"([^\"]+)\",\n").findAll(config).map { it.groupValues[1] }.toList()
+                assertEquals(listOf(
+                        "me.tatarka.parsnip.classes.EnumObject",
+                        "me.tatarka.parsnip.classes.TestEnum",
+                        "me.tatarka.parsnip.classes.TextObject",
+                        "sun.misc.Unsafe"), names)
+            }
+        }
+    }
+})
+
+private fun nativeImageConfig(vararg types: Type): String {
+    val out = StringWriter()
+    Xml.Builder().build().writeNativeImageConfig(out, *types)
+    return out.toString()
+}
+
+/**
+ * Returns the config entry for the class with the given name, or null if there isn't one.
+ */
+private fun entry(config: String, name: String): String? {
+    val start = config.indexOf("{\n    \"name\": \"$name\"")
+    if (start == -1) return null
+    return config.substring(start, config.indexOf("\n  }", start))
+}
@@ -21,9 +21,14 @@ import org.jetbrains.spek.api.Spek
 import org.jetbrains.spek.api.dsl.*
 import org.junit.platform.runner.JUnitPlatform
 import org.junit.runner.RunWith
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlSerializer
+import java.io.IOException
 import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
 import kotlin.test.assertNotNull
 import kotlin.test.assertNull
+import kotlin.test.assertTrue
 
 @RunWith(JUnitPlatform::class)
 class ObjectDeserializerSpecs : Spek({
@@ -141,6 +146,70 @@ class ObjectDeserializerSpecs : Spek({
             }
         }
 
+        context("an object with primitive tag fields") {
+            val adapter = xml.adapter(PrimitiveTagObject::class.java)
+            val primitiveObject = adapter.fromXml("<PrimitiveTagObject><boolean>true</boolean><double>1.5</double><int>-12</int><long>10000000000</long></PrimitiveTagObject>")
+
+            it("should set the boolean field") {
+                assertEquals(true, primitiveObject.boolean)
+            }
+
+            it("should set the double field") {
+                assertEquals(1.5, primitiveObject.double)
+            }
+
+            it("should set the int field") {
+                assertEquals(-12, primitiveObject.int)
+            }
+
+            it("should set the long field") {
+                assertEquals(10000000000L, primitiveObject.long)
+            }
+        }
+
+        context("an object with primitive tag fields read many times") {
+            val adapter = xml.adapter(PrimitiveTagObject::class.java)
+            val primitiveObjects = (0 until 3).map {
+                adapter.fromXml("<PrimitiveTagObject><int>$it</int><long>${it * 2}</long><boolean>false</boolean><double>0</double></PrimitiveTagObject>")
+            }
+
+            it("should read each value from its own document") {
+                assertEquals(listOf(0, 1, 2), primitiveObjects.map { it.int })
+                assertEquals(listOf(0L, 2L, 4L), primitiveObjects.map { it.long })
+            }
+        }
+
+        context("an object with a primitive text field") {
+            val adapter = xml.adapter(PrimitiveTextObject::class.java)
+            val primitiveObject = adapter.fromXml("<PrimitiveTextObject>42</PrimitiveTextObject>")
+
+            it("should set the text field") {
+                assertEquals(42, primitiveObject.int)
+            }
+        }
+
+        context("an object with primitive fields and a custom IntConverter") {
+            val converter = HexIntConverter()
+            val customXml = Xml.Builder().add(Int::class.javaPrimitiveType!!, converter).build()
+            val tagObject = customXml.adapter(PrimitiveTagObject::class.java)
+                    .fromXml("<PrimitiveTagObject><boolean>true</boolean><double>1</double><int>ff</int><long>1</long></PrimitiveTagObject>")
+            val textObject = customXml.adapter(PrimitiveTextObject::class.java)
+                    .fromXml("<PrimitiveTextObject>10</PrimitiveTextObject>")
+
+            it("should read the tag field with the converter") {
+                assertEquals(255, tagObject.int)
+            }
+
+            it("should read the text field with the converter") {
+                assertEquals(16, textObject.int)
+            }
+
+            it("should read the values without boxing them") {
+                assertEquals(2, converter.parseIntCount)
+                assertEquals(0, converter.fromCount)
+            }
+        }
+
         context("an object with a nested one") {
             val adapter = xml.adapter(NestedObject::class.java)
             val nestedObject = adapter.fromXml("<NestedObject><nested string1=\"test\"/></NestedObject>")
@@ -154,6 +223,73 @@ class ObjectDeserializerSpecs : Spek({
             }
         }
 
+        context("an object read into an existing one") {
+            val adapter = xml.adapter(NestedObject::class.java)
+            val existing = adapter.fromXml("<NestedObject><nested string1=\"old\" string2=\"old\"/></NestedObject>")
+            val existingNested = existing.nested
+            val nestedObject = adapter.fromXml("<NestedObject><nested string1=\"new\"/></NestedObject>", existing)
+
+            it("should reuse the object") {
+                assertTrue(existing === nestedObject)
+            }
+
+            it("should reuse the nested object") {
+                assertTrue(existingNested === nestedObject.nested)
+            }
+
+            it("should reset the fields missing from the xml") {
+                assertEquals(StringObject("new", null), nestedObject.nested)
+            }
+        }
+
+        context("a recursive object read into an existing one") {
+            val adapter = xml.adapter(LinkedObject::class.java)
+            val existing = adapter.fromXml("<LinkedObject name=\"a\"><next name=\"b\"><next name=\"c\"/></next></LinkedObject>")
+            val existingNext = existing.next!!
+            val existingLast = existingNext.next!!
+            val linkedObject = adapter.fromXml("<LinkedObject name=\"x\"><next name=\"y\"><next name=\"z\"/></next></LinkedObject>", existing)
+
+            it("should reuse the nested objects of the same type") {
+                assertTrue(existing === linkedObject)
+                assertTrue(existingNext === linkedObject.next)
+                assertTrue(existingLast === linkedObject.next!!.next)
+            }
+
+            it("should read the new values") {
+                assertEquals(listOf("x", "y", "z"), listOf(linkedObject.name, linkedObject.next!!.name, linkedObject.next!!.next!!.name))
+                assertNull(linkedObject.next!!.next!!.next)
+            }
+        }
+
+        context("an object with initialized fields read into an existing one") {
+            val adapter = xml.adapter(InitializedObject::class.java)
+            val existing = adapter.fromXml("<InitializedObject string1=\"old\" int=\"2\"/>")
+            val initializedObject = adapter.fromXml("<InitializedObject/>", existing)
+
+            it("should keep the initialized values in a new object") {
+                val newObject = adapter.fromXml("<InitializedObject/>")
+                assertEquals("default", newObject.string1)
+                assertEquals(1, newObject.int)
+            }
+
+            it("should reset the fields missing from the xml to null") {
+                assertNull(initializedObject.string1)
+            }
+
+            it("should reset the primitive fields missing from the xml to zero") {
+                assertEquals(0, initializedObject.int)
+            }
+        }
+
+        context("an object read until complete") {
+            val adapter = xml.adapter(NestedObject::class.java).stopWhenComplete()
+            val nestedObject = adapter.fromXml("<NestedObject><nested string1=\"test\"/><unread>")
+
+            it("should set the nested object without reading the rest") {
+                assertEquals(StringObject("test", null), nestedObject.nested)
+            }
+        }
+
         context("an object with a collection of tags") {
             val adapter = xml.adapter(CollectionObject::class.java)
             val collectionObject = adapter.fromXml("<CollectionObject><item string1=\"test1\"/><item string1=\"test2\"/></CollectionObject>")
@@ -163,6 +299,86 @@ class ObjectDeserializerSpecs : Spek({
             }
         }
 
+        context("an object with a collection read with unmodifiable collections") {
+            val adapter = Xml.Builder().unmodifiableCollections(true).build().adapter(CollectionObject::class.java)
+            val collectionObject = adapter.fromXml("<CollectionObject><item string1=\"test1\"/></CollectionObject>")
+
+            it("should read the items") {
+                assertEquals(listOf(StringObject("test1", null)), collectionObject.item)
+            }
+
+            it("should not allow changing the collection") {
+                assertFailsWith<UnsupportedOperationException> {
+                    (collectionObject.item as MutableList<StringObject>).add(StringObject())
+                }
+            }
+        }
+
+        context("an object with an unmodifiable collection read into an existing one") {
+            val adapter = Xml.Builder().unmodifiableCollections(true).build().adapter(CollectionObject::class.java)
+            val existing = adapter.fromXml("<CollectionObject><item string1=\"old1\"/><item string1=\"old2\"/></CollectionObject>")
+            val existingItems = existing.item
+            val collectionObject = adapter.fromXml("<CollectionObject><item string1=\"new\"/></CollectionObject>", existing)
+
+            it("should replace the items") {
+                assertEquals(listOf(StringObject("new", null)), collectionObject.item)
+            }
+
+            it("should leave the old collection unchanged") {
+                assertEquals(listOf(StringObject("old1", null), StringObject("old2", null)), existingItems)
+            }
+
+            it("should still not allow changing the collection") {
+                assertFailsWith<UnsupportedOperationException> {
+                    (collectionObject.item as MutableList<StringObject>).add(StringObject())
+                }
+            }
+        }
+
+        context("an object with a collection read with trimmed collections") {
+            val adapter = Xml.Builder().trimCollections(true).build().adapter(SizedCollectionObject::class.java)
+            val collectionObject = adapter.fromXml("<SizedCollectionObject><item string1=\"test1\"/></SizedCollectionObject>")
+
+            it("should read the items") {
+                assertEquals(listOf(StringObject("test1", null)), collectionObject.item)
+            }
+
+            it("should leave the collection modifiable") {
+                (collectionObject.item as MutableList<StringObject>).add(StringObject())
+                assertEquals(2, collectionObject.item.size)
+            }
+        }
+
+        context("objects with collections read with adaptive collection sizes") {
+            val adapter = Xml.Builder().adaptiveCollectionSizes(true).build().adapter(SizedCollectionObject::class.java)
+            val collectionObjects = (1..3).map { size ->
+                adapter.fromXml("<SizedCollectionObject>" + "<item string1=\"test\"/>".repeat(size) + "</SizedCollectionObject>")
+            }
+
+            it("should read the items of each") {
+                assertEquals(listOf(1, 2, 3), collectionObjects.map { it.item.size })
+            }
+        }
+
+        context("an object with a collection with an @ExpectedSize of -1") {
+            val adapter = xml.adapter(DefaultSizedCollectionObject::class.java)
+            val collectionObject = adapter.fromXml("<DefaultSizedCollectionObject><item string1=\"test1\"/></DefaultSizedCollectionObject>")
+
+            it("should read the items") {
+                assertEquals(listOf(StringObject("test1", null)), collectionObject.item)
+            }
+        }
+
+        context("an object with a collection with a negative @ExpectedSize") {
+            it("should fail to create the adapter") {
+                val e = assertFailsWith<IllegalArgumentException> {
+                    xml.adapter(NegativeSizedCollectionObject::class.java)
+                }
+                assertEquals("@ExpectedSize on 'item' in me.tatarka.parsnip.classes.NegativeSizedCollectionObject"
+                        + " must be zero or more, or -1 for the default capacity, but is -2", e.message)
+            }
+        }
+
         context("an object with namespaces") {
             val adapter = xml.adapter(NamespaceObject::class.java)
             val namespaceObject = adapter.fromXml("<NamespaceObject xmlns:ns=\"foo\" ns:attribute=\"value\" attribute=\"notValue\"><ns:tag string1=\"test\"/><ns:item string1=\"test1\"/><ns:item string1=\"test2\"/></NamespaceObject>")
@@ -180,6 +396,160 @@ class ObjectDeserializerSpecs : Spek({
             }
         }
 
+        context("an object with namespaces read from bytes with the UTF-8 backend") {
+            val adapter = Xml.Builder().backend(XmlBackend.UTF8).build().adapter(NamespaceObject::class.java)
+            val namespaceObject = adapter.fromXml("<NamespaceObject xmlns:ns=\"foo\" ns:attribute=\"caf\u00e9 &amp; bar\"><ns:tag string1=\"test\"/></NamespaceObject>".byteInputStream())
+
+            it("should decode the namespaced attribute") {
+                assertEquals("caf\u00e9 & bar", namespaceObject.attribute)
+            }
+
+            it("should read the namespaced tag") {
+                assertEquals(StringObject("test", null), namespaceObject.tag)
+            }
+        }
+
+        context("an adapter that reads comments with nextToken() from bytes") {
+            val commentAdapter = object : XmlAdapter<Comment>() {
+                override fun fromXml(parser: XmlPullParser, tagInfo: TagInfo): Comment {
+                    while (parser.nextToken() != XmlPullParser.COMMENT) {
+                        // Skip to the comment.
+                    }
+                    val comment = Comment(parser.text)
+                    while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                        // Read to the end.
+                    }
+                    return comment
+                }
+
+                override fun toXml(serializer: XmlSerializer, tagInfo: TagInfo, value: Comment) {
+                    throw UnsupportedOperationException()
+                }
+            }
+
+            it("should read the comment with the default backend") {
+                val adapter = Xml.Builder().add(Comment::class.java, commentAdapter).build().adapter(Comment::class.java)
+                assertEquals(Comment(" comment "), adapter.fromXml("<Comment><!-- comment --></Comment>".byteInputStream()))
+            }
+
+            it("should fail with the UTF-8 backend") {
+                val adapter = Xml.Builder().add(Comment::class.java, commentAdapter).backend(XmlBackend.UTF8).build().adapter(Comment::class.java)
+                assertFailsWith<IOException> {
+                    adapter.fromXml("<Comment><!-- comment --></Comment>".byteInputStream())
+                }
+            }
+        }
+
+        for (backend in listOf(XmlBackend.DEFAULT, XmlBackend.UTF8)) {
+            context("an adapter that reads another document while reading with $backend") {
+                fun newXml(): Xml {
+                    lateinit var nestedXml: Xml
+                    nestedXml = Xml.Builder().backend(backend).add(Embedded::class.java, object : XmlAdapter<Embedded>() {
+                        override fun fromXml(parser: XmlPullParser, tagInfo: TagInfo): Embedded {
+                            parser.nextTag()
+                            // Read the embedded document before this one is done with its parser.
+                            val inner = nestedXml.adapter(StringObject::class.java)
+                                    .fromXml(parser.getAttributeValue(null, "xml").byteInputStream())
+                            parser.nextTag()
+                            val after = parser.getAttributeValue(null, "name")
+                            while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                                // Read to the end.
+                            }
+                            return Embedded(inner, after)
+                        }
+
+                        override fun toXml(serializer: XmlSerializer, tagInfo: TagInfo, value: Embedded) {
+                            throw UnsupportedOperationException()
+                        }
+                    }).build()
+                    return nestedXml
+                }
+                val document = "<Embedded xml=\"&lt;StringObject string1='inner'/&gt;\"><after name=\"outer\"/></Embedded>"
+
+                it("should read both documents from bytes") {
+                    val adapter = newXml().adapter(Embedded::class.java)
+                    for (i in 0 until 3) {
+                        assertEquals(Embedded(StringObject("inner", null), "outer"), adapter.fromXml(document.byteInputStream()))
+                    }
+                }
+
+                it("should read both documents from a string") {
+                    val adapter = newXml().adapter(Embedded::class.java)
+                    for (i in 0 until 3) {
+                        assertEquals(Embedded(StringObject("inner", null), "outer"), adapter.fromXml(document))
+                    }
+                }
+            }
+
+            context("an object read after a document that failed with $backend") {
+                val adapter = Xml.Builder().backend(backend).build().adapter(StringObject::class.java)
+
+                it("should read it from bytes") {
+                    for (i in 0 until 3) {
+                        assertFailsWith<IOException> {
+                            adapter.fromXml("<StringObject string1=\"old\"><unclosed>".byteInputStream())
+                        }
+                        assertEquals(StringObject(null, "new"), adapter.fromXml("<StringObject string2=\"new\"/>".byteInputStream()))
+                    }
+                }
+
+                it("should read it from a string") {
+                    for (i in 0 until 3) {
+                        assertFailsWith<IOException> {
+                            adapter.fromXml("<StringObject string1=\"old\"><unclosed>")
+                        }
+                        assertEquals(StringObject(null, "new"), adapter.fromXml("<StringObject string2=\"new\"/>"))
+                    }
+                }
+            }
+
+            context("an indented object with $backend") {
+                val adapter = Xml.Builder().backend(backend).build().adapter(CollectionObject::class.java)
+                val document = "<CollectionObject>\n\t<item string1=\"test1\"/>\n  <!-- comment -->\n  text &amp; more <![CDATA[cdata]]>\n  <item string1=\"test2\">\n    text\n  </item>\n</CollectionObject>\n"
+
+                it("should read the items from bytes") {
+                    assertEquals(listOf(StringObject("test1", null), StringObject("test2", null)), adapter.fromXml(document.byteInputStream()).item)
+                }
+
+                it("should read the items from a string") {
+                    assertEquals(listOf(StringObject("test1", null), StringObject("test2", null)), adapter.fromXml(document).item)
+                }
+            }
+
+            context("an object with indentation longer than the parser's buffer with $backend") {
+                val adapter = Xml.Builder().backend(backend).build().adapter(CollectionObject::class.java)
+                val indent = "\n" + " ".repeat(20000)
+                val document = "<CollectionObject>$indent<item string1=\"test1\"/>$indent<item string1=\"test2\"/>$indent</CollectionObject>"
+
+                it("should read the items from bytes") {
+                    assertEquals(listOf(StringObject("test1", null), StringObject("test2", null)), adapter.fromXml(document.byteInputStream()).item)
+                }
+
+                it("should read the items from a string") {
+                    assertEquals(listOf(StringObject("test1", null), StringObject("test2", null)), adapter.fromXml(document).item)
+                }
+            }
+
+            context("an object with a text field and whitespace with $backend") {
+                val adapter = Xml.Builder().backend(backend).build().adapter(TextObject::class.java)
+
+                it("should keep the whitespace in the text field") {
+                    assertEquals("\n  test\n", adapter.fromXml("<TextObject>\n  test\n</TextObject>".byteInputStream()).text)
+                    assertEquals("\n  test\n", adapter.fromXml("<TextObject>\n  test\n</TextObject>").text)
+                }
+            }
+
+            context("an indented object that fails with $backend") {
+                val adapter = Xml.Builder().backend(backend).build().adapter(CollectionObject::class.java)
+                val document = "<CollectionObject>\n  <item string1=\"test1\"/>\n  text\n  <item string1=\"test2\"></CollectionObject>"
+
+                it("should report the line of the error") {
+                    assertTrue(assertFailsWith<IOException> { adapter.fromXml(document) }.message!!.contains("@4:"))
+                    assertTrue(assertFailsWith<IOException> { adapter.fromXml(document.byteInputStream()) }.message!!.contains("@4:"))
+                }
+            }
+        }
+
         context("an attribute and tag of the same name") {
             val adapter = xml.adapter(SameNameObject::class.java)
             val sameNameObject = adapter.fromXml("<SameNameObject name=\"value\"><name string1=\"value\"/></SameNameObject>")
@@ -193,6 +563,19 @@ class ObjectDeserializerSpecs : Spek({
             }
         }
 
+        context("an object without namespaces read from prefixed tags") {
+            val adapter = xml.adapter(TagObject::class.java)
+            val tagObject = adapter.fromXml("<TagObject xmlns=\"foo\" xmlns:ns=\"bar\"><ns:text>test</ns:text><item>test1</item></TagObject>".byteInputStream())
+
+            it("should set the text field") {
+                assertEquals("test", tagObject.text)
+            }
+
+            it("should set the items field") {
+                assertEquals(listOf("test1"), tagObject.items)
+            }
+        }
+
         context("an object without a namespace but xml with it") {
             val adapter = xml.adapter(StringObject::class.java)
             val stringObject = adapter.fromXml("<StringObject xmlns:ns=\"foo\" ns:string1=\"value\"/>")
@@ -202,4 +585,27 @@ class ObjectDeserializerSpecs : Spek({
             }
         }
     }
-})
\ No newline at end of file
+})
+
+private data class Comment(val text: String)
+
+private data class Embedded(val inner: StringObject, val after: String)
+
+private class HexIntConverter : IntConverter {
+    var parseIntCount = 0
+    var fromCount = 0
+
+    override fun parseInt(value: String): Int {
+        parseIntCount++
+        return Integer.parseInt(value, 16)
+    }
+
+    override fun formatInt(value: Int): String = Integer.toHexString(value)
+
+    override fun from(value: String): Int {
+        fromCount++
+        return Integer.parseInt(value, 16)
+    }
+
+    override fun to(value: Int): String = Integer.toHexString(value)
+}
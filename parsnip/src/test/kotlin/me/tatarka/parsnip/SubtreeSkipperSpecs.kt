@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import org.kxml2.io.KXmlParser
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlPullParserException
+import java.io.ByteArrayInputStream
+import java.io.FilterReader
+import java.io.Reader
+import java.io.StringReader
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNotNull
+import kotlin.test.assertTrue
+
+@RunWith(JUnitPlatform::class)
+class SubtreeSkipperSpecs : Spek({
+    describe("a SubtreeSkipper") {
+        it("should find kxml2's fields") {
+            assertNotNull(SubtreeSkipper.KXmlFields.find())
+        }
+
+        it("should only recognize kxml2 2.3.0") {
+            assertTrue(SubtreeSkipper.KXmlFields.isKXml230(KXmlParser::class.java))
+            assertFalse(SubtreeSkipper.KXmlFields.isKXml230(KXmlLookalike::class.java))
+        }
+
+        for ((parserName, newParser) in PARSERS) {
+            context("with $parserName") {
+                for ((name, skipped) in SKIPPED) {
+                    val document = "<root>\n  $skipped\n  <after/></root>"
+
+                    it("should skip $name") {
+                        val parser = startAtSkipped(newParser(document))
+                        SubtreeSkipper.skip(parser)
+                        assertEquals(XmlPullParser.END_TAG, parser.eventType)
+                        assertEquals("skipped", parser.name)
+                        assertEquals(2, parser.depth)
+                        assertEquals(XmlPullParser.START_TAG, parser.nextTag())
+                        assertEquals("after", parser.name)
+                    }
+
+                    it("should leave the parser at the same position as skipping event by event for $name") {
+                        val expected = startAtSkipped(newParser(document))
+                        SubtreeSkipper.skip(expected, null)
+                        val parser = startAtSkipped(newParser(document))
+                        SubtreeSkipper.skip(parser)
+                        assertEquals(expected.lineNumber, parser.lineNumber)
+                        assertEquals(expected.columnNumber, parser.columnNumber)
+                    }
+
+                    it("should skip $name event by event without kxml2's fields") {
+                        val parser = startAtSkipped(newParser(document))
+                        SubtreeSkipper.skip(parser, null)
+                        assertEquals(XmlPullParser.END_TAG, parser.eventType)
+                        assertEquals("skipped", parser.name)
+                        assertEquals(XmlPullParser.START_TAG, parser.nextTag())
+                        assertEquals("after", parser.name)
+                    }
+                }
+
+                for ((name, skipped) in MISMATCHED) {
+                    val document = "<root>\n  $skipped\n  <after/></root>"
+
+                    it("should fail on $name") {
+                        val parser = startAtSkipped(newParser(document))
+                        val e = assertFailsWith<XmlPullParserException> { SubtreeSkipper.skip(parser) }
+                        assertTrue(e.message!!.contains("expected"), e.message)
+                    }
+
+                    it("should fail on $name event by event") {
+                        val parser = startAtSkipped(newParser(document))
+                        assertFailsWith<XmlPullParserException> { SubtreeSkipper.skip(parser, null) }
+                    }
+                }
+
+                context("text before a tag") {
+                    val document = "<root>\n  some text &amp; more\n  <after/></root>"
+
+                    it("should move to the tag") {
+                        val parser = newParser(document)
+                        parser.nextTag()
+                        assertEquals(XmlPullParser.START_TAG, SubtreeSkipper.nextSkippingText(parser))
+                        assertEquals("after", parser.name)
+                    }
+
+                    it("should leave the parser at the same position as moving event by event") {
+                        val expected = newParser(document)
+                        expected.nextTag()
+                        SubtreeSkipper.nextSkippingText(expected, null)
+                        val parser = newParser(document)
+                        parser.nextTag()
+                        SubtreeSkipper.nextSkippingText(parser)
+                        assertEquals(expected.lineNumber, parser.lineNumber)
+                        assertEquals(expected.columnNumber, parser.columnNumber)
+                    }
+                }
+            }
+        }
+    }
+})
+
+private val PARSERS: List<Pair<String, (String) -> XmlPullParser>> = listOf(
+        "kxml2 reading a string" to { document: String ->
+            XmlBackend.DEFAULT.newParser(StringReader(document))
+        },
+        "kxml2 reading a string in small chunks" to { document: String ->
+            val parser = KXmlParser()
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true)
+            parser.setInput(ChunkedReader(StringReader(document)))
+            parser
+        },
+        "kxml2 reading bytes" to { document: String ->
+            XmlBackend.DEFAULT.newParser(ByteArrayInputStream(document.toByteArray()), "UTF-8")
+        },
+        "the UTF-8 parser reading bytes" to { document: String ->
+            XmlBackend.UTF8.newParser(ByteArrayInputStream(document.toByteArray()), "UTF-8")
+        }
+)
+
+private val SKIPPED = listOf(
+        "an empty element" to "<skipped></skipped>",
+        "a self-closing element" to "<skipped/>",
+        "self-closing children" to "<skipped><child/><child a=\"/\"/><child /></skipped>",
+        "comments" to "<skipped><!-- </skipped> --><!----><!-- - -> > --></skipped>",
+        "CDATA" to "<skipped><![CDATA[</skipped> ] ]] ]]]></skipped>",
+        "quoted '>'" to "<skipped a=\"x>y\" b='/skipped>'><child c=\">\" d='/>'/></skipped>",
+        "a processing instruction" to "<skipped><?pi </skipped> ? ??></skipped>",
+        "nested elements of the same name" to "<skipped><skipped><skipped/></skipped>text</skipped>",
+        "end tags with whitespace" to "<skipped><child></child ><child></child\n></skipped>",
+        "prefixed names" to "<skipped xmlns:x=\"urn:x\"><x:child><x:child/></x:child></skipped>",
+        "long names" to "<skipped><" + "a".repeat(100) + "><b/></" + "a".repeat(100) + "></skipped>",
+        "several lines" to "<skipped>\n  <child>\n    text\n  </child>\n</skipped>",
+        "more than the parser's buffer" to "<skipped>" + "<child a=\"value\">text</child>\n".repeat(1000) + "</skipped>"
+)
+
+private val MISMATCHED = listOf(
+        "a mismatched end tag" to "<skipped><a><b></c></a></skipped>",
+        "an end tag with a longer name" to "<skipped><a></ab></skipped>",
+        "an end tag with a shorter name" to "<skipped><ab></a></skipped>",
+        "a mismatched end tag with whitespace" to "<skipped><a></b ></skipped>",
+        "a mismatched end tag after many children" to "<skipped><a>" + "<child/>".repeat(1000) + "</b></skipped>"
+)
+
+/**
+ * Has the fields the scanner uses, but isn't kxml2 2.3.0.
+ */
+@Suppress("unused")
+private class KXmlLookalike {
+    @JvmField var reader: Reader? = null
+    @JvmField var srcBuf: CharArray? = null
+    @JvmField var srcPos = 0
+    @JvmField var srcCount = 0
+    @JvmField var line = 0
+    @JvmField var column = 0
+    @JvmField var peekCount = 0
+    @JvmField var degenerated = false
+}
+
+private fun startAtSkipped(parser: XmlPullParser): XmlPullParser {
+    parser.nextTag()
+    parser.nextTag()
+    assertEquals("skipped", parser.name)
+    return parser
+}
+
+/**
+ * Returns at most 7 chars from each read, so that tags are split across reads.
+ */
+private class ChunkedReader(reader: Reader) : FilterReader(reader) {
+    override fun read(buffer: CharArray, offset: Int, length: Int): Int =
+            super.read(buffer, offset, Math.min(length, 7))
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip
+
+import org.jetbrains.spek.api.Spek
+import org.jetbrains.spek.api.dsl.*
+import org.junit.platform.runner.JUnitPlatform
+import org.junit.runner.RunWith
+import org.kxml2.io.KXmlParser
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlPullParserException
+import java.io.ByteArrayInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.util.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+@RunWith(JUnitPlatform::class)
+class Utf8XmlParserSpecs : Spek({
+    describe("a Utf8XmlParser") {
+        for (namespaces in listOf(true, false)) {
+            context(if (namespaces) "with namespace processing" else "without namespace processing") {
+                for (document in DOCUMENTS) {
+                    it("should report the same events as kxml2 for ${document.name}") {
+                        val expected = events(kxmlParser(document, namespaces))
+                        assertEquals(expected, events(utf8Parser(ByteArrayInputStream(document.bytes), namespaces)))
+                    }
+
+                    it("should report the same events as kxml2 for ${document.name} read in small chunks") {
+                        val expected = events(kxmlParser(document, namespaces))
+                        assertEquals(expected, events(utf8Parser(ChunkedInputStream(ByteArrayInputStream(document.bytes)), namespaces)))
+                    }
+                }
+            }
+        }
+
+        for (document in MALFORMED) {
+            it("should fail on $document") {
+                val parser = utf8Parser(ByteArrayInputStream(document.toByteArray()), true)
+                assertFailsWith<XmlPullParserException> {
+                    while (parser.next() != XmlPullParser.END_DOCUMENT) {
+                        // Read to the end.
+                    }
+                }
+            }
+        }
+    }
+})
+
+private class Document(val name: String, val bytes: ByteArray, val encoding: String? = "UTF-8")
+
+private val DOCUMENTS = listOf(
+        Document("text with comments, CDATA, entities and line breaks", "<r>a<!--x-->b<![CDATA[c<]]>&amp;\r\nd</r>".toByteArray()),
+        Document("a declaration, attributes and empty tags", "<?xml version=\"1.0\"?>\n<!-- c -->\n<r a=\"x\ny\tz\" b='&lt;&#65;&#x42;'>\n  <e/>\n  <f x=\"1\"></f>\n</r>\n<!-- after -->\n".toByteArray()),
+        Document("a doctype and namespaces", "<!DOCTYPE r [<!ELEMENT r ANY>]><r xmlns=\"urn:d\" xmlns:p=\"urn:p\"><p:a p:x=\"1\" y=\"2\" xml:lang=\"en\"><b/></p:a><c xmlns=\"\"/></r>".toByteArray()),
+        Document("multi-byte characters", "<r>é中😀 &quot;&apos; <![CDATA[é\r\n]]></r>".toByteArray()),
+        Document("processing instructions and whitespace", "<r><?pi data?>text<a>  </a>\r\n\r</r>".toByteArray()),
+        Document("whitespace in tags", "<r a = \"1\" ><x></x ></r>".toByteArray()),
+        Document("prefixed attributes", "<r xmlns:a=\"u\"><a:b a:c=\"é\"/></r>".toByteArray()),
+        Document("Latin-1", "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><r a=\"é\">üß</r>".toByteArray(Charsets.ISO_8859_1), null),
+        Document("an Atom feed", Document::class.java.getResourceAsStream("/samples/atom/twitter-atom.xml").use { it.readBytes() }),
+        Document("a document larger than the buffer", generatedDocument().toByteArray()))
+
+private val MALFORMED = listOf(
+        "<a><!x></a>",
+        "<a><!ELEMENT b></a>",
+        "<a><!DOCTYPE a></a>",
+        "<r><a></b></r>",
+        "<r>&bogus;</r>",
+        "<r a=\"<\"/>",
+        "<r><a>")
+
+private fun generatedDocument(): String {
+    val random = Random(42)
+    val bits = listOf("é", "中", "😀", "&amp;", "&#233;", "<![CDATA[x<y]]>", "<!-- c -->", "\r\n", "\t", " ", "plain", "<?p x?>")
+    val builder = StringBuilder("<root xmlns:n=\"urn:n\">")
+    for (i in 0 until 5000) {
+        val tag = if (random.nextBoolean()) "n:item" else "entry${i % 7}"
+        builder.append('<').append(tag)
+        for (a in 1..random.nextInt(3)) {
+            builder.append(" a").append(a).append("=\"").append(bits[random.nextInt(5)]).append(i).append('"')
+        }
+        if (random.nextInt(5) == 0) {
+            builder.append("/>")
+            continue
+        }
+        builder.append('>')
+        for (t in 1..random.nextInt(6)) {
+            builder.append(bits[random.nextInt(bits.size)])
+        }
+        builder.append("</").append(tag).append(">\n")
+    }
+    return builder.append("</root>").toString()
+}
+
+private fun kxmlParser(document: Document, namespaces: Boolean): XmlPullParser {
+    val parser = KXmlParser()
+    parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaces)
+    parser.setInput(ByteArrayInputStream(document.bytes), document.encoding)
+    return parser
+}
+
+private fun utf8Parser(input: InputStream, namespaces: Boolean): XmlPullParser {
+    val parser = Utf8XmlParser()
+    parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaces)
+    parser.setInput(input, null)
+    return parser
+}
+
+/**
+ * Describes every event with everything a parser reports about it.
+ */
+private fun events(parser: XmlPullParser): List<String> {
+    val events = mutableListOf<String>()
+    while (true) {
+        val type = parser.next()
+        val event = StringBuilder(XmlPullParser.TYPES[type])
+                .append(" depth=").append(parser.depth)
+                .append(" name=").append(parser.name)
+                .append(" namespace=").append(parser.namespace)
+                .append(" prefix=").append(parser.prefix)
+                .append(" namespaces=").append(parser.getNamespaceCount(parser.depth))
+        if (type == XmlPullParser.START_TAG) {
+            event.append(" empty=").append(parser.isEmptyElementTag)
+            for (i in 0 until parser.attributeCount) {
+                event.append(" [").append(parser.getAttributeNamespace(i)).append('|').append(parser.getAttributePrefix(i))
+                        .append('|').append(parser.getAttributeName(i)).append('=').append(parser.getAttributeValue(i)).append(']')
+            }
+        } else if (type == XmlPullParser.TEXT) {
+            val holder = IntArray(2)
+            val chars = parser.getTextCharacters(holder)
+            event.append(" whitespace=").append(parser.isWhitespace).append(" text=").append(parser.text)
+                    .append(" chars=").append(String(chars, holder[0], holder[1]))
+        }
+        events.add(event.toString())
+        if (type == XmlPullParser.END_DOCUMENT) return events
+    }
+}
+
+/**
+ * Returns at most 3 bytes from each read, so that everything crosses a buffer boundary somewhere.
+ */
+private class ChunkedInputStream(input: InputStream) : FilterInputStream(input) {
+    private val random = Random(1)
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int = super.read(b, off, Math.min(len, 1 + random.nextInt(3)))
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2015 Evan Tatarka.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tatarka.parsnip.classes
+
+import me.tatarka.parsnip.annotations.SerializedName
+
+data class SnapshotObjectV1(val string1: String? = null, val string2: String? = null)
+
+/**
+ * The same class as [SnapshotObjectV1] after a change, a snapshot taken of one can be made to
+ * look like it was taken of the other since their names are the same length.
+ */
+data class SnapshotObjectV2(val string3: String? = null, val string2: String? = null)
+
+/**
+ * The same class as [SnapshotObjectV1] after only an annotation changed.
+ */
+data class SnapshotObjectV3(@SerializedName("renamed") val string1: String? = null, val string2: String? = null)